@@ -2,26 +2,64 @@ package com.github.Akaliix.MineWebStore;
 
 import com.github.Akaliix.MineWebStore.api.WordPressAPI;
 import com.github.Akaliix.MineWebStore.commands.MWSCommand;
+import com.github.Akaliix.MineWebStore.fastpath.FastPathRegistry;
+import com.github.Akaliix.MineWebStore.fastpath.GiveHandler;
 import com.github.Akaliix.MineWebStore.listeners.PlayerListener;
 import com.github.Akaliix.MineWebStore.managers.CommandManager;
+import com.github.Akaliix.MineWebStore.managers.CommandProfiler;
+import com.github.Akaliix.MineWebStore.managers.CommandScheduler;
+import com.github.Akaliix.MineWebStore.managers.DelayedCommandManager;
+import com.github.Akaliix.MineWebStore.managers.DeliveryLedger;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
+import com.github.Akaliix.MineWebStore.managers.Pipeline;
 import com.github.Akaliix.MineWebStore.managers.PlayerCacheManager;
 import com.github.Akaliix.MineWebStore.managers.PlayerHistoryManager;
+import com.github.Akaliix.MineWebStore.managers.PresenceIndex;
+import com.github.Akaliix.MineWebStore.managers.ProxyBridge;
 import com.github.Akaliix.MineWebStore.managers.ServerRegistrationManager;
+import com.github.Akaliix.MineWebStore.managers.StoreConnection;
+import com.github.Akaliix.MineWebStore.managers.TrafficReplay;
+import com.github.Akaliix.MineWebStore.storage.QueuedCommandStore;
+import com.github.Akaliix.MineWebStore.utils.CapturingCommandSender;
 import com.github.Akaliix.MineWebStore.utils.ConfigValidator;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class MineWebStorePlugin extends JavaPlugin {
     
-    private WordPressAPI wordPressAPI;
-    private ServerRegistrationManager serverRegistrationManager;
-    private PlayerCacheManager playerCacheManager;
+    private static final long RELOAD_DRAIN_TIMEOUT_MILLIS = 30_000L;
+    
+    private volatile Pipeline pipeline; // Replaced as a whole on a config reload
+    private CompletableFuture<Void> reload = CompletableFuture.completedFuture(null);
     private PlayerHistoryManager playerHistoryManager;
-    private CommandManager commandManager;
+    private QueuedCommandStore queuedCommandStore;
+    private DeliveryLedger deliveryLedger;
     private ConfigValidator configValidator;
+    private ExecutorService startupExecutor;
+    private volatile CompletableFuture<Void> dataReady = CompletableFuture.completedFuture(null);
+    private final PerformanceMonitor performanceMonitor = new PerformanceMonitor(this);
+    private final CommandProfiler commandProfiler = new CommandProfiler(this);
+    private final PresenceIndex presenceIndex = new PresenceIndex();
+    private FastPathRegistry fastPathRegistry;
+    private CommandScheduler commandScheduler;
+    private DelayedCommandManager delayedCommandManager;
+    private CompletableFuture<Void> delayedReady = CompletableFuture.completedFuture(null);
+    private ProxyBridge proxyBridge;
     private boolean debugEnabled;
+    private Tracer tracer;
+    private CapturingCommandSender capturingSender;
     
     @Override
     public void onEnable() {
@@ -30,8 +68,10 @@ public class MineWebStorePlugin extends JavaPlugin {
         
         // Initialize debug mode
         debugEnabled = getConfig().getBoolean("debug.enabled", false);
+        tracer = new Tracer(getLogger());
+        tracer.configure(getConfig());
         
-        // Validate configuration
+        // Validate configuration (local checks only, connectivity is tested in the background)
         configValidator = new ConfigValidator(this);
         if (!configValidator.validateConfiguration()) {
             getLogger().severe("Plugin startup failed due to configuration errors!");
@@ -40,113 +80,329 @@ public class MineWebStorePlugin extends JavaPlugin {
             return;
         }
         
-        // Initialize API clients
-        initializeAPIs();
+        // Main thread cost budgets
+        performanceMonitor.configure();
+        commandProfiler.configure();
+        
+        // Store commands run as the console, with their output kept to detect failures
+        capturingSender = new CapturingCommandSender(getLogger());
+        capturingSender.configure(getConfig());
+        
+        // Direct handlers for common store commands
+        fastPathRegistry = new FastPathRegistry(this);
+        fastPathRegistry.register(new GiveHandler(this));
+        fastPathRegistry.setEnabled(getConfig().getBoolean("fast_path.enabled", true));
         
-        // Initialize managers
-        initializeManagers();
+        // Runs store commands on the main thread in fair order
+        commandScheduler = new CommandScheduler(this);
+        commandScheduler.configure();
+        commandScheduler.start();
+        
+        // Delayed commands outlive config reloads, so they are only loaded once
+        delayedCommandManager = new DelayedCommandManager(this);
+        
+        // Player history and queued commands outlive config reloads as well
+        playerHistoryManager = new PlayerHistoryManager(this);
+        queuedCommandStore = new QueuedCommandStore(this, getConfig().getInt("storage.queue_cache_size", 64));
+        deliveryLedger = new DeliveryLedger(this);
+        
+        // Initialize the API client and the managers that depend on it
+        pipeline = createPipeline();
+        presenceIndex.rebuild(getServer().getOnlinePlayers()); // Players are already online after a /reload
+        
+        // Load stored data, test connectivity and register with WordPress concurrently.
+        // Bukkit only starts async tasks once the server ticks, so startup uses its own threads.
+        startupExecutor = Executors.newFixedThreadPool(3, runnable -> {
+            Thread thread = new Thread(runnable, "MineWebStore-Startup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        delayedReady = delayedCommandManager.load(startupExecutor);
+        delayedCommandManager.start();
+        deliveryLedger.load(startupExecutor);
+        loadData(startupExecutor);
+        if (isProxyModeConfigured()) {
+            // Behind a MineWebStore proxy: commands are pushed to us, WordPress is never contacted
+            startProxyBridge();
+        } else {
+            startupExecutor.execute(configValidator::testConnectivity);
+            Pipeline owner = pipeline;
+            for (StoreConnection store : owner.getStores()) {
+                startupExecutor.execute(() -> attemptRegistration(owner, store));
+            }
+        }
+        startupExecutor.shutdown(); // Lets the submitted work finish, then the threads exit
         
         // Register event listeners
-        getServer().getPluginManager().registerEvents(new PlayerListener(playerCacheManager, playerHistoryManager), this);
+        getServer().getPluginManager().registerEvents(new PlayerListener(this), this);
         
         // Register commands
         getCommand("mws").setExecutor(new MWSCommand(this));
         
-        // Start server registration
-        registerServer();
-        
         getLogger().info("MineWebStore plugin has been enabled!");
     }
     
     @Override
     public void onDisable() {
-        // Save queued commands before shutdown
-        if (playerCacheManager != null) {
-            playerCacheManager.shutdown();
+        // Save queued commands before shutdown and abort any WordPress requests still in flight
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        if (playerHistoryManager != null) {
+            playerHistoryManager.shutdown();
+        }
+        stopProxyBridge();
+        if (delayedCommandManager != null) {
+            delayedCommandManager.shutdown();
+        }
+        if (deliveryLedger != null) {
+            deliveryLedger.shutdown();
+        }
+        if (startupExecutor != null) {
+            startupExecutor.shutdownNow();
         }
         
         // Cancel all tasks
         getServer().getScheduler().cancelTasks(this);
         
+        if (tracer != null) {
+            tracer.shutdown();
+        }
         getLogger().info("MineWebStore plugin has been disabled!");
     }
     
-    private void initializeAPIs() {
-        String baseUrl = getConfig().getString("wordpress.base_url");
-        String secretKey = getConfig().getString("wordpress.secret_key");
-        
-        wordPressAPI = new WordPressAPI(baseUrl, secretKey, debugEnabled, this);
+    private WordPressAPI createWordPressAPI(String baseUrl, String secretKey, boolean record) {
+        WordPressAPI wordPressAPI = new WordPressAPI(baseUrl, secretKey, this);
+        if (record) {
+            try {
+                wordPressAPI.startRecording(TrafficReplay.getRecordingsFolder(this));
+            } catch (IOException e) {
+                getLogger().warning("Could not start recording WordPress traffic: " + e.getMessage());
+            }
+        }
+        return wordPressAPI;
     }
     
-    private void initializeManagers() {
+    /**
+     * Build a connection to every configured store and the managers that depend on the current configuration
+     */
+    private Pipeline createPipeline() {
         String serverName = getConfig().getString("server.name");
+        List<StoreConnection> stores = new ArrayList<>();
         
-        serverRegistrationManager = new ServerRegistrationManager(wordPressAPI, serverName, this);
-        playerHistoryManager = new PlayerHistoryManager(this);
-        playerCacheManager = new PlayerCacheManager(wordPressAPI, serverName, this, playerHistoryManager);
-        commandManager = new CommandManager(wordPressAPI, serverName, this);
+        // Only the main store's traffic is recorded, a replay targets a single site
+        WordPressAPI mainAPI = createWordPressAPI(getConfig().getString("wordpress.base_url", ""),
+            getConfig().getString("wordpress.secret_key", ""), getConfig().getBoolean("debug.record_traffic", false));
+        stores.add(new StoreConnection(null, mainAPI, serverName, this));
+        
+        ConfigurationSection additional = getConfig().getConfigurationSection("wordpress.stores");
+        if (additional != null) {
+            for (String id : additional.getKeys(false)) {
+                WordPressAPI storeAPI = createWordPressAPI(additional.getString(id + ".base_url", ""),
+                    additional.getString(id + ".secret_key", ""), false);
+                stores.add(new StoreConnection(id, storeAPI, serverName, this));
+            }
+        }
+        
+        return new Pipeline(stores, new PlayerCacheManager(stores, this, playerHistoryManager, queuedCommandStore));
+    }
+    
+    private boolean isCurrent(Pipeline owner) {
+        return owner == pipeline && !owner.isClosed();
+    }
+    
+    /**
+     * Load player history, queued and delayed commands in parallel on the given executor.
+     * Runs once, in {@link #onEnable()}: a config reload keeps what is loaded.
+     * Anything that needs this data waits on {@link #getDataReady()}.
+     */
+    private void loadData(Executor executor) {
+        CompletableFuture<Void> historyReady = playerHistoryManager.load(executor);
+        CompletableFuture<Void> queueReady = pipeline.getPlayerCacheManager().load(executor);
+        dataReady = CompletableFuture.allOf(historyReady, queueReady, delayedReady).whenComplete((ignored, error) -> {
+            if (error != null) {
+                getLogger().log(Level.SEVERE, "Error loading stored data: ", error);
+            } else {
+                debug("Player history, queued and delayed commands loaded");
+            }
+        });
+    }
+    
+    private boolean isProxyModeConfigured() {
+        return getConfig().getBoolean("proxy.enabled", false);
+    }
+    
+    private void startProxyBridge() {
+        proxyBridge = new ProxyBridge(this, getConfig().getString("proxy.secret", ""));
+        proxyBridge.register();
+        getLogger().info("Proxy mode: commands are delivered by the MineWebStore proxy plugin");
+    }
+    
+    private void stopProxyBridge() {
+        if (proxyBridge != null) {
+            proxyBridge.unregister();
+            proxyBridge = null;
+        }
     }
     
     private void registerServer() {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                if (serverRegistrationManager.registerServer()) {
-                    debug("Server registered successfully!");
-                    // Start command polling only after successful registration
-                    startCommandPollingTask();
-                } else {
-                    getLogger().warning("Failed to register server with WordPress!");
-                    getLogger().warning("Command polling will not start until server registration succeeds.");
-                    // Retry registration after 30 seconds
-                    new BukkitRunnable() {
-                        @Override
-                        public void run() {
-                            registerServer();
-                        }
-                    }.runTaskLaterAsynchronously(MineWebStorePlugin.this, 30 * 20L);
+        Pipeline owner = pipeline;
+        for (StoreConnection store : owner.getStores()) {
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    attemptRegistration(owner, store);
                 }
-            }
-        }.runTaskAsynchronously(this);
+            }.runTaskAsynchronously(this);
+        }
     }
     
-    private void startCommandPollingTask() {
-        int pollInterval = getConfig().getInt("server.poll_interval", 10);
-        
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                try {
-                    commandManager.processCommands();
-                } catch (Exception e) {
-                    getLogger().log(Level.SEVERE, "Error processing commands: ", e);
+    /**
+     * Register with one store; each store registers and retries on its own, so one
+     * that is down does not hold up the others
+     */
+    private void attemptRegistration(Pipeline owner, StoreConnection store) {
+        if (!isCurrent(owner)) {
+            return; // Superseded by a config reload
+        }
+        boolean registered = store.getServerRegistrationManager().registerServer();
+        if (!isCurrent(owner)) {
+            return;
+        }
+        if (registered) {
+            debug("Server registered successfully with store " + store.getName() + "!");
+            // Start command polling only after successful registration and once commands can be queued
+            dataReady.whenComplete((ignored, error) -> {
+                if (isEnabled()) {
+                    startCommandPollingTask(owner, store);
                 }
-            }
-        }.runTaskTimerAsynchronously(this, 0L, pollInterval * 20L); // Convert seconds to ticks
+            });
+        } else {
+            getLogger().warning("Failed to register server with store " + store.getName() + "!");
+            getLogger().warning("Command polling for this store will not start until server registration succeeds.");
+            // Retry registration after 30 seconds
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    attemptRegistration(owner, store);
+                }
+            }.runTaskLaterAsynchronously(this, 30 * 20L);
+        }
+    }
+    
+    /**
+     * Start the store's poller, if its pipeline is still the current one
+     */
+    private void startCommandPollingTask(Pipeline owner, StoreConnection store) {
+        if (!isCurrent(owner)) {
+            return;
+        }
+        int pollInterval = getConfig().getInt("server.poll_interval", 10);
+        store.startPolling(this, pollInterval * 20L); // Convert seconds to ticks
     }
     
-    public void reloadPluginConfig() {
+    /**
+     * Apply the config file without a restart. Settings read on every use take effect
+     * at once. For the rest the current pipeline stops polling and delivering, the work
+     * it already started runs and is reported, and only then is a new pipeline swapped
+     * in and one poller per store started for it, so no command is dropped or run twice.
+     * Must be called on the main thread.
+     * @return completed on the main thread once the new pipeline is in place
+     */
+    public CompletableFuture<Void> reloadPluginConfig() {
         reloadConfig();
         debugEnabled = getConfig().getBoolean("debug.enabled", false);
+        tracer.configure(getConfig());
+        fastPathRegistry.setEnabled(getConfig().getBoolean("fast_path.enabled", true));
+        commandScheduler.configure();
+        performanceMonitor.configure();
+        commandProfiler.configure();
+        capturingSender.configure(getConfig());
+        queuedCommandStore.setMaxHotShards(getConfig().getInt("storage.queue_cache_size", 64));
+        deliveryLedger.configure();
         
-        // Reinitialize APIs and managers
-        initializeAPIs();
-        initializeManagers();
+        if (!reload.isDone()) {
+            return reload; // The pipeline it swaps in is built from the config just read
+        }
+        
+        // Take on no more work with the old configuration, then wait for what is running off the main thread
+        Pipeline previous = pipeline;
+        previous.close();
+        
+        Executor mainThread = runnable -> getServer().getScheduler().runTask(this, runnable);
+        Executor async = runnable -> getServer().getScheduler().runTaskAsynchronously(this, runnable);
+        reload = CompletableFuture.runAsync(() -> drain(previous), async)
+            .thenRunAsync(() -> swapPipeline(previous), mainThread);
+        return reload;
+    }
+    
+    private void drain(Pipeline previous) {
+        try {
+            if (!previous.awaitIdle(RELOAD_DRAIN_TIMEOUT_MILLIS)) {
+                getLogger().warning("Commands started before the reload were still unreported after "
+                    + RELOAD_DRAIN_TIMEOUT_MILLIS / 1000 + " seconds, their status updates are aborted");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void swapPipeline(Pipeline previous) {
+        pipeline = createPipeline();
+        previous.shutdown();
+        
+        // Players already online get the deliveries the old pipeline handed back
+        pipeline.getPlayerCacheManager().resumeDeliveries();
+        
+        stopProxyBridge();
+        if (isProxyModeConfigured()) {
+            startProxyBridge();
+        } else {
+            // The new API instance has no server key yet
+            registerServer();
+        }
         
         getLogger().info("Configuration reloaded!");
     }
     
     public void debug(String message) {
-        if (debugEnabled) {
-            getLogger().info("[DEBUG] " + message);
-        }
+        tracer.trace(Tracer.Category.GENERAL, message);
+    }
+    
+    /**
+     * Trace a debug message in a category; the message is only built if that category is enabled
+     */
+    public void trace(Tracer.Category category, Supplier<String> message) {
+        tracer.trace(category, message);
     }
     
     // Getters
-    public WordPressAPI getWordPressAPI() { return wordPressAPI; }
-    public ServerRegistrationManager getServerRegistrationManager() { return serverRegistrationManager; }
-    public PlayerCacheManager getPlayerCacheManager() { return playerCacheManager; }
+    public WordPressAPI getWordPressAPI() { return pipeline.getWordPressAPI(); }
+    public ServerRegistrationManager getServerRegistrationManager() { return pipeline.getServerRegistrationManager(); }
+    public PlayerCacheManager getPlayerCacheManager() { return pipeline.getPlayerCacheManager(); }
     public PlayerHistoryManager getPlayerHistoryManager() { return playerHistoryManager; }
-    public CommandManager getCommandManager() { return commandManager; }
+    public DeliveryLedger getDeliveryLedger() { return deliveryLedger; }
+    public CommandManager getCommandManager() { return pipeline.getCommandManager(); }
+    
+    /**
+     * @return the command manager of the store commands came from (null for the main store)
+     */
+    public CommandManager getCommandManager(String store) { return pipeline.getCommandManager(store); }
+    public List<StoreConnection> getStores() { return pipeline.getStores(); }
+    public CompletableFuture<Void> getDataReady() { return dataReady; }
+    public PerformanceMonitor getPerformanceMonitor() { return performanceMonitor; }
+    public CommandProfiler getCommandProfiler() { return commandProfiler; }
+    public PresenceIndex getPresenceIndex() { return presenceIndex; }
+    public FastPathRegistry getFastPathRegistry() { return fastPathRegistry; }
+    public CommandScheduler getCommandScheduler() { return commandScheduler; }
+    public DelayedCommandManager getDelayedCommandManager() { return delayedCommandManager; }
+    
+    /**
+     * @return the bridge to the proxy plugin, or null when this server talks to WordPress itself
+     */
+    public ProxyBridge getProxyBridge() { return proxyBridge; }
+    public boolean isProxyMode() { return proxyBridge != null; }
     public boolean isDebugEnabled() { return debugEnabled; }
+    public Tracer getTracer() { return tracer; }
+    public CapturingCommandSender getCapturingSender() { return capturingSender; }
 }
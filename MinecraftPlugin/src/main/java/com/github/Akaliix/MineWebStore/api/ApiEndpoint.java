@@ -0,0 +1,36 @@
+package com.github.Akaliix.MineWebStore.api;
+
+/**
+ * WordPress operations that have their own request budget and timeout counter
+ */
+public enum ApiEndpoint {
+    REGISTER("register", 10000),
+    VERIFY("verify", 5000),
+    POLL("poll", 10000),
+    CLAIM("claim", 10000),
+    STATUS("status", 5000),
+    PLAYER_SYNC("player_sync", 30000);
+    
+    private final String configName;
+    private final long defaultBudgetMillis;
+    
+    ApiEndpoint(String configName, long defaultBudgetMillis) {
+        this.configName = configName;
+        this.defaultBudgetMillis = defaultBudgetMillis;
+    }
+    
+    public String getConfigName() {
+        return configName;
+    }
+    
+    /**
+     * Config path of the total time budget (in milliseconds) for this operation
+     */
+    public String getConfigPath() {
+        return "http.timeouts." + configName;
+    }
+    
+    public long getDefaultBudgetMillis() {
+        return defaultBudgetMillis;
+    }
+}
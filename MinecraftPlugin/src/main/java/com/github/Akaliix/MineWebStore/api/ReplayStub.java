@@ -0,0 +1,190 @@
+package com.github.Akaliix.MineWebStore.api;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for the WordPress store that answers with a recording made by
+ * {@link com.github.Akaliix.MineWebStore.utils.TrafficRecorder}. Command polls
+ * get the recorded responses in order; every other request is accepted. Each
+ * answer is held back by the latency recorded for that kind of request, so the
+ * plugin sees the store as it was. Listens on the loopback interface only.
+ *
+ * Every replayed command is turned into an {@code always} command, so a replay
+ * never queues commands for players or schedules delayed ones.
+ */
+public class ReplayStub {
+    
+    private static final String API_PREFIX = "/wp-json/mcapi/v1/";
+    
+    private final Queue<JsonObject> polls = new ArrayDeque<>();
+    private final Map<String, Queue<Long>> latencies = new HashMap<>();
+    private final AtomicInteger servedCommands = new AtomicInteger();
+    private final AtomicInteger reportedCommands = new AtomicInteger();
+    private HttpServer server;
+    private ExecutorService executor;
+    
+    /**
+     * @param exchanges the recorded exchanges, in the order they were made
+     */
+    public ReplayStub(List<JsonObject> exchanges) {
+        for (JsonObject exchange : exchanges) {
+            String kind = kindOf(exchange.get("method").getAsString(), exchange.get("path").getAsString());
+            latencies.computeIfAbsent(kind, k -> new ArrayDeque<>()).add(exchange.get("latency_ms").getAsLong());
+            if (kind.equals("GET commands") && exchange.has("response") && exchange.get("response").isJsonObject()) {
+                polls.add(exchange.getAsJsonObject("response"));
+            }
+        }
+    }
+    
+    public void start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "MineWebStore-ReplayStub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext(API_PREFIX, this::handle);
+        server.start();
+    }
+    
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Base URL to give the {@link WordPressAPI} that should talk to this stub
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+    
+    private void handle(HttpExchange exchange) throws IOException {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring(API_PREFIX.length());
+        String kind = kindOf(method, path);
+        String request;
+        try (InputStream in = exchange.getRequestBody()) {
+            request = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        
+        JsonObject response = new JsonObject();
+        response.addProperty("success", true);
+        switch (kind) {
+            case "GET commands" -> response = nextPoll();
+            case "POST register" -> response.addProperty("server_key", "replay");
+            case "POST commands/status" -> reportedCommands.addAndGet(countResults(request));
+            case "PUT commands/{id}" -> reportedCommands.incrementAndGet();
+            default -> {
+                // Claims, player syncs and key checks are simply accepted
+            }
+        }
+        
+        sleep(nextLatency(kind));
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+    
+    private synchronized JsonObject nextPoll() {
+        JsonObject recorded = polls.poll();
+        JsonObject response = new JsonObject();
+        response.addProperty("success", true);
+        JsonArray commands = new JsonArray();
+        if (recorded != null && recorded.has("commands")) {
+            for (JsonElement element : recorded.getAsJsonArray("commands")) {
+                JsonObject command = element.getAsJsonObject().deepCopy();
+                command.addProperty("run_mode", "always");
+                command.remove("run_at");
+                commands.add(command);
+            }
+        }
+        servedCommands.addAndGet(commands.size());
+        response.add("commands", commands);
+        response.addProperty("count", commands.size());
+        return response;
+    }
+    
+    /**
+     * Latencies of a kind of request are replayed in the order they were recorded, then from the start again
+     */
+    private synchronized long nextLatency(String kind) {
+        Queue<Long> recorded = latencies.get(kind);
+        if (recorded == null || recorded.isEmpty()) {
+            return 0L;
+        }
+        Long latency = recorded.poll();
+        recorded.add(latency);
+        return latency;
+    }
+    
+    private static int countResults(String request) {
+        try {
+            JsonObject body = JsonParser.parseString(request).getAsJsonObject();
+            return body.has("results") ? body.getAsJsonArray("results").size() : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Method and path without query string, with command ids replaced, e.g. "PUT commands/{id}"
+     */
+    static String kindOf(String method, String path) {
+        int query = path.indexOf('?');
+        String bare = query >= 0 ? path.substring(0, query) : path;
+        if (bare.startsWith(API_PREFIX.substring(1))) {
+            bare = bare.substring(API_PREFIX.length() - 1);
+        }
+        return method + " " + bare.replaceAll("^commands/\\d+$", "commands/{id}");
+    }
+    
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    public synchronized int getRemainingPolls() {
+        return polls.size();
+    }
+    
+    public int getServedCommands() {
+        return servedCommands.get();
+    }
+    
+    public int getReportedCommands() {
+        return reportedCommands.get();
+    }
+}
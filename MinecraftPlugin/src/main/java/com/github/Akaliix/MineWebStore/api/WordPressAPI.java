@@ -4,11 +4,19 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.models.CommandStatusUpdate;
+import com.github.Akaliix.MineWebStore.utils.Deadline;
 import com.github.Akaliix.MineWebStore.utils.HttpClient;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+import com.github.Akaliix.MineWebStore.utils.TrafficRecorder;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 public class WordPressAPI {
     
@@ -17,17 +25,40 @@ public class WordPressAPI {
     private final HttpClient httpClient;
     private final Gson gson;
     private final MineWebStorePlugin plugin;
+    private final Map<ApiEndpoint, Long> budgets;
     private String serverSpecificKey;
+    private TrafficRecorder recorder;
     
-    public WordPressAPI(String baseUrl, String secretKey, boolean debugEnabled, MineWebStorePlugin plugin) {
+    public WordPressAPI(String baseUrl, String secretKey, MineWebStorePlugin plugin) {
         this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
         this.secretKey = secretKey;
-        this.httpClient = new HttpClient(plugin, debugEnabled);
+        this.httpClient = new HttpClient(plugin, plugin.getConfig().getInt("http.connect_timeout", 5000));
         this.gson = new Gson();
         this.plugin = plugin;
+        this.budgets = loadBudgets(plugin);
+    }
+    
+    private static Map<ApiEndpoint, Long> loadBudgets(MineWebStorePlugin plugin) {
+        Map<ApiEndpoint, Long> budgets = new EnumMap<>(ApiEndpoint.class);
+        for (ApiEndpoint endpoint : ApiEndpoint.values()) {
+            long budget = plugin.getConfig().getLong(endpoint.getConfigPath(), endpoint.getDefaultBudgetMillis());
+            budgets.put(endpoint, budget > 0 ? budget : endpoint.getDefaultBudgetMillis());
+        }
+        return budgets;
+    }
+    
+    /**
+     * Start the clock for a call to the given endpoint
+     */
+    public Deadline deadlineFor(ApiEndpoint endpoint) {
+        return Deadline.after(budgets.get(endpoint));
     }
     
     public boolean registerServer(String serverName) {
+        return registerServer(serverName, deadlineFor(ApiEndpoint.REGISTER));
+    }
+    
+    public boolean registerServer(String serverName, Deadline deadline) {
         try {
             String endpoint = baseUrl + "wp-json/mcapi/v1/register";
             
@@ -35,7 +66,8 @@ public class WordPressAPI {
             requestData.addProperty("secret_key", secretKey);
             requestData.addProperty("server_name", serverName);
             
-            String response = httpClient.sendPostRequest(endpoint, requestData.toString(), null);
+            String response = httpClient.sendPostRequest(endpoint, requestData.toString(), null,
+                ApiEndpoint.REGISTER, deadline);
             
             if (response != null) {
                 JsonObject responseJson = JsonParser.parseString(response).getAsJsonObject();
@@ -43,76 +75,115 @@ public class WordPressAPI {
                 if (responseJson.has("success") && responseJson.get("success").getAsBoolean()) {
                     if (responseJson.has("server_key")) {
                         serverSpecificKey = responseJson.get("server_key").getAsString();
-                        plugin.debug("Server registered successfully with key: " + serverSpecificKey);
+                        plugin.trace(Tracer.Category.GENERAL, () -> "Server " + serverName + " registered successfully");
                         return true;
                     }
                 } else {
                     String message = responseJson.has("message") ? 
                         responseJson.get("message").getAsString() : "Unknown error";
-                    plugin.debug("Server registration failed: " + message);
+                    plugin.trace(Tracer.Category.GENERAL, () -> "Server registration failed: " + message);
                 }
             }
         } catch (Exception e) {
-            plugin.debug("Error registering server: " + e.getMessage());
+            plugin.trace(Tracer.Category.GENERAL, () -> "Error registering server: " + e.getMessage());
         }
         
         return false;
     }
     
+    public int verifyServerKey(String serverName) {
+        return verifyServerKey(serverName, deadlineFor(ApiEndpoint.VERIFY));
+    }
+    
+    /**
+     * Check that the current server key is still accepted by WordPress
+     * @return the HTTP status code (401 means the key was rejected), or -1 if WordPress could not be reached
+     */
+    public int verifyServerKey(String serverName, Deadline deadline) {
+        if (serverSpecificKey == null) {
+            return 401;
+        }
+        
+        String endpoint = baseUrl + "wp-json/mcapi/v1/verify?server_name=" + 
+            URLEncoder.encode(serverName, StandardCharsets.UTF_8);
+        
+        return httpClient.sendStatusRequest(endpoint, serverSpecificKey, ApiEndpoint.VERIFY, deadline);
+    }
+    
     public boolean syncPlayerList(String serverName, List<String> players, String playerHash) {
+        return syncPlayerList(serverName, players, playerHash, deadlineFor(ApiEndpoint.PLAYER_SYNC));
+    }
+    
+    public boolean syncPlayerList(String serverName, List<String> players, String playerHash, Deadline deadline) {
         if (serverSpecificKey == null) {
-            plugin.debug("Cannot sync players - server not registered!");
+            plugin.trace(Tracer.Category.SYNC, () -> "Cannot sync players - server not registered!");
             return false;
         }
         
         try {
             String endpoint = baseUrl + "wp-json/mcapi/v1/players";
             
-            JsonObject requestData = new JsonObject();
-            requestData.addProperty("server_name", serverName);
-            requestData.add("players", gson.toJsonTree(players));
-            
-            if (playerHash != null) {
-                requestData.addProperty("player_hash", playerHash);
-            }
+            // The list can hold every player who ever joined, so it is streamed rather than built in memory
+            HttpClient.JsonBody body = writer -> {
+                writer.beginObject();
+                writer.name("server_name").value(serverName);
+                writer.name("players").beginArray();
+                for (String player : players) {
+                    writer.value(player);
+                }
+                writer.endArray();
+                if (playerHash != null) {
+                    writer.name("player_hash").value(playerHash);
+                }
+                writer.endObject();
+            };
             
-            String response = httpClient.sendPostRequest(endpoint, requestData.toString(), serverSpecificKey);
+            String response = httpClient.sendPostRequest(endpoint, body, serverSpecificKey,
+                ApiEndpoint.PLAYER_SYNC, deadline);
             
             if (response != null) {
                 JsonObject responseJson = JsonParser.parseString(response).getAsJsonObject();
                 
                 if (responseJson.has("success") && responseJson.get("success").getAsBoolean()) {
-                    plugin.debug("Player history synced successfully");
+                    plugin.trace(Tracer.Category.SYNC, () -> "Player history synced successfully");
                     return true;
                 } else {
                     String message = responseJson.has("message") ? 
                         responseJson.get("message").getAsString() : "Unknown error";
-                    plugin.debug("Player sync failed: " + message);
+                    plugin.trace(Tracer.Category.SYNC, () -> "Player sync failed: " + message);
                 }
             }
         } catch (Exception e) {
-            plugin.debug("Error syncing player list: " + e.getMessage());
+            plugin.trace(Tracer.Category.SYNC, () -> "Error syncing player list: " + e.getMessage());
         }
         
         return false;
     }
     
     public String getPendingCommands(String serverName) {
+        return getPendingCommands(serverName, deadlineFor(ApiEndpoint.POLL));
+    }
+    
+    public String getPendingCommands(String serverName, Deadline deadline) {
         try {
             String endpoint = baseUrl + "wp-json/mcapi/v1/commands?server_name=" + 
                 URLEncoder.encode(serverName, StandardCharsets.UTF_8);
             
-            plugin.debug("Got pending commands response");
-            return httpClient.sendGetRequest(endpoint, serverSpecificKey);
+            plugin.trace(Tracer.Category.POLL, () -> "Got pending commands response");
+            return httpClient.sendGetRequest(endpoint, serverSpecificKey, ApiEndpoint.POLL, deadline);
             
         } catch (Exception e) {
-            plugin.debug("Error getting pending commands: " + e.getMessage());
+            plugin.trace(Tracer.Category.POLL, () -> "Error getting pending commands: " + e.getMessage());
         }
         
         return null;
     }
     
     public String markCommandsAsRead(String serverName, List<Integer> commandIds) {
+        return markCommandsAsRead(serverName, commandIds, deadlineFor(ApiEndpoint.CLAIM));
+    }
+    
+    public String markCommandsAsRead(String serverName, List<Integer> commandIds, Deadline deadline) {
         try {
             String endpoint = baseUrl + "wp-json/mcapi/v1/commands/read";
             
@@ -120,19 +191,33 @@ public class WordPressAPI {
             requestData.addProperty("server_name", serverName);
             requestData.add("command_ids", gson.toJsonTree(commandIds));
             
-            plugin.debug("Marked commands as read: " + commandIds.size());
-            return httpClient.sendPostRequest(endpoint, requestData.toString(), serverSpecificKey);
+            plugin.trace(Tracer.Category.POLL, () -> "Marked commands as read: " + commandIds.size());
+            return httpClient.sendPostRequest(endpoint, requestData.toString(), serverSpecificKey,
+                ApiEndpoint.CLAIM, deadline);
             
         } catch (Exception e) {
-            plugin.debug("Error marking commands as read: " + e.getMessage());
+            plugin.trace(Tracer.Category.POLL, () -> "Error marking commands as read: " + e.getMessage());
         }
         
         return null;
     }
     
     public String updateCommandStatus(String serverName, int commandId, String status, String message) {
+        return updateCommandStatus(serverName, commandId, status, message, deadlineFor(ApiEndpoint.STATUS));
+    }
+    
+    public String updateCommandStatus(String serverName, int commandId, String status, String message, Deadline deadline) {
+        return updateCommandStatus(serverName, new CommandStatusUpdate(commandId, "executed".equals(status), message), deadline);
+    }
+    
+    /**
+     * Report one result, with its main thread time if it was slow and the runs a failed repeated command delivered
+     */
+    public String updateCommandStatus(String serverName, CommandStatusUpdate update, Deadline deadline) {
+        int commandId = update.getCommandId();
+        String status = update.getStatus();
         if (serverSpecificKey == null) {
-            plugin.debug("Server not yet registered, cannot update command status");
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Server not yet registered, cannot update command status");
             return null;
         }
         
@@ -142,24 +227,149 @@ public class WordPressAPI {
             JsonObject requestData = new JsonObject();
             requestData.addProperty("server_name", serverName);
             requestData.addProperty("status", status);
-            if (message != null) {
-                requestData.addProperty("message", message);
+            if (update.getMessage() != null) {
+                requestData.addProperty("message", update.getMessage());
+            }
+            if (update.getSlowMicros() > 0) {
+                requestData.addProperty("duration_us", update.getSlowMicros());
+            }
+            if (update.getCompletedRuns() > 0) {
+                requestData.addProperty("completed_runs", update.getCompletedRuns());
             }
             
-            String response = httpClient.sendPutRequest(endpoint, requestData.toString(), serverSpecificKey);
+            String response = httpClient.sendPutRequest(endpoint, requestData.toString(), serverSpecificKey,
+                ApiEndpoint.STATUS, deadline);
             
             if (response != null) {
-                plugin.debug("Updated command " + commandId + " status to " + status);
+                plugin.trace(Tracer.Category.DELIVERY, () -> "Updated command " + commandId + " status to " + status);
                 return response;
             }
         } catch (Exception e) {
-            plugin.debug("Error updating command status: " + e.getMessage());
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Error updating command status: " + e.getMessage());
         }
         
         return null;
     }
     
+    /**
+     * Report the results of a group of commands in one request, so WordPress
+     * recomputes each affected order once. Falls back to one request per
+     * command, within the same deadline, only when the store answers 404
+     * because it does not support batch updates yet; any other failure is
+     * left to the caller to retry as a whole.
+     * @return true if every result was accepted
+     */
+    public boolean updateCommandStatuses(String serverName, List<CommandStatusUpdate> updates) {
+        return updateCommandStatuses(serverName, updates, deadlineFor(ApiEndpoint.STATUS));
+    }
+    
+    public boolean updateCommandStatuses(String serverName, List<CommandStatusUpdate> updates, Deadline deadline) {
+        if (serverSpecificKey == null) {
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Server not yet registered, cannot update command status");
+            return false;
+        }
+        if (updates.size() == 1) {
+            return updateCommandStatus(serverName, updates.get(0), deadline) != null;
+        }
+        
+        try {
+            String endpoint = baseUrl + "wp-json/mcapi/v1/commands/status";
+            
+            HttpClient.JsonBody body = writer -> {
+                writer.beginObject();
+                writer.name("server_name").value(serverName);
+                writer.name("results").beginArray();
+                for (CommandStatusUpdate update : updates) {
+                    writer.beginObject();
+                    writer.name("id").value(update.getCommandId());
+                    writer.name("status").value(update.getStatus());
+                    if (update.getMessage() != null) {
+                        writer.name("message").value(update.getMessage());
+                    }
+                    if (update.getSlowMicros() > 0) {
+                        writer.name("duration_us").value(update.getSlowMicros());
+                    }
+                    if (update.getCompletedRuns() > 0) {
+                        writer.name("completed_runs").value(update.getCompletedRuns());
+                    }
+                    writer.endObject();
+                }
+                writer.endArray();
+                writer.endObject();
+            };
+            
+            HttpClient.Response response = httpClient.exchangePostRequest(endpoint, body, serverSpecificKey,
+                ApiEndpoint.STATUS, deadline);
+            
+            if (response.isSuccessful()) {
+                plugin.trace(Tracer.Category.DELIVERY, () -> "Updated status of " + updates.size() + " commands");
+                return true;
+            }
+            if (response.getStatus() != 404) {
+                // The batch may have been applied even though its answer was lost, so
+                // resending it one command at a time could report the same result twice
+                plugin.trace(Tracer.Category.DELIVERY, () -> "Batch status update failed with HTTP " + response.getStatus());
+                return false;
+            }
+        } catch (Exception e) {
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Error updating command statuses: " + e.getMessage());
+            return false;
+        }
+        
+        // Older stores only have the single command endpoint (rest_no_route)
+        boolean allUpdated = true;
+        for (CommandStatusUpdate update : updates) {
+            allUpdated &= updateCommandStatus(serverName, update, deadline) != null;
+        }
+        return allUpdated;
+    }
+    
     public String getServerSpecificKey() {
         return serverSpecificKey;
     }
+    
+    /**
+     * Use a server key obtained earlier instead of registering again
+     */
+    public void setServerSpecificKey(String serverSpecificKey) {
+        this.serverSpecificKey = serverSpecificKey;
+    }
+    
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+    
+    /**
+     * Get the number of timed out requests per endpoint
+     */
+    public Map<ApiEndpoint, Long> getTimeoutCounts() {
+        return httpClient.getTimeoutCounts();
+    }
+    
+    /**
+     * Record all traffic of this instance to a new file in the given folder, until {@link #shutdown()}
+     */
+    public void startRecording(File folder) throws IOException {
+        recorder = TrafficRecorder.start(folder, baseUrl);
+        httpClient.setRecorder(recorder);
+        plugin.getLogger().info("Recording WordPress traffic to " + recorder.getFile().getName());
+    }
+    
+    /**
+     * @return the active recording, or null if traffic is not being recorded
+     */
+    public TrafficRecorder getRecorder() {
+        return recorder;
+    }
+    
+    /**
+     * Cancel all in-flight requests; this instance must not be used afterwards
+     */
+    public void shutdown() {
+        httpClient.cancelAll();
+        if (recorder != null) {
+            httpClient.setRecorder(null);
+            recorder.close();
+        }
+    }
 }
@@ -1,6 +1,13 @@
 package com.github.Akaliix.MineWebStore.commands;
 
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.api.ApiEndpoint;
+import com.github.Akaliix.MineWebStore.managers.CommandManager;
+import com.github.Akaliix.MineWebStore.managers.CommandProfiler;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
+import com.github.Akaliix.MineWebStore.managers.StoreConnection;
+import com.github.Akaliix.MineWebStore.managers.TrafficReplay;
+import com.github.Akaliix.MineWebStore.models.DeliveryRecord;
 import com.github.Akaliix.MineWebStore.models.PendingCommand;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -8,13 +15,30 @@ import org.bukkit.command.CommandSender;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
 
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 public class MWSCommand implements CommandExecutor {
     
+    private static final int PERF_PRODUCTS_SHOWN = 5;
+    private static final int HISTORY_DELIVERIES_SHOWN = 10;
+    private static final int ORDER_DELIVERIES_SHOWN = 50;
+    private static final DateTimeFormatter DELIVERY_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+    
     private final MineWebStorePlugin plugin;
+    private final AtomicBoolean replaying = new AtomicBoolean();
+    private final AtomicBoolean bursting = new AtomicBoolean();
     
     public MWSCommand(MineWebStorePlugin plugin) {
         this.plugin = plugin;
@@ -45,6 +69,18 @@ public class MWSCommand implements CommandExecutor {
             case "pending":
                 handlePending(sender, args);
                 break;
+            case "replay":
+                handleReplay(sender, args);
+                break;
+            case "perf":
+                handlePerf(sender, args);
+                break;
+            case "history":
+                handleHistory(sender, args);
+                break;
+            case "order":
+                handleOrder(sender, args);
+                break;
             default:
                 sendHelpMessage(sender);
                 break;
@@ -65,14 +101,31 @@ public class MWSCommand implements CommandExecutor {
             .append(Component.text(" - Show pending commands").color(NamedTextColor.WHITE)));
         sender.sendMessage(Component.text("/mws pending <player> execute").color(NamedTextColor.YELLOW)
             .append(Component.text(" - Execute queued commands").color(NamedTextColor.WHITE)));
+        sender.sendMessage(Component.text("/mws history <player>").color(NamedTextColor.YELLOW)
+            .append(Component.text(" - Show the latest deliveries to a player").color(NamedTextColor.WHITE)));
+        sender.sendMessage(Component.text("/mws order <id>").color(NamedTextColor.YELLOW)
+            .append(Component.text(" - Show the deliveries of an order").color(NamedTextColor.WHITE)));
+        sender.sendMessage(Component.text("/mws replay [recording] [speed]").color(NamedTextColor.YELLOW)
+            .append(Component.text(" - Replay recorded WordPress traffic (test servers only)").color(NamedTextColor.WHITE)));
+        sender.sendMessage(Component.text("/mws perf [reset]").color(NamedTextColor.YELLOW)
+            .append(Component.text(" - Show main thread cost against the budgets").color(NamedTextColor.WHITE)));
+        sender.sendMessage(Component.text("/mws perf burst <orders> [commands] [command]").color(NamedTextColor.YELLOW)
+            .append(Component.text(" - Measure a burst of synthetic orders (test servers only)").color(NamedTextColor.WHITE)));
     }
     
     private void handleReload(CommandSender sender) {
         sender.sendMessage(Component.text("Reloading MineWebStore configuration...").color(NamedTextColor.YELLOW));
         
         try {
-            plugin.reloadPluginConfig();
-            sender.sendMessage(Component.text("Configuration reloaded successfully!").color(NamedTextColor.GREEN));
+            // Commands still running with the old configuration finish first
+            plugin.reloadPluginConfig().whenComplete((ignored, error) -> {
+                if (error == null) {
+                    sender.sendMessage(Component.text("Configuration reloaded successfully!").color(NamedTextColor.GREEN));
+                } else {
+                    sender.sendMessage(Component.text("Error reloading configuration: " + error.getMessage()).color(NamedTextColor.RED));
+                    plugin.getLogger().severe("Error reloading configuration: " + error.getMessage());
+                }
+            });
         } catch (Exception e) {
             sender.sendMessage(Component.text("Error reloading configuration: " + e.getMessage()).color(NamedTextColor.RED));
             plugin.getLogger().severe("Error reloading configuration: " + e.getMessage());
@@ -82,6 +135,13 @@ public class MWSCommand implements CommandExecutor {
     private void handleStatus(CommandSender sender) {
         sender.sendMessage(Component.text("=== MineWebStore Status ===").color(NamedTextColor.GOLD));
         
+        // Commands arrive through the proxy plugin instead of WordPress
+        if (plugin.isProxyMode()) {
+            sender.sendMessage(Component.text("Proxy Mode: ").color(NamedTextColor.YELLOW)
+                .append(Component.text("✓ Enabled (" + plugin.getProxyBridge().getPendingResultCount() + " results waiting)")
+                    .color(NamedTextColor.GREEN)));
+        }
+        
         // Server registration status
         boolean isRegistered = plugin.getServerRegistrationManager().isRegistered();
         sender.sendMessage(Component.text("Server Registration: ").color(NamedTextColor.YELLOW)
@@ -99,6 +159,21 @@ public class MWSCommand implements CommandExecutor {
             .append(Component.text(apiKey != null ? "✓ Available" : "✗ Missing")
                 .color(apiKey != null ? NamedTextColor.GREEN : NamedTextColor.RED)));
         
+        // Request timeouts per endpoint
+        Map<ApiEndpoint, Long> timeouts = plugin.getWordPressAPI().getTimeoutCounts();
+        String timeoutSummary = timeouts.entrySet().stream()
+            .filter(entry -> entry.getValue() > 0)
+            .map(entry -> entry.getKey().getConfigName() + "=" + entry.getValue())
+            .collect(Collectors.joining(", "));
+        sender.sendMessage(Component.text("Request Timeouts: ").color(NamedTextColor.YELLOW)
+            .append(Component.text(timeoutSummary.isEmpty() ? "none" : timeoutSummary)
+                .color(timeoutSummary.isEmpty() ? NamedTextColor.GREEN : NamedTextColor.RED)));
+        
+        // Every store polls on its own and backs off while it cannot be reached
+        for (StoreConnection store : plugin.getStores()) {
+            sendStoreStatus(sender, store);
+        }
+        
         // Debug mode
         boolean debugEnabled = plugin.isDebugEnabled();
         sender.sendMessage(Component.text("Debug Mode: ").color(NamedTextColor.YELLOW)
@@ -106,21 +181,282 @@ public class MWSCommand implements CommandExecutor {
                 .color(debugEnabled ? NamedTextColor.GREEN : NamedTextColor.GRAY)));
         
         // Online players count
-        int playerCount = plugin.getServer().getOnlinePlayers().size();
+        int playerCount = plugin.getPresenceIndex().size();
         sender.sendMessage(Component.text("Online Players: ").color(NamedTextColor.YELLOW)
             .append(Component.text(String.valueOf(playerCount)).color(NamedTextColor.WHITE)));
         
-        // Processing commands count (from CommandManager)
-        int processingCount = plugin.getCommandManager().getProcessingCommandsCount();
+        // Share of commands executed without dispatching them
+        long fastPathHits = plugin.getFastPathRegistry().getHits();
+        long fastPathTotal = fastPathHits + plugin.getFastPathRegistry().getMisses();
+        sender.sendMessage(Component.text("Fast Path Hit Rate: ").color(NamedTextColor.YELLOW)
+            .append(Component.text(String.format("%.1f%% (%d/%d)", plugin.getFastPathRegistry().getHitRate() * 100,
+                fastPathHits, fastPathTotal)).color(NamedTextColor.WHITE)));
+        
+        // Main thread time spent handling joins
+        sender.sendMessage(Component.text("Join Handling: ").color(NamedTextColor.YELLOW)
+            .append(Component.text(plugin.getPerformanceMonitor().get(PerformanceMonitor.Probe.JOIN).describe())
+                .color(NamedTextColor.WHITE)));
+        
+        // Processing commands count (from every store's CommandManager)
+        int processingCount = 0;
+        for (StoreConnection store : plugin.getStores()) {
+            processingCount += store.getCommandManager().getProcessingCommandsCount();
+        }
         sender.sendMessage(Component.text("Processing Commands: ").color(NamedTextColor.YELLOW)
             .append(Component.text(String.valueOf(processingCount)).color(NamedTextColor.WHITE)));
         
+        // Commands waiting for their turn on the main thread
+        sender.sendMessage(Component.text("Scheduled Commands: ").color(NamedTextColor.YELLOW)
+            .append(Component.text(plugin.getCommandScheduler().getQueuedCount() + " (wait "
+                + plugin.getCommandScheduler().getWaitTimings().describe() + ")").color(NamedTextColor.WHITE)));
+        
+        // Delayed commands waiting for their time
+        sender.sendMessage(Component.text("Delayed Commands: ").color(NamedTextColor.YELLOW)
+            .append(Component.text(String.valueOf(plugin.getDelayedCommandManager().getScheduledCount())).color(NamedTextColor.WHITE)));
+        
         // Queued commands count (from PlayerCacheManager)
         int queuedCount = plugin.getPlayerCacheManager().getQueuedCommandsCount();
         sender.sendMessage(Component.text("Queued Commands: ").color(NamedTextColor.YELLOW)
             .append(Component.text(String.valueOf(queuedCount)).color(NamedTextColor.WHITE)));
     }
     
+    private void sendStoreStatus(CommandSender sender, StoreConnection store) {
+        CommandManager commandManager = store.getCommandManager();
+        boolean registered = store.getServerRegistrationManager().isRegistered();
+        String state;
+        NamedTextColor color;
+        if (!registered) {
+            state = "✗ Not Registered";
+            color = NamedTextColor.RED;
+        } else if (commandManager.isCircuitOpen()) {
+            state = "✗ Backing off after " + commandManager.getConsecutiveFailures() + " failed polls";
+            color = NamedTextColor.RED;
+        } else {
+            state = store.isPolling() ? "✓ Polling" : "✓ Registered";
+            color = NamedTextColor.GREEN;
+        }
+        sender.sendMessage(Component.text("Store " + store.getName() + ": ").color(NamedTextColor.YELLOW)
+            .append(Component.text(state).color(color))
+            .append(Component.text(" (" + store.getWordPressAPI().getBaseUrl() + ")").color(NamedTextColor.GRAY)));
+    }
+    
+    /**
+     * Commands claimed from any store that have not been reported yet
+     */
+    private List<PendingCommand> getProcessingCommands() {
+        List<PendingCommand> processing = new ArrayList<>();
+        for (StoreConnection store : plugin.getStores()) {
+            processing.addAll(store.getCommandManager().getProcessingCommands());
+        }
+        return processing;
+    }
+    
+    private void handleReplay(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            List<String> recordings = TrafficReplay.listRecordings(plugin);
+            sender.sendMessage(Component.text("=== Traffic Recordings ===").color(NamedTextColor.GOLD));
+            if (recordings.isEmpty()) {
+                sender.sendMessage(Component.text("No recordings yet, enable debug.record_traffic to record").color(NamedTextColor.GRAY));
+            }
+            for (String recording : recordings) {
+                sender.sendMessage(Component.text("  " + recording).color(NamedTextColor.WHITE));
+            }
+            return;
+        }
+        
+        File recording = new File(TrafficReplay.getRecordingsFolder(plugin), args[1]);
+        if (!recording.isFile() || !recording.getParentFile().equals(TrafficReplay.getRecordingsFolder(plugin))) {
+            sender.sendMessage(Component.text("Recording not found: " + args[1]).color(NamedTextColor.RED));
+            return;
+        }
+        double speed;
+        try {
+            speed = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+        } catch (NumberFormatException e) {
+            speed = -1;
+        }
+        if (!(speed > 0)) {
+            sender.sendMessage(Component.text("Speed must be a positive number").color(NamedTextColor.RED));
+            return;
+        }
+        if (!replaying.compareAndSet(false, true)) {
+            sender.sendMessage(Component.text("A replay is already running").color(NamedTextColor.RED));
+            return;
+        }
+        
+        TrafficReplay replay = new TrafficReplay(plugin, recording, speed);
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                replay.run(line -> sender.sendMessage(Component.text(line).color(NamedTextColor.YELLOW)));
+            } catch (Exception e) {
+                sender.sendMessage(Component.text("Replay failed: " + e.getMessage()).color(NamedTextColor.RED));
+                plugin.getLogger().warning("Replay of " + recording.getName() + " failed: " + e.getMessage());
+            } finally {
+                replaying.set(false);
+            }
+        });
+    }
+    
+    private void handlePerf(CommandSender sender, String[] args) {
+        PerformanceMonitor monitor = plugin.getPerformanceMonitor();
+        if (args.length > 1 && args[1].equalsIgnoreCase("reset")) {
+            monitor.reset();
+            plugin.getCommandProfiler().reset();
+            sender.sendMessage(Component.text("Performance measurements cleared").color(NamedTextColor.GREEN));
+            return;
+        }
+        if (args.length > 1 && args[1].equalsIgnoreCase("burst")) {
+            handleBurst(sender, args);
+            return;
+        }
+        
+        sender.sendMessage(Component.text("=== MineWebStore Performance ===").color(NamedTextColor.GOLD));
+        for (PerformanceMonitor.Probe probe : PerformanceMonitor.Probe.values()) {
+            sendProbeResult(sender, probe);
+        }
+        
+        List<CommandProfiler.ProductStats> products = plugin.getCommandProfiler().getCostliest(PERF_PRODUCTS_SHOWN);
+        if (!products.isEmpty()) {
+            sender.sendMessage(Component.text("Costliest products:").color(NamedTextColor.GOLD));
+            for (CommandProfiler.ProductStats product : products) {
+                sender.sendMessage(Component.text("#" + product.getProductId() + ": ").color(NamedTextColor.YELLOW)
+                    .append(Component.text(product.describe())
+                        .color(product.getSlowCount() > 0 ? NamedTextColor.RED : NamedTextColor.WHITE)));
+            }
+        }
+    }
+    
+    private void handleBurst(CommandSender sender, String[] args) {
+        int orders;
+        int commandsPerOrder;
+        try {
+            orders = args.length > 2 ? Integer.parseInt(args[2]) : -1;
+            commandsPerOrder = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        } catch (NumberFormatException e) {
+            orders = -1;
+            commandsPerOrder = -1;
+        }
+        if (orders < 1 || commandsPerOrder < 1 || (long) orders * commandsPerOrder > 100_000L) {
+            sender.sendMessage(Component.text("Usage: /mws perf burst <orders> [commands per order] [command], "
+                + "at most 100000 commands in total").color(NamedTextColor.RED));
+            return;
+        }
+        String command = args.length > 4 ? String.join(" ", Arrays.copyOfRange(args, 4, args.length)) : "time query daytime";
+        if (!bursting.compareAndSet(false, true)) {
+            sender.sendMessage(Component.text("A burst is already running").color(NamedTextColor.RED));
+            return;
+        }
+        
+        int total = orders * commandsPerOrder;
+        sender.sendMessage(Component.text("Running " + orders + " orders of " + commandsPerOrder + " x '" + command
+            + "' (" + total + " commands)...").color(NamedTextColor.YELLOW));
+        plugin.getPerformanceMonitor().burst(orders, commandsPerOrder, command, failed ->
+            // Report on the next tick, once the scheduler has recorded the tick that ran the last order
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                bursting.set(false);
+                long ticks = plugin.getPerformanceMonitor().get(PerformanceMonitor.Probe.SCHEDULER_TICK).getCount();
+                sender.sendMessage(Component.text("Burst finished: " + (total - failed) + "/" + total + " succeeded over "
+                    + ticks + " ticks").color(NamedTextColor.GOLD));
+                boolean passed = sendProbeResult(sender, PerformanceMonitor.Probe.SCHEDULER_TICK);
+                passed &= sendProbeResult(sender, PerformanceMonitor.Probe.EXECUTE);
+                if (!passed) {
+                    plugin.getLogger().warning("Command burst of " + total + " commands exceeded the performance budgets");
+                }
+            }));
+    }
+    
+    /**
+     * Show one probe's measurements and whether they are within budget
+     * @return false if a budget is exceeded
+     */
+    private boolean sendProbeResult(CommandSender sender, PerformanceMonitor.Probe probe) {
+        PerformanceMonitor monitor = plugin.getPerformanceMonitor();
+        List<String> exceeded = monitor.check(probe);
+        Component verdict;
+        if (monitor.get(probe).getCount() == 0) {
+            verdict = Component.text(" no samples").color(NamedTextColor.GRAY);
+        } else if (exceeded.isEmpty()) {
+            verdict = Component.text(" PASS").color(NamedTextColor.GREEN);
+        } else {
+            verdict = Component.text(" FAIL (" + String.join(", ", exceeded) + ")").color(NamedTextColor.RED);
+        }
+        sender.sendMessage(Component.text(probe.getConfigName() + ": ").color(NamedTextColor.YELLOW)
+            .append(Component.text(monitor.get(probe).describe()).color(NamedTextColor.WHITE))
+            .append(verdict));
+        return exceeded.isEmpty();
+    }
+    
+    private void handleHistory(CommandSender sender, String[] args) {
+        if (args.length < 2) {
+            sender.sendMessage(Component.text("Usage: /mws history <player>").color(NamedTextColor.RED));
+            return;
+        }
+        String playerName = args[1];
+        showDeliveries(sender, "Deliveries to " + playerName,
+            () -> plugin.getDeliveryLedger().findByPlayer(playerName, HISTORY_DELIVERIES_SHOWN));
+    }
+    
+    private void handleOrder(CommandSender sender, String[] args) {
+        int orderId;
+        try {
+            orderId = args.length > 1 ? Integer.parseInt(args[1].replace("#", "")) : -1;
+        } catch (NumberFormatException e) {
+            orderId = -1;
+        }
+        if (orderId < 0) {
+            sender.sendMessage(Component.text("Usage: /mws order <id>").color(NamedTextColor.RED));
+            return;
+        }
+        int id = orderId;
+        showDeliveries(sender, "Deliveries of order #" + id,
+            () -> plugin.getDeliveryLedger().findByOrder(id, ORDER_DELIVERIES_SHOWN));
+    }
+    
+    /**
+     * Search the delivery ledger off the main thread and list what it found back on the main thread
+     */
+    private void showDeliveries(CommandSender sender, String title, Callable<List<DeliveryRecord>> search) {
+        if (!plugin.getDeliveryLedger().isLoaded()) {
+            sender.sendMessage(Component.text("The delivery ledger is not available, check that ledger.enabled is true "
+                + "and the console for errors").color(NamedTextColor.RED));
+            return;
+        }
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<DeliveryRecord> deliveries;
+            try {
+                deliveries = search.call();
+            } catch (Exception e) {
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                    sender.sendMessage(Component.text("Error reading the delivery ledger: " + e.getMessage()).color(NamedTextColor.RED)));
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> listDeliveries(sender, title, deliveries));
+        });
+    }
+            
+    private void listDeliveries(CommandSender sender, String title, List<DeliveryRecord> deliveries) {
+        sender.sendMessage(Component.text("=== " + title + " ===").color(NamedTextColor.GOLD));
+        if (deliveries.isEmpty()) {
+            sender.sendMessage(Component.text("No deliveries recorded").color(NamedTextColor.GRAY));
+            return;
+        }
+        for (DeliveryRecord delivery : deliveries) {
+            String store = delivery.getStore() == null ? "" : " (" + delivery.getStore() + ")";
+            sender.sendMessage(Component.text(DELIVERY_TIME.format(Instant.ofEpochMilli(delivery.getDeliveredAt())) + " ")
+                    .color(NamedTextColor.GRAY)
+                .append(Component.text(delivery.isSuccess() ? "✓ " : "✗ ")
+                    .color(delivery.isSuccess() ? NamedTextColor.GREEN : NamedTextColor.RED))
+                .append(Component.text("#" + delivery.getOrderId() + store + " " + delivery.getPlayerName() + ": ")
+                    .color(NamedTextColor.YELLOW))
+                .append(Component.text(delivery.getCommand() + (delivery.getRepeat() > 1 ? " x" + delivery.getRepeat() : ""))
+                    .color(NamedTextColor.WHITE))
+                .append(Component.text(" " + delivery.getDurationMicros() + "µs").color(NamedTextColor.GRAY)));
+            if (delivery.getMessage() != null) {
+                sender.sendMessage(Component.text("  " + delivery.getMessage()).color(NamedTextColor.GRAY));
+            }
+        }
+    }
+    
     private void handleTest(CommandSender sender) {
         sender.sendMessage(Component.text("Testing WordPress connection...").color(NamedTextColor.YELLOW));
         
@@ -147,7 +483,7 @@ public class MWSCommand implements CommandExecutor {
             sender.sendMessage(Component.text("=== Commands for " + originalPlayerName + " ===").color(NamedTextColor.GOLD));
             
             // Show processing commands (from CommandManager)
-            List<PendingCommand> processingCommands = plugin.getCommandManager().getProcessingCommands();
+            List<PendingCommand> processingCommands = getProcessingCommands();
             List<PendingCommand> playerProcessingCommands = processingCommands.stream()
                 .filter(cmd -> cmd.getPlayerName().equalsIgnoreCase(playerName))
                 .toList();
@@ -163,38 +499,27 @@ public class MWSCommand implements CommandExecutor {
                 }
             }
             
-            // Show queued commands (from PlayerCacheManager)
-            List<PendingCommand> queuedCommands = plugin.getPlayerCacheManager().getQueuedCommandsForPlayer(originalPlayerName);
-            sender.sendMessage(Component.text("Queued Commands: ").color(NamedTextColor.YELLOW)
-                .append(Component.text(String.valueOf(queuedCommands.size())).color(NamedTextColor.WHITE)));
-                
-            if (!queuedCommands.isEmpty()) {
-                for (int i = 0; i < Math.min(queuedCommands.size(), 5); i++) {
-                    PendingCommand cmd = queuedCommands.get(i);
-                    sender.sendMessage(Component.text("  Q" + (i + 1) + ". ").color(NamedTextColor.GREEN)
-                        .append(Component.text(cmd.getCommand()).color(NamedTextColor.WHITE)));
+            // Show queued commands (from PlayerCacheManager); their shard is read off the main thread
+            boolean execute = args.length > 2 && args[2].equalsIgnoreCase("execute");
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                List<PendingCommand> queuedCommands;
+                try {
+                    queuedCommands = plugin.getPlayerCacheManager().getQueuedCommandsForPlayer(originalPlayerName);
+                } catch (IOException e) {
+                    plugin.getServer().getScheduler().runTask(plugin, () ->
+                        sender.sendMessage(Component.text("Error reading queued commands: " + e.getMessage()).color(NamedTextColor.RED)));
+                    return;
                 }
-                
-                // Add option to manually execute queued commands
-                sender.sendMessage(Component.text("To execute queued commands, run: ").color(NamedTextColor.GRAY)
-                    .append(Component.text("/mws pending " + originalPlayerName + " execute").color(NamedTextColor.YELLOW)));
-            }
-            
-            // Check for execute parameter
-            if (args.length > 2 && args[2].equalsIgnoreCase("execute")) {
-                if (!queuedCommands.isEmpty()) {
-                    sender.sendMessage(Component.text("Executing " + queuedCommands.size() + " queued commands for " + originalPlayerName + "...")
-                        .color(NamedTextColor.YELLOW));
+                if (execute && !queuedCommands.isEmpty()) {
                     plugin.getPlayerCacheManager().executeQueuedCommandsForPlayer(originalPlayerName);
-                    sender.sendMessage(Component.text("Queued commands executed!").color(NamedTextColor.GREEN));
-                } else {
-                    sender.sendMessage(Component.text("No queued commands to execute for " + originalPlayerName).color(NamedTextColor.GRAY));
                 }
-            }
+                plugin.getServer().getScheduler().runTask(plugin, () ->
+                    showQueuedCommands(sender, originalPlayerName, queuedCommands, execute));
+            });
             
         } else {
             // Show summary of all commands
-            List<PendingCommand> processingCommands = plugin.getCommandManager().getProcessingCommands();
+            List<PendingCommand> processingCommands = getProcessingCommands();
             int queuedCount = plugin.getPlayerCacheManager().getQueuedCommandsCount();
                 
             sender.sendMessage(Component.text("=== All Commands Summary ===").color(NamedTextColor.GOLD));
@@ -223,4 +548,31 @@ public class MWSCommand implements CommandExecutor {
             sender.sendMessage(Component.text("Use '/mws pending <player>' to see specific player's commands").color(NamedTextColor.GRAY));
         }
     }
+    
+    private void showQueuedCommands(CommandSender sender, String playerName, List<PendingCommand> queuedCommands, boolean executed) {
+        sender.sendMessage(Component.text("Queued Commands: ").color(NamedTextColor.YELLOW)
+            .append(Component.text(String.valueOf(queuedCommands.size())).color(NamedTextColor.WHITE)));
+            
+        if (!queuedCommands.isEmpty()) {
+            for (int i = 0; i < Math.min(queuedCommands.size(), 5); i++) {
+                PendingCommand cmd = queuedCommands.get(i);
+                sender.sendMessage(Component.text("  Q" + (i + 1) + ". ").color(NamedTextColor.GREEN)
+                    .append(Component.text(cmd.getCommand()).color(NamedTextColor.WHITE)));
+            }
+            
+            // Add option to manually execute queued commands
+            sender.sendMessage(Component.text("To execute queued commands, run: ").color(NamedTextColor.GRAY)
+                .append(Component.text("/mws pending " + playerName + " execute").color(NamedTextColor.YELLOW)));
+        }
+        
+        if (executed) {
+            if (!queuedCommands.isEmpty()) {
+                sender.sendMessage(Component.text("Executing " + queuedCommands.size() + " queued commands for " + playerName + "...")
+                    .color(NamedTextColor.YELLOW));
+                sender.sendMessage(Component.text("Queued commands are being delivered!").color(NamedTextColor.GREEN));
+            } else {
+                sender.sendMessage(Component.text("No queued commands to execute for " + playerName).color(NamedTextColor.GRAY));
+            }
+        }
+    }
 }
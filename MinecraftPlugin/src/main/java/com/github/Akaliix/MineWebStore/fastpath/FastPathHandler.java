@@ -0,0 +1,40 @@
+package com.github.Akaliix.MineWebStore.fastpath;
+
+import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
+
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Executes one shape of store command through the server API instead of
+ * {@code Bukkit.dispatchCommand}. Handlers are registered with the
+ * {@link FastPathRegistry}; other plugins can add their own.
+ */
+public interface FastPathHandler {
+    
+    /**
+     * Short name used in logs and metrics
+     */
+    String getName();
+    
+    /**
+     * Pattern the whole command text has to match; compiled once at registration
+     */
+    Pattern getPattern();
+    
+    /**
+     * Execute a matching command. Always called on the main thread.
+     * @param match the groups captured by {@link #getPattern()}
+     * @return the result, or null to decline and let the command be dispatched normally
+     */
+    CommandResultDetector.CommandResult execute(MatchResult match);
+    
+    /**
+     * Execute a matching command {@code repeat} times in a single call, for commands
+     * that take a quantity. The default declines, so the command is run once per repeat.
+     * @return the combined result, or null if the command cannot be collapsed
+     */
+    default CommandResultDetector.CommandResult executeRepeated(MatchResult match, int repeat) {
+        return null;
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.Akaliix.MineWebStore.fastpath;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+
+/**
+ * Routes store commands to {@link FastPathHandler}s.
+ * The handler match for a command text is computed once and cached, since
+ * the same command is usually delivered many times (one row per item bought).
+ * Commands no handler accepts fall back to normal dispatch, and the hit rate is tracked.
+ */
+public class FastPathRegistry {
+    
+    private static final int MATCH_CACHE_SIZE = 512;
+    private static final Match NO_MATCH = new Match(null, null);
+    
+    private final MineWebStorePlugin plugin;
+    private final List<FastPathHandler> handlers = new CopyOnWriteArrayList<>();
+    private final Map<String, Match> matchCache;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private volatile boolean enabled = true;
+    
+    public FastPathRegistry(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+        this.matchCache = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Match> eldest) {
+                return size() > MATCH_CACHE_SIZE;
+            }
+        };
+    }
+    
+    /**
+     * Register a handler; it is tried after the handlers registered before it
+     */
+    public void register(FastPathHandler handler) {
+        handlers.add(handler);
+        clearCache();
+        plugin.trace(Tracer.Category.GENERAL, () -> "Registered fast path handler: " + handler.getName());
+    }
+    
+    public void unregister(FastPathHandler handler) {
+        handlers.remove(handler);
+        clearCache();
+    }
+    
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+    
+    /**
+     * Execute a command through a matching handler
+     * @return the result, or null if the command has to be dispatched normally
+     */
+    public CommandResultDetector.CommandResult tryExecute(String command) {
+        if (!enabled || handlers.isEmpty()) {
+            misses.increment();
+            return null;
+        }
+        
+        Match match = findMatch(command);
+        if (match != NO_MATCH) {
+            try {
+                CommandResultDetector.CommandResult result = match.handler.execute(match.result);
+                if (result != null) {
+                    hits.increment();
+                    return result;
+                }
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Fast path handler " + match.handler.getName()
+                    + " failed, dispatching command instead: " + command, e);
+            }
+        }
+        
+        misses.increment();
+        return null;
+    }
+    
+    /**
+     * Execute a command {@code repeat} times in one call through a handler that supports it
+     * @return the combined result, or null if the command has to be run once per repeat
+     */
+    public CommandResultDetector.CommandResult tryExecuteRepeated(String command, int repeat) {
+        if (!enabled || handlers.isEmpty()) {
+            return null;
+        }
+        
+        Match match = findMatch(command);
+        if (match != NO_MATCH) {
+            try {
+                CommandResultDetector.CommandResult result = match.handler.executeRepeated(match.result, repeat);
+                if (result != null) {
+                    hits.add(repeat);
+                    return result;
+                }
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.WARNING, "Fast path handler " + match.handler.getName()
+                    + " failed, running command once per repeat instead: " + command, e);
+            }
+        }
+        return null;
+    }
+    
+    private Match findMatch(String command) {
+        synchronized (matchCache) {
+            Match cached = matchCache.get(command);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        
+        Match match = NO_MATCH;
+        String trimmed = command.trim();
+        for (FastPathHandler handler : handlers) {
+            Matcher matcher = handler.getPattern().matcher(trimmed);
+            if (matcher.matches()) {
+                match = new Match(handler, matcher.toMatchResult());
+                break;
+            }
+        }
+        
+        synchronized (matchCache) {
+            matchCache.put(command, match);
+        }
+        return match;
+    }
+    
+    private void clearCache() {
+        synchronized (matchCache) {
+            matchCache.clear();
+        }
+    }
+    
+    public long getHits() {
+        return hits.sum();
+    }
+    
+    public long getMisses() {
+        return misses.sum();
+    }
+    
+    /**
+     * Fraction of executed commands handled by the fast path, between 0 and 1
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0.0 : (double) hitCount / total;
+    }
+    
+    private static final class Match {
+        private final FastPathHandler handler;
+        private final MatchResult result;
+        
+        private Match(FastPathHandler handler, MatchResult result) {
+            this.handler = handler;
+            this.result = result;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.Akaliix.MineWebStore.fastpath;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
+import org.bukkit.Material;
+import org.bukkit.command.Command;
+import org.bukkit.command.PluginIdentifiableCommand;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.UUID;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
+
+/**
+ * Handles plain {@code give <player> <item> [amount]} by adding the items to the
+ * player's inventory directly. Items that do not fit are dropped at the player's
+ * feet, as vanilla /give does. Items with NBT or components, amounts beyond
+ * vanilla's limit of 100 stacks, and servers where a plugin such as Essentials
+ * has taken over /give are left to the command itself.
+ */
+public class GiveHandler implements FastPathHandler {
+    
+    private static final Pattern PATTERN = Pattern.compile(
+        "(minecraft:)?give\\s+(\\w{1,16})\\s+(?:minecraft:)?([a-z0-9_]+)(?:\\s+(\\d{1,5}))?",
+        Pattern.CASE_INSENSITIVE);
+    
+    // Vanilla /give refuses to give more than this many stacks at once
+    private static final int MAX_STACKS = 100;
+    
+    private final MineWebStorePlugin plugin;
+    
+    public GiveHandler(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    @Override
+    public String getName() {
+        return "give";
+    }
+    
+    @Override
+    public Pattern getPattern() {
+        return PATTERN;
+    }
+    
+    @Override
+    public CommandResultDetector.CommandResult execute(MatchResult match) {
+        return executeRepeated(match, 1);
+    }
+    
+    /**
+     * Giving an item N times is the same as giving N times the amount
+     */
+    @Override
+    public CommandResultDetector.CommandResult executeRepeated(MatchResult match, int repeat) {
+        if (match.group(1) == null && !isVanillaGive()) {
+            return null; // Another plugin's /give, which may behave differently
+        }
+        UUID uniqueId = plugin.getPresenceIndex().getUniqueId(match.group(2));
+        Player player = uniqueId == null ? null : plugin.getServer().getPlayer(uniqueId);
+        Material material = Material.matchMaterial(match.group(3));
+        if (player == null || material == null || !material.isItem()) {
+            return null; // Let /give produce its usual error
+        }
+        
+        // Collapsed repeats must stay within the limit of a single /give, otherwise each repeat
+        // is dispatched on its own and spread over ticks like any other repeated command
+        int maxStackSize = material.getMaxStackSize();
+        long amount = (match.group(4) != null ? Long.parseLong(match.group(4)) : 1) * repeat;
+        if (amount < 1 || amount > (long) maxStackSize * MAX_STACKS) {
+            return null;
+        }
+        
+        long remaining = amount;
+        while (remaining > 0) {
+            int stackSize = (int) Math.min(remaining, maxStackSize);
+            for (ItemStack leftover : player.getInventory().addItem(new ItemStack(material, stackSize)).values()) {
+                player.getWorld().dropItem(player.getLocation(), leftover);
+            }
+            remaining -= stackSize;
+        }
+        
+        return new CommandResultDetector.CommandResult(true, "Gave " + amount + " " + match.group(3) + " to " + player.getName());
+    }
+    
+    /**
+     * @return whether {@code give} resolves to the vanilla command rather than one registered by a plugin
+     */
+    private boolean isVanillaGive() {
+        Command command = plugin.getServer().getCommandMap().getCommand("give");
+        return command != null && !(command instanceof PluginIdentifiableCommand);
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.Akaliix.MineWebStore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Running one store command on the main thread
+ */
+@Name("minewebstore.Dispatch")
+@Label("Command Dispatch")
+@Category({"MineWebStore", "Delivery"})
+@Description("Running one store command, through the fast path or the command dispatcher")
+public class DispatchEvent extends jdk.jfr.Event {
+    
+    @Label("Command")
+    @Description("First word of the command; arguments are left out as they hold player names")
+    public String command;
+    
+    @Label("Fast Path")
+    public boolean fastPath;
+    
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,35 @@
+package com.github.Akaliix.MineWebStore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One request to WordPress and its response
+ */
+@Name("minewebstore.HttpExchange")
+@Label("WordPress Request")
+@Category({"MineWebStore", "HTTP"})
+@Description("A request to the WordPress store and its response")
+public class HttpExchangeEvent extends jdk.jfr.Event {
+    
+    @Label("Endpoint")
+    public String endpoint;
+    
+    @Label("Method")
+    public String method;
+    
+    @Label("Status")
+    @Description("HTTP status code, or -1 if no response was received")
+    public int status;
+    
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+    
+    @Label("Response Size")
+    @DataAmount
+    public long responseBytes;
+}
@@ -0,0 +1,26 @@
+package com.github.Akaliix.MineWebStore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One player history sync with WordPress, including the hash check
+ */
+@Name("minewebstore.PlayerSync")
+@Label("Player Sync")
+@Category({"MineWebStore", "Delivery"})
+@Description("Sending the list of players who ever joined to WordPress")
+public class PlayerSyncEvent extends jdk.jfr.Event {
+    
+    @Label("Players")
+    public int players;
+    
+    @Label("Uploaded")
+    @Description("False when the list was unchanged since the last sync")
+    public boolean uploaded;
+    
+    @Label("Success")
+    public boolean success;
+}
@@ -0,0 +1,24 @@
+package com.github.Akaliix.MineWebStore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One poll of WordPress for pending commands, from the request until the
+ * commands were claimed and handed on
+ */
+@Name("minewebstore.Poll")
+@Label("Command Poll")
+@Category({"MineWebStore", "Delivery"})
+@Description("Polling WordPress for pending commands and handing them on")
+public class PollEvent extends jdk.jfr.Event {
+    
+    @Label("Commands")
+    public int commands;
+    
+    @Label("Claimed")
+    @Description("Whether the commands were claimed and handed on for execution")
+    public boolean claimed;
+}
@@ -0,0 +1,46 @@
+package com.github.Akaliix.MineWebStore.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * One write to a data file: queued commands, player history or scheduled commands
+ */
+@Name("minewebstore.StoreSave")
+@Label("Data File Write")
+@Category({"MineWebStore", "Storage"})
+@Description("A write to one of the plugin's data files")
+public class StoreSaveEvent extends jdk.jfr.Event {
+    
+    @Label("Store")
+    @Description("queue, history or scheduled")
+    public String store;
+    
+    @Label("Operation")
+    @Description("append, snapshot or compact")
+    public String operation;
+    
+    @Label("Entries")
+    public int entries;
+    
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+    
+    /**
+     * End the event and commit it with the given details, if it is being recorded
+     */
+    public void commit(String store, String operation, int entries, long bytes) {
+        end();
+        if (shouldCommit()) {
+            this.store = store;
+            this.operation = operation;
+            this.entries = entries;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
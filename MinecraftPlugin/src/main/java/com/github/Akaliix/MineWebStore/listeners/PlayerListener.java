@@ -1,26 +1,61 @@
 package com.github.Akaliix.MineWebStore.listeners;
 
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
 import com.github.Akaliix.MineWebStore.managers.PlayerCacheManager;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
 import com.github.Akaliix.MineWebStore.managers.PlayerHistoryManager;
+import com.github.Akaliix.MineWebStore.managers.ProxyBridge;
+import com.github.Akaliix.MineWebStore.utils.CostStats;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 
+/**
+ * Join and quit run on the main thread, so they only do constant-time work in
+ * memory; disk writes, WordPress sync and queued commands are handed off to
+ * background tasks. Managers are looked up per event so a config reload takes effect.
+ */
 public class PlayerListener implements Listener {
     
-    private final PlayerCacheManager playerCacheManager;
-    private final PlayerHistoryManager playerHistoryManager;
+    private final MineWebStorePlugin plugin;
     
-    public PlayerListener(PlayerCacheManager playerCacheManager, PlayerHistoryManager playerHistoryManager) {
-        this.playerCacheManager = playerCacheManager;
-        this.playerHistoryManager = playerHistoryManager;
+    public PlayerListener(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
     }
     
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
+        long start = System.nanoTime();
+        long allocated = CostStats.allocatedBytes();
         Player player = event.getPlayer();
+        plugin.getPresenceIndex().join(player);
+        
+        if (!plugin.getDataReady().isDone()) {
+            // Stored data is still loading; finish handling the join on the main thread once it is
+            plugin.getDataReady().whenComplete((ignored, error) ->
+                plugin.getServer().getScheduler().runTask(plugin, () -> {
+                    if (player.isOnline()) {
+                        handleJoin(player);
+                    }
+                }));
+            return;
+        }
+        
+        handleJoin(player);
+        plugin.getPerformanceMonitor().record(PerformanceMonitor.Probe.JOIN, start, allocated);
+        
+        ProxyBridge proxyBridge = plugin.getProxyBridge();
+        if (proxyBridge != null) {
+            // Results held while the server was empty can go out once the proxy knows this connection
+            plugin.getServer().getScheduler().runTaskLater(plugin, proxyBridge::flushResults, 20L);
+        }
+    }
+    
+    private void handleJoin(Player player) {
+        PlayerHistoryManager playerHistoryManager = plugin.getPlayerHistoryManager();
+        PlayerCacheManager playerCacheManager = plugin.getPlayerCacheManager();
         
         // Add player to history and check if they're new
         boolean isNewPlayer = playerHistoryManager.addPlayerIfNew(player);
@@ -30,16 +65,18 @@ public class PlayerListener implements Listener {
             playerCacheManager.onNewPlayerJoin(player);
         } else {
             // For existing players, just execute any queued commands
-            playerCacheManager.executeQueuedCommandsForPlayer(player.getName());
+            playerCacheManager.onPlayerJoin(player);
         }
-        
-        // Always update online players list (for Java-side use)
-        playerCacheManager.updateOnlinePlayersList();
     }
     
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         // Update online players list when someone leaves
-        playerCacheManager.updateOnlinePlayersList();
+        plugin.getPresenceIndex().quit(event.getPlayer());
+        
+        PlayerCacheManager playerCacheManager = plugin.getPlayerCacheManager();
+        if (playerCacheManager != null) {
+            playerCacheManager.onPlayerQuit(event.getPlayer());
+        }
     }
 }
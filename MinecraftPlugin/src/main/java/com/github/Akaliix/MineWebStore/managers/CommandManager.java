@@ -6,76 +6,195 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
 import com.github.Akaliix.MineWebStore.api.WordPressAPI;
+import com.github.Akaliix.MineWebStore.jfr.PollEvent;
+import com.github.Akaliix.MineWebStore.models.CommandGroup;
+import com.github.Akaliix.MineWebStore.models.CommandStatusUpdate;
 import com.github.Akaliix.MineWebStore.models.PendingCommand;
 import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
+import com.github.Akaliix.MineWebStore.utils.InFlightCounter;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
 import org.bukkit.scheduler.BukkitRunnable;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
 
 public class CommandManager {
     
+    // After this many failed polls in a row the circuit opens: polls are skipped, backing off up to the maximum
+    private static final int FAILURES_TO_OPEN = 3;
+    private static final int MAX_SKIPPED_POLLS = 32;
+    
     private final WordPressAPI wordPressAPI;
     private final String serverName;
     private final MineWebStorePlugin plugin;
+    private final String store;
     private final Map<Integer, PendingCommand> processingCommands;
     private final CommandResultDetector commandDetector;
+    private final Object pollLock = new Object();
+    private final InFlightCounter groupsInFlight = new InFlightCounter(); // Started, not yet reported
+    private volatile boolean closed = false;
+    private volatile int consecutiveFailures = 0; // Written under pollLock
+    private int pollsToSkip = 0; // Guarded by pollLock
     
     public CommandManager(WordPressAPI wordPressAPI, String serverName, MineWebStorePlugin plugin) {
+        this(wordPressAPI, serverName, plugin, null);
+    }
+    
+    /**
+     * @param store the store polled, null for the main store; its commands are tagged with it
+     */
+    public CommandManager(WordPressAPI wordPressAPI, String serverName, MineWebStorePlugin plugin, String store) {
         this.wordPressAPI = wordPressAPI;
         this.serverName = serverName;
         this.plugin = plugin;
+        this.store = store;
         this.processingCommands = new HashMap<>();
         this.commandDetector = new CommandResultDetector(plugin);
     }
     
+    /**
+     * Poll WordPress once. Polls never overlap, so a slow poll delays the next
+     * one instead of both claiming the same commands. While the store cannot be
+     * reached, polls are skipped for longer and longer (up to {@value #MAX_SKIPPED_POLLS}
+     * poll intervals) rather than waiting for a timeout every time.
+     */
     public void processCommands() {
-        try {
+        synchronized (pollLock) {
+            if (closed) {
+                return; // Superseded by a config reload
+            }
+            if (pollsToSkip > 0) {
+                pollsToSkip--;
+                return;
+            }
+            if (poll()) {
+                if (consecutiveFailures >= FAILURES_TO_OPEN) {
+                    plugin.getLogger().info("Store " + getStoreName() + " is reachable again, polling resumed");
+                }
+                consecutiveFailures = 0;
+            } else {
+                int failures = consecutiveFailures + 1;
+                consecutiveFailures = failures;
+                if (failures >= FAILURES_TO_OPEN) {
+                    pollsToSkip = Math.min(1 << Math.min(failures - FAILURES_TO_OPEN, 5), MAX_SKIPPED_POLLS);
+                    if (failures == FAILURES_TO_OPEN) {
+                        plugin.getLogger().warning("Store " + getStoreName() + " failed " + failures + " polls in a row, backing off");
+                    }
+                }
+            }
+        }
+    }
+    
+    private String getStoreName() {
+        return store == null ? StoreConnection.MAIN_STORE_NAME : store;
+    }
+    
+    /**
+     * @return failed polls in a row; from {@value #FAILURES_TO_OPEN} on, polls are being skipped
+     */
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+    
+    public boolean isCircuitOpen() {
+        return consecutiveFailures >= FAILURES_TO_OPEN;
+    }
+    
+    /**
+     * Make no further polls; commands already claimed still run and are reported
+     */
+    public void close() {
+        closed = true;
+    }
+    
+    /**
+     * Wait until a poll that is still running has finished and every group it
+     * started has been reported. Must not be called on the main thread, which runs the groups.
+     * @param deadlineNanos give up at this {@link System#nanoTime()}
+     * @return false if groups were still unreported at the deadline
+     */
+    public boolean awaitIdle(long deadlineNanos) throws InterruptedException {
+        synchronized (pollLock) {
+            // Nothing to do, holding the lock means the last poll has handed out its groups
+        }
+        return groupsInFlight.awaitZero(deadlineNanos);
+    }
+    
+    /**
+     * @return false if WordPress could not be reached or refused the request
+     */
+    private boolean poll() {
+        PollEvent event = new PollEvent();
+        event.begin();
+        try (Tracer.Sample sample = plugin.getTracer().sample(Tracer.Category.POLL)) {
             List<PendingCommand> commands = fetchPendingCommands();
+            if (commands == null) {
+                return false;
+            }
+            event.commands = commands.size();
             if (commands.isEmpty()) {
-                plugin.debug("No pending commands found");
-                return;
+                plugin.trace(Tracer.Category.POLL, () -> "No pending commands found in store " + getStoreName());
+                return true;
             }
             
-            plugin.debug("Found " + commands.size() + " pending commands");
+            plugin.trace(Tracer.Category.POLL, () -> "Found " + commands.size() + " pending commands in store " + getStoreName());
             
             // Mark commands as read and execute them
-            if (markCommandsAsRead(commands)) {
-                executeCommands(commands);
+            if (!markCommandsAsRead(commands)) {
+                return false;
             }
+            event.claimed = true;
+            executeCommands(commands);
+            return true;
             
         } catch (Exception e) {
-            plugin.debug("Error processing commands: " + e.getMessage());
+            plugin.trace(Tracer.Category.POLL, () -> "Error processing commands: " + e.getMessage());
+            return false;
+        } finally {
+            event.commit();
         }
     }
     
+    /**
+     * @return the pending commands, or null if they could not be fetched
+     */
     private List<PendingCommand> fetchPendingCommands() {
         try {
             String response = wordPressAPI.getPendingCommands(serverName);
             if (response == null) {
-                return new ArrayList<>();
+                return null;
             }
             
             JsonObject responseObj = JsonParser.parseString(response).getAsJsonObject();
             if (!responseObj.get("success").getAsBoolean()) {
-                plugin.debug("Failed to get pending commands: " + response);
-                return new ArrayList<>();
+                plugin.trace(Tracer.Category.POLL, () -> "Failed to get pending commands: " + response);
+                return null;
             }
             
             JsonArray commandsArray = responseObj.getAsJsonArray("commands");
-            return parseCommands(commandsArray);
+            return parseCommands(commandsArray, store);
             
         } catch (Exception e) {
-            plugin.debug("Error fetching pending commands: " + e.getMessage());
-            return new ArrayList<>();
+            plugin.trace(Tracer.Category.POLL, () -> "Error fetching pending commands: " + e.getMessage());
+            return null;
         }
     }
     
-    private List<PendingCommand> parseCommands(JsonArray commandsArray) {
+    /**
+     * Parse commands in the format of the WordPress poll response (also used by the proxy)
+     */
+    static List<PendingCommand> parseCommands(JsonArray commandsArray) {
+        return parseCommands(commandsArray, null);
+    }
+    
+    /**
+     * Parse commands of the poll response, tagging them with the store they came from (null for the main store)
+     */
+    static List<PendingCommand> parseCommands(JsonArray commandsArray, String store) {
         List<PendingCommand> commands = new ArrayList<>();
         
         for (JsonElement element : commandsArray) {
@@ -86,6 +205,10 @@ public class CommandManager {
                 runMode = commandObj.get("run_mode").getAsString();
             }
             
+            int repeat = commandObj.has("repeat") ? commandObj.get("repeat").getAsInt() : 1;
+            long runAt = commandObj.has("run_at") && !commandObj.get("run_at").isJsonNull()
+                ? commandObj.get("run_at").getAsLong() : 0L;
+            
             PendingCommand command = new PendingCommand(
                 commandObj.get("id").getAsInt(),
                 commandObj.get("order_id").getAsInt(),
@@ -93,7 +216,10 @@ public class CommandManager {
                 commandObj.get("player_name").getAsString(),
                 commandObj.get("command").getAsString(),
                 runMode,
-                commandObj.get("created_at").getAsString()
+                commandObj.get("created_at").getAsString(),
+                repeat,
+                runAt,
+                store
             );
             
             commands.add(command);
@@ -119,133 +245,156 @@ public class CommandManager {
             boolean success = responseObj.get("success").getAsBoolean();
             
             if (success) {
-                plugin.debug("Marked " + commandIds.size() + " commands as read");
+                plugin.trace(Tracer.Category.POLL, () -> "Marked " + commandIds.size() + " commands as read");
             }
             
             return success;
             
         } catch (Exception e) {
-            plugin.debug("Error marking commands as read: " + e.getMessage());
+            plugin.trace(Tracer.Category.POLL, () -> "Error marking commands as read: " + e.getMessage());
             return false;
         }
     }
     
     private void executeCommands(List<PendingCommand> commands) {
+        List<PendingCommand> ready = new ArrayList<>(commands.size());
+        List<PendingCommand> delayed = new ArrayList<>();
         for (PendingCommand command : commands) {
             if (command.shouldRunAlways()) {
-                executeCommand(command);
+                ready.add(command);
             } else if (command.shouldRunWhenPlayerOnline()) {
-                handleOnlineCommand(command);
+                handleOnlineCommand(command, ready);
+            } else if (command.isDelayed()) {
+                delayed.add(command);
+                processingCommands.remove(command.getId()); // Waits in the delayed command manager, possibly for weeks
             }
         }
+        
+        plugin.getDelayedCommandManager().schedule(delayed);
+        
+        // Each order's commands run together and are reported together
+        for (CommandGroup group : CommandGroup.byOrder(ready)) {
+            executeGroup(group, command -> { });
+        }
     }
     
-    private void handleOnlineCommand(PendingCommand command) {
-        Player player = Bukkit.getPlayerExact(command.getPlayerName());
-        if (isPlayerOnline(player)) {
-            executeCommand(command);
+    private void handleOnlineCommand(PendingCommand command, List<PendingCommand> ready) {
+        // Runs on the polling thread; the presence index is safe to read here, the Bukkit API is not
+        if (isPlayerOnline(command.getPlayerName())) {
+            ready.add(command);
         } else {
             queueCommandForLater(command);
         }
     }
     
-    private boolean isPlayerOnline(Player player) {
-        return player != null && player.isOnline();
+    private boolean isPlayerOnline(String playerName) {
+        return plugin.getPresenceIndex().isOnline(playerName);
     }
     
     private void queueCommandForLater(PendingCommand command) {
         plugin.getPlayerCacheManager().queueCommandForPlayer(command);
-        plugin.debug("Queued command for offline player " + command.getPlayerName() + ": " + command.getCommand());
+        plugin.trace(Tracer.Category.QUEUE, () -> "Queued command for offline player " + command.getPlayerName() + ": " + command.getCommand());
     }
     
-    private void executeCommand(PendingCommand command) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                CommandExecutionResult result = performCommandExecution(command);
-                updateCommandStatus(command.getId(), result.isSuccess(), result.getMessage());
-            }
-        }.runTask(plugin);
+    /**
+     * @param ran called on the main thread with each command once it has run, before the results are reported
+     */
+    void executeGroup(CommandGroup group, Consumer<PendingCommand> ran) {
+        // The scheduler runs it on the main thread once it is this player's and order's turn,
+        // where every result callback is also called; the results are reported together
+        groupsInFlight.begin();
+        List<CommandStatusUpdate> updates = new ArrayList<>(group.size());
+        plugin.getCommandScheduler().submit(group, command ->
+            performCommandExecution(command, result -> {
+                ran.accept(command);
+                updates.add(new CommandStatusUpdate(command.getId(), result.isSuccess(), result.getMessage(), result.getSlowMicros(),
+                    result.getCompletedRuns()));
+                if (updates.size() == group.size()) {
+                    updateGroupStatus(group, updates);
+                }
+            }));
     }
     
-    private CommandExecutionResult performCommandExecution(PendingCommand command) {
+    private void performCommandExecution(PendingCommand command, Consumer<CommandExecutionResult> callback) {
         try {
             logCommandExecution(command);
             
-            CommandResultDetector.CommandResult result = executeCommandWithDetector(command);
+            executeCommandWithDetector(command, result -> {
+                boolean success = result.isSuccess();
+                String message = result.getMessage();
             
-            boolean success = result.isSuccess();
-            String message = result.getMessage();
+                logExecutionResult(command, success, message);
             
-            logExecutionResult(command, success, message);
-            
-            return new CommandExecutionResult(success, message);
+                callback.accept(new CommandExecutionResult(success, message, result.getSlowMicros(), result.getCompletedRuns()));
+            });
             
         } catch (Exception e) {
             String errorMessage = "Command execution failed: " + e.getMessage();
-            plugin.debug("Command execution failed: " + command.getCommand() + " - " + e.getMessage());
-            return new CommandExecutionResult(false, errorMessage);
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Command execution failed: " + command.getCommand() + " - " + e.getMessage());
+            callback.accept(new CommandExecutionResult(false, errorMessage));
         }
     }
     
     private void logCommandExecution(PendingCommand command) {
-        Player player = Bukkit.getPlayerExact(command.getPlayerName());
-        boolean playerOnline = isPlayerOnline(player);
+        boolean playerOnline = isPlayerOnline(command.getPlayerName());
         
-        plugin.debug("Executing " + command.getRunMode() + " command for player " + command.getPlayerName() + 
-                   " (online: " + playerOnline + "): " + command.getCommand());
+        plugin.trace(Tracer.Category.DELIVERY, () -> "Executing " + command.getRunMode() + " command for player " + command.getPlayerName() + 
+                   " (online: " + playerOnline + "): " + command.getCommand() +
+                   (command.getRepeat() > 1 ? " x" + command.getRepeat() : ""));
     }
     
-    private CommandResultDetector.CommandResult executeCommandWithDetector(PendingCommand command) {
-        String commandText = command.getCommand();
+    private void executeCommandWithDetector(PendingCommand command, Consumer<CommandResultDetector.CommandResult> callback) {
+        String playerName = command.shouldRunWhenPlayerOnline() ? command.getPlayerName() : null;
         
-        if (command.shouldRunWhenPlayerOnline()) {
-            return commandDetector.executeCommand(commandText, command.getPlayerName());
-        } else {
-            return commandDetector.executeCommand(commandText);
-        }
+        commandDetector.executeProfiled(command, playerName, callback);
     }
     
     private void logExecutionResult(PendingCommand command, boolean success, String message) {
         if (success) {
-            plugin.debug("Command executed successfully: " + command.getCommand());
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Command executed successfully: " + command.getCommand());
         } else {
-            plugin.debug("Command execution failed: " + command.getCommand() + " - " + message);
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Command execution failed: " + command.getCommand() + " - " + message);
         }
     }
     
-    private void updateCommandStatus(int commandId, boolean success, String message) {
+    private void updateGroupStatus(CommandGroup group, List<CommandStatusUpdate> updates) {
         new BukkitRunnable() {
             @Override
             public void run() {
                 try {
-                    performStatusUpdate(commandId, success, message);
+                    if (Objects.equals(group.getStore(), store)) {
+                        performGroupStatusUpdate(group, updates);
+                    } else {
+                        // A delayed command of a store that has since been removed from the config
+                        plugin.getLogger().warning("Store " + group.getStore() + " is no longer configured, results of order "
+                            + group.getOrderId() + " were not reported");
+                    }
                 } catch (Exception e) {
-                    plugin.debug("Error updating command status: " + e.getMessage());
+                    plugin.trace(Tracer.Category.DELIVERY, () -> "Error updating command status: " + e.getMessage());
                 } finally {
-                    processingCommands.remove(commandId);
+                    for (PendingCommand command : group.getCommands()) {
+                        processingCommands.remove(command.getId());
+                    }
+                    groupsInFlight.end();
                 }
             }
         }.runTaskAsynchronously(plugin);
     }
     
-    private void performStatusUpdate(int commandId, boolean success, String message) {
-        String status = success ? "executed" : "failed";
-        String response = wordPressAPI.updateCommandStatus(serverName, commandId, status, message);
-        
-        if (response != null) {
-            handleStatusUpdateResponse(commandId, status, response);
-        } else {
-            plugin.debug("No response when updating command status for command " + commandId);
-        }
-    }
-    
-    private void handleStatusUpdateResponse(int commandId, String status, String response) {
-        JsonObject responseObj = JsonParser.parseString(response).getAsJsonObject();
-        if (responseObj.get("success").getAsBoolean()) {
-            plugin.debug("Updated command " + commandId + " status to " + status);
+    private void performGroupStatusUpdate(CommandGroup group, List<CommandStatusUpdate> updates) {
+        if (wordPressAPI.updateCommandStatuses(serverName, updates)) {
+            plugin.trace(Tracer.Category.DELIVERY, () -> {
+                int failed = 0;
+                for (CommandStatusUpdate update : updates) {
+                    if (!update.isSuccess()) {
+                        failed++;
+                    }
+                }
+                return "Reported order " + group.getOrderId() + ": " + (updates.size() - failed) + " executed, "
+                    + failed + " failed";
+            });
         } else {
-            plugin.debug("Failed to update command status: " + response);
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Failed to report command status for order " + group.getOrderId());
         }
     }
     
@@ -263,10 +412,18 @@ public class CommandManager {
     private static class CommandExecutionResult {
         private final boolean success;
         private final String message;
+        private final long slowMicros;
+        private final int completedRuns;
         
         public CommandExecutionResult(boolean success, String message) {
+            this(success, message, 0L, 0);
+        }
+        
+        public CommandExecutionResult(boolean success, String message, long slowMicros, int completedRuns) {
             this.success = success;
             this.message = message;
+            this.slowMicros = slowMicros;
+            this.completedRuns = completedRuns;
         }
         
         public boolean isSuccess() {
@@ -276,5 +433,13 @@ public class CommandManager {
         public String getMessage() {
             return message;
         }
+        
+        public long getSlowMicros() {
+            return slowMicros;
+        }
+        
+        public int getCompletedRuns() {
+            return completedRuns;
+        }
     }
 }
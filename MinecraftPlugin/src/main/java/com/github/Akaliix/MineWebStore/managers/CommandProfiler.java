@@ -0,0 +1,102 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import com.github.Akaliix.MineWebStore.utils.TimingStats;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Main thread time of store commands per WooCommerce product, so the products
+ * whose commands lag the server can be found. A command that takes longer than
+ * {@code performance.slow_command_us} is slow; how long it took is reported to
+ * WordPress with its result and shown in the admin command table.
+ */
+public class CommandProfiler {
+    
+    private static final long DEFAULT_SLOW_MICROS = 20_000L;
+    
+    private final MineWebStorePlugin plugin;
+    private volatile Map<Integer, ProductStats> products = new ConcurrentHashMap<>();
+    private volatile long slowNanos = DEFAULT_SLOW_MICROS * 1000L;
+    
+    public CommandProfiler(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Read the slow command threshold from the config, 0 turns slow command reporting off
+     */
+    public void configure() {
+        long micros = Math.max(0L, plugin.getConfig().getLong("performance.slow_command_us", DEFAULT_SLOW_MICROS));
+        slowNanos = micros == 0 ? Long.MAX_VALUE : micros * 1000L;
+    }
+    
+    /**
+     * Record how long one run of a store command took, over all its repeats
+     * @return whether the command was slow
+     */
+    public boolean record(PendingCommand command, long nanos) {
+        boolean slow = nanos > slowNanos;
+        products.computeIfAbsent(command.getProductId(), ProductStats::new).record(nanos, slow);
+        if (slow) {
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Slow command of product " + command.getProductId() + " took "
+                + nanos / 1000 + "µs: " + command.getCommand());
+        }
+        return slow;
+    }
+    
+    /**
+     * @return up to {@code limit} products, the most main thread time first
+     */
+    public List<ProductStats> getCostliest(int limit) {
+        List<ProductStats> sorted = new ArrayList<>(products.values());
+        sorted.sort(Comparator.comparingLong(ProductStats::getTotalNanos).reversed());
+        return sorted.size() > limit ? sorted.subList(0, limit) : sorted;
+    }
+    
+    /**
+     * Forget everything measured so far
+     */
+    public void reset() {
+        products = new ConcurrentHashMap<>();
+    }
+    
+    /**
+     * Timings of the commands of one product
+     */
+    public static final class ProductStats extends TimingStats {
+        private final int productId;
+        private final LongAdder slowCount = new LongAdder();
+        
+        private ProductStats(int productId) {
+            this.productId = productId;
+        }
+        
+        private void record(long nanos, boolean slow) {
+            record(nanos);
+            if (slow) {
+                slowCount.increment();
+            }
+        }
+        
+        public int getProductId() {
+            return productId;
+        }
+        
+        public long getSlowCount() {
+            return slowCount.sum();
+        }
+        
+        @Override
+        public String describe() {
+            return super.describe() + ", " + getSlowCount() + " slow";
+        }
+    }
+}
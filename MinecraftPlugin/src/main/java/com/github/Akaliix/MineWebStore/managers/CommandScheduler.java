@@ -0,0 +1,533 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.models.CommandGroup;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import com.github.Akaliix.MineWebStore.utils.CostStats;
+import com.github.Akaliix.MineWebStore.utils.TimingStats;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides in which order store commands run on the main thread.
+ *
+ * The unit of work is a {@link CommandGroup}: the commands of one order,
+ * which are reported to WordPress together. Groups are sorted into
+ * configurable priority classes, and a class is only served once every
+ * class above it is empty. Within a class, players take turns by deficit
+ * round-robin, where a group costs one credit per command repeat. Each
+ * player's orders take turns in the same way. So a huge order only slows
+ * down its own delivery, not every customer queued behind it. Every tick
+ * runs until either the command limit or the time budget is used up, which
+ * is checked before every command; a group cut off part way continues
+ * where it left off on the next tick, before anything else. A command that
+ * has to run several times hands its remaining runs back as a
+ * {@link Continuation}, and each run is counted like a command of its own.
+ */
+public class CommandScheduler {
+    
+    private static final String DEFAULT_CLASS = "default";
+    
+    private final MineWebStorePlugin plugin;
+    private final Queue<Job> inbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedCount = new AtomicInteger();
+    private final TimingStats waitTimings = new TimingStats();
+    private final TimingStats runTimings = new TimingStats();
+    
+    // Main thread only
+    private List<PriorityClass> priorityClasses = new ArrayList<>();
+    private List<ClassQueue> classQueues = new ArrayList<>();
+    private int quantum = 1;
+    private int maxCommandsPerTick = 50;
+    private long tickBudgetNanos = 5_000_000L;
+    private Job unfinished; // Cut off by the last tick's limits, continues first
+    private Job running; // Whose action is being called, for continueWith
+    private BukkitTask task;
+    
+    public CommandScheduler(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+    }
+    
+    /**
+     * Read the scheduling settings and re-sort anything already waiting.
+     * Must be called on the main thread.
+     */
+    public void configure() {
+        ConfigurationSection config = plugin.getConfig();
+        quantum = Math.max(1, config.getInt("scheduling.quantum", 1));
+        maxCommandsPerTick = Math.max(1, config.getInt("scheduling.max_commands_per_tick", 50));
+        tickBudgetNanos = Math.max(1L, config.getLong("execution.tick_budget_ms", 5)) * 1_000_000L;
+        
+        List<PriorityClass> classes = new ArrayList<>();
+        for (Map<?, ?> entry : config.getMapList("scheduling.priority_classes")) {
+            Object name = entry.get("name");
+            Object match = entry.get("match");
+            Object runMode = entry.get("run_mode");
+            try {
+                classes.add(new PriorityClass(
+                    name != null ? name.toString() : "class" + (classes.size() + 1),
+                    match != null ? Pattern.compile(match.toString(), Pattern.CASE_INSENSITIVE) : null,
+                    runMode != null ? runMode.toString() : null));
+            } catch (PatternSyntaxException e) {
+                plugin.getLogger().warning("Ignoring priority class " + name + " with invalid pattern: " + e.getMessage());
+            }
+        }
+        classes.add(new PriorityClass(DEFAULT_CLASS, null, null));
+        
+        // Keep waiting commands, in their current order, under the new classes
+        List<Job> waiting = new ArrayList<>();
+        for (ClassQueue queue : classQueues) {
+            queue.drainTo(waiting);
+        }
+        
+        priorityClasses = classes;
+        classQueues = new ArrayList<>(classes.size());
+        for (int i = 0; i < classes.size(); i++) {
+            classQueues.add(new ClassQueue());
+        }
+        for (Job job : waiting) {
+            enqueue(job);
+        }
+        
+        plugin.trace(Tracer.Category.DELIVERY, () -> {
+            StringBuilder classNames = new StringBuilder();
+            for (PriorityClass priorityClass : classes) {
+                classNames.append(classNames.length() > 0 ? " > " : "").append(priorityClass.name);
+            }
+            return "Command scheduler: priority classes " + classNames + ", quantum " + quantum
+                + ", up to " + maxCommandsPerTick + " commands per tick";
+        });
+    }
+    
+    public void start() {
+        if (task != null) {
+            return;
+        }
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }.runTaskTimer(plugin, 1L, 1L);
+    }
+    
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+    
+    /**
+     * Queue a group of commands; {@code action} is called on the main thread for each of
+     * them in turn, possibly spread over several ticks. Safe to call from any thread.
+     */
+    public void submit(CommandGroup group, Consumer<PendingCommand> action) {
+        submit(group, () -> true, action);
+    }
+    
+    /**
+     * Like {@link #submit(CommandGroup, Consumer)}, but {@code start} is called on the main thread
+     * when the group's turn comes, before its first command. If it returns false, the group is
+     * dropped without running any of its commands.
+     */
+    public void submit(CommandGroup group, BooleanSupplier start, Consumer<PendingCommand> action) {
+        inbox.add(new Job(group, start, action, System.nanoTime()));
+        queuedCount.addAndGet(group.size());
+    }
+    
+    /**
+     * Finish the command whose action is running one step at a time, within the tick limits and
+     * before the next command of its group. Must be called from within a submitted action.
+     */
+    public void continueWith(Continuation continuation) {
+        if (running == null || running.continuation != null) {
+            throw new IllegalStateException("Continuations can only be added by a running command");
+        }
+        running.continuation = continuation;
+    }
+    
+    /**
+     * Take groups back before all of their commands have run. Must be called on the main thread.
+     * A command that is part way through its continuation is not taken back and still finishes.
+     * @return the commands of each withdrawn group that have not run, for groups still waiting or cut off part way
+     */
+    public Map<CommandGroup, List<PendingCommand>> withdraw(Collection<CommandGroup> groups) {
+        Map<CommandGroup, List<PendingCommand>> withdrawn = new IdentityHashMap<>();
+        if (groups.isEmpty()) {
+            return withdrawn;
+        }
+        Map<CommandGroup, Boolean> wanted = new IdentityHashMap<>();
+        for (CommandGroup group : groups) {
+            wanted.put(group, Boolean.TRUE);
+        }
+        
+        List<Job> waiting = new ArrayList<>();
+        if (unfinished != null) {
+            waiting.add(unfinished);
+            unfinished = null;
+        }
+        Job incoming;
+        while ((incoming = inbox.poll()) != null) {
+            waiting.add(incoming);
+        }
+        for (ClassQueue queue : classQueues) {
+            queue.drainTo(waiting);
+        }
+        
+        for (Job job : waiting) {
+            List<PendingCommand> commands = job.group.getCommands();
+            if (!wanted.containsKey(job.group)) {
+                if (job.next > 0) {
+                    unfinished = job; // Still continues first
+                } else {
+                    enqueue(job);
+                }
+                continue;
+            }
+            List<PendingCommand> remaining = new ArrayList<>(commands.subList(job.next, commands.size()));
+            queuedCount.addAndGet(-remaining.size());
+            withdrawn.put(job.group, remaining);
+            if (job.continuation != null) {
+                job.next = commands.size();
+                unfinished = job;
+            }
+        }
+        return withdrawn;
+    }
+    
+    private void tick() {
+        Job incoming;
+        while ((incoming = inbox.poll()) != null) {
+            enqueue(incoming);
+        }
+        
+        long start = System.nanoTime();
+        long allocated = CostStats.allocatedBytes();
+        if (dispatch(start) > 0) {
+            plugin.getPerformanceMonitor().record(PerformanceMonitor.Probe.SCHEDULER_TICK, start, allocated);
+        }
+    }
+    
+    /**
+     * Run commands until the queues are empty or this tick's limits are reached
+     * @return the number of commands dispatched
+     */
+    private int dispatch(long start) {
+        int dispatched = 0;
+        if (unfinished != null) {
+            Job job = unfinished;
+            unfinished = null;
+            dispatched = run(job, start, 0);
+        }
+        for (ClassQueue queue : classQueues) {
+            while (unfinished == null && !queue.isEmpty()) {
+                if (isTickOver(start, dispatched)) {
+                    return dispatched;
+                }
+                dispatched = run(queue.next(quantum), start, dispatched);
+            }
+        }
+        return dispatched;
+    }
+    
+    private boolean isTickOver(long start, int dispatched) {
+        return dispatched >= maxCommandsPerTick || System.nanoTime() - start >= tickBudgetNanos;
+    }
+    
+    /**
+     * Run the group's next commands, and the steps of their continuations, until it is
+     * done or the tick is over; a group that is not done is kept in {@link #unfinished}
+     * @return the number of commands and continuation steps dispatched this tick so far
+     */
+    private int run(Job job, long tickStart, int dispatched) {
+        long start = System.nanoTime();
+        if (job.next == 0) {
+            waitTimings.record(start - job.enqueuedNanos);
+            if (!start(job)) {
+                queuedCount.addAndGet(-job.group.size());
+                return dispatched;
+            }
+        }
+        
+        List<PendingCommand> commands = job.group.getCommands();
+        running = job;
+        try {
+            do {
+                if (job.continuation != null) {
+                    step(job);
+                } else {
+                    PendingCommand command = commands.get(job.next++);
+                    queuedCount.decrementAndGet();
+                    try {
+                        job.action.accept(command);
+                    } catch (Exception e) {
+                        plugin.getLogger().log(Level.SEVERE, "Error executing a command of order " + job.group.getOrderId() + ": ", e);
+                    }
+                }
+                dispatched++;
+            } while (job.hasWork() && !isTickOver(tickStart, dispatched));
+        } finally {
+            running = null;
+        }
+        
+        job.runNanos += System.nanoTime() - start;
+        if (job.hasWork()) {
+            unfinished = job;
+        } else {
+            runTimings.record(job.runNanos);
+        }
+        return dispatched;
+    }
+    
+    private void step(Job job) {
+        try {
+            if (job.continuation.step()) {
+                job.continuation = null;
+            }
+        } catch (Exception e) {
+            job.continuation = null;
+            plugin.getLogger().log(Level.SEVERE, "Error continuing a command of order " + job.group.getOrderId() + ": ", e);
+        }
+    }
+    
+    private boolean start(Job job) {
+        try {
+            return job.start.getAsBoolean();
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "Error starting the commands of order " + job.group.getOrderId() + ": ", e);
+            return false;
+        }
+    }
+    
+    /**
+     * A group goes into the highest priority class any of its commands belongs to
+     */
+    private void enqueue(Job job) {
+        for (int i = 0; i < priorityClasses.size(); i++) {
+            for (PendingCommand command : job.group.getCommands()) {
+                if (priorityClasses.get(i).matches(command)) {
+                    classQueues.get(i).add(job);
+                    return;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Number of commands waiting for their turn, counting every command in a group
+     */
+    public int getQueuedCount() {
+        return queuedCount.get();
+    }
+    
+    /**
+     * Time commands spent waiting between being submitted and being run
+     */
+    public TimingStats getWaitTimings() {
+        return waitTimings;
+    }
+    
+    /**
+     * Main thread time spent starting each group's commands, over all the ticks it ran in
+     */
+    public TimingStats getRunTimings() {
+        return runTimings;
+    }
+    
+    /**
+     * The rest of a command that runs one step at a time, see {@link #continueWith(Continuation)}
+     */
+    @FunctionalInterface
+    public interface Continuation {
+        /**
+         * Run the next step on the main thread
+         * @return true once nothing is left to run
+         */
+        boolean step();
+    }
+    
+    private static final class Job {
+        private final CommandGroup group;
+        private final BooleanSupplier start;
+        private final Consumer<PendingCommand> action;
+        private final long enqueuedNanos;
+        private final int cost;
+        private int next = 0; // Index of the next command to run
+        private Continuation continuation; // Rest of the last command run, runs before the next one
+        private long runNanos = 0;
+        
+        private Job(CommandGroup group, BooleanSupplier start, Consumer<PendingCommand> action, long enqueuedNanos) {
+            this.group = group;
+            this.start = start;
+            this.action = action;
+            this.enqueuedNanos = enqueuedNanos;
+            this.cost = group.getCost();
+        }
+        
+        private boolean hasWork() {
+            return continuation != null || next < group.getCommands().size();
+        }
+    }
+    
+    private static final class PriorityClass {
+        private final String name;
+        private final Pattern match;
+        private final String runMode;
+        
+        private PriorityClass(String name, Pattern match, String runMode) {
+            this.name = name;
+            this.match = match;
+            this.runMode = runMode;
+        }
+        
+        private boolean matches(PendingCommand command) {
+            if (runMode != null && !runMode.equalsIgnoreCase(command.getRunMode())) {
+                return false;
+            }
+            return match == null || match.matcher(command.getCommand()).find();
+        }
+    }
+    
+    /**
+     * Deficit round-robin over the players with commands in one priority class
+     */
+    private static final class ClassQueue {
+        private final Map<String, PlayerFlow> flows = new HashMap<>();
+        private final ArrayDeque<PlayerFlow> active = new ArrayDeque<>();
+        
+        private void add(Job job) {
+            String key = job.group.getPlayerName().toLowerCase(Locale.ROOT);
+            PlayerFlow flow = flows.get(key);
+            if (flow == null) {
+                flow = new PlayerFlow(key);
+                flows.put(key, flow);
+                active.addLast(flow);
+            }
+            flow.add(job);
+        }
+        
+        private boolean isEmpty() {
+            return active.isEmpty();
+        }
+        
+        private Job next(int quantum) {
+            int skipped = 0;
+            while (true) {
+                PlayerFlow flow = active.peekFirst();
+                if (!flow.inTurn) {
+                    flow.deficit += quantum;
+                    flow.inTurn = true;
+                }
+                
+                Job head = flow.peek();
+                if (flow.deficit < head.cost) {
+                    // Out of credit for this turn, let the next player go
+                    flow.inTurn = false;
+                    active.addLast(active.pollFirst());
+                    if (++skipped == active.size()) {
+                        skipRounds(quantum);
+                        skipped = 0;
+                    }
+                    continue;
+                }
+                
+                flow.deficit -= head.cost;
+                flow.poll();
+                if (flow.isEmpty()) {
+                    active.pollFirst();
+                    flows.remove(flow.key);
+                }
+                return head;
+            }
+        }
+        
+        /**
+         * After a whole round in which no player could afford their next group, hand out at once
+         * the credit of every further round in which none could, instead of going round once per quantum
+         */
+        private void skipRounds(int quantum) {
+            long rounds = Long.MAX_VALUE;
+            for (PlayerFlow flow : active) {
+                long missing = flow.peek().cost - flow.deficit;
+                rounds = Math.min(rounds, (missing + quantum - 1) / quantum);
+            }
+            for (PlayerFlow flow : active) {
+                flow.deficit += (rounds - 1) * quantum;
+            }
+        }
+        
+        private void drainTo(List<Job> jobs) {
+            for (PlayerFlow flow : active) {
+                while (!flow.isEmpty()) {
+                    jobs.add(flow.poll());
+                }
+            }
+            active.clear();
+            flows.clear();
+        }
+    }
+    
+    /**
+     * A player's waiting groups; their orders take turns one group at a time
+     */
+    private static final class PlayerFlow {
+        private final String key;
+        private final Map<Integer, ArrayDeque<Job>> orders = new HashMap<>();
+        private final ArrayDeque<ArrayDeque<Job>> orderRing = new ArrayDeque<>();
+        private long deficit = 0;
+        private boolean inTurn = false;
+        
+        private PlayerFlow(String key) {
+            this.key = key;
+        }
+        
+        private void add(Job job) {
+            ArrayDeque<Job> orderJobs = orders.get(job.group.getOrderId());
+            if (orderJobs == null) {
+                orderJobs = new ArrayDeque<>();
+                orders.put(job.group.getOrderId(), orderJobs);
+                orderRing.addLast(orderJobs);
+            }
+            orderJobs.addLast(job);
+        }
+        
+        private Job peek() {
+            return orderRing.peekFirst().peekFirst();
+        }
+        
+        private Job poll() {
+            ArrayDeque<Job> orderJobs = orderRing.pollFirst();
+            Job job = orderJobs.pollFirst();
+            if (orderJobs.isEmpty()) {
+                orders.remove(job.group.getOrderId());
+            } else {
+                orderRing.addLast(orderJobs);
+            }
+            return job;
+        }
+        
+        private boolean isEmpty() {
+            return orderRing.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.models.CommandGroup;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import com.github.Akaliix.MineWebStore.storage.ScheduledCommandStore;
+import com.github.Akaliix.MineWebStore.utils.TimingWheel;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+/**
+ * Holds {@code delayed} commands, such as the expiry of a 30-day rank, until
+ * they are due. WordPress hands them over right after the purchase with the
+ * time they should run at; from then on they live here, in a
+ * {@link TimingWheel} with one-second ticks that is persisted in
+ * {@code scheduled_commands.jsonl}. A tick only looks at the wheel's current
+ * slots, so thousands of waiting commands cost nothing until they are due.
+ *
+ * Due commands run from the console through the {@link CommandScheduler} and
+ * are reported like any other command. A command is only journaled as done
+ * once it has actually run, so one that was still waiting for its turn when
+ * the server stopped runs again after startup, as do commands that fell due
+ * while the server was down.
+ */
+public class DelayedCommandManager {
+    
+    private final MineWebStorePlugin plugin;
+    private final ScheduledCommandStore store;
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private final Queue<PendingCommand> pendingDone = new ConcurrentLinkedQueue<>();
+    // Guarded by this
+    private TimingWheel<PendingCommand> wheel = new TimingWheel<>(nowSeconds());
+    private BukkitTask task;
+    
+    public DelayedCommandManager(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+        this.store = new ScheduledCommandStore(plugin);
+    }
+    
+    /**
+     * Read the stored commands into the wheel; {@link #schedule} waits for this to finish
+     */
+    public CompletableFuture<Void> load(Executor executor) {
+        CompletableFuture.runAsync(() -> {
+            List<PendingCommand> commands = store.load();
+            synchronized (this) {
+                wheel = new TimingWheel<>(nowSeconds());
+                for (PendingCommand command : commands) {
+                    wheel.schedule(command.getRunAt(), command);
+                }
+            }
+            if (!commands.isEmpty()) {
+                plugin.getLogger().info("Loaded " + commands.size() + " delayed commands");
+            }
+        }, executor).whenComplete((ignored, error) -> {
+            if (error != null) {
+                loaded.completeExceptionally(error);
+            } else {
+                loaded.complete(null);
+            }
+        });
+        return loaded;
+    }
+    
+    public void start() {
+        task = new BukkitRunnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }.runTaskTimer(plugin, 20L, 20L);
+    }
+    
+    /**
+     * Persist and schedule delayed commands. Does disk I/O, so never call it on the main thread.
+     */
+    public void schedule(List<PendingCommand> commands) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        loaded.join();
+        synchronized (this) {
+            try {
+                store.add(commands);
+            } catch (IOException e) {
+                // Still run them if the server stays up; they are only lost on a restart
+                plugin.getLogger().warning("Failed to save delayed commands: " + e.getMessage());
+            }
+            for (PendingCommand command : commands) {
+                wheel.schedule(command.getRunAt(), command);
+                plugin.trace(Tracer.Category.DELIVERY, () -> "Scheduled command " + command.getId() + " for " + command.getPlayerName()
+                    + " to run in " + Math.max(0, command.getRunAt() - nowSeconds()) + "s: " + command.getCommand());
+            }
+        }
+    }
+    
+    /**
+     * Runs once a second on the main thread and hands due commands to the command scheduler
+     */
+    private void tick() {
+        if (!pendingDone.isEmpty()) {
+            new BukkitRunnable() {
+                @Override
+                public void run() {
+                    flushDone();
+                }
+            }.runTaskAsynchronously(plugin);
+        }
+        
+        List<PendingCommand> due = new ArrayList<>();
+        synchronized (this) {
+            wheel.advanceTo(nowSeconds(), due::add);
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        
+        plugin.trace(Tracer.Category.DELIVERY, () -> due.size() + " delayed commands are due");
+        for (CommandGroup group : CommandGroup.byOrder(due)) {
+            if (plugin.isProxyMode()) {
+                plugin.getProxyBridge().submit(group, pendingDone::add);
+            } else {
+                plugin.getCommandManager(group.getStore()).executeGroup(group, pendingDone::add);
+            }
+        }
+    }
+    
+    /**
+     * Journal the commands that have run since the last flush, so they do not run again after a restart
+     */
+    private void flushDone() {
+        List<PendingCommand> done = new ArrayList<>();
+        PendingCommand command;
+        while ((command = pendingDone.poll()) != null) {
+            done.add(command);
+        }
+        if (done.isEmpty()) {
+            return;
+        }
+        try {
+            store.markDone(done);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to save " + done.size() + " finished delayed commands: " + e.getMessage());
+        }
+    }
+    
+    public void shutdown() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        flushDone();
+    }
+    
+    public synchronized int getScheduledCount() {
+        return wheel.size();
+    }
+    
+    private static long nowSeconds() {
+        return System.currentTimeMillis() / 1000L;
+    }
+}
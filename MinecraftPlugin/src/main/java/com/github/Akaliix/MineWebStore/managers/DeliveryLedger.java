@@ -0,0 +1,186 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.models.DeliveryRecord;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import com.github.Akaliix.MineWebStore.storage.DeliveryLedgerStore;
+import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Local record of every store command this server ran, for answering
+ * "where is my item?" without searching WordPress. Deliveries are handed
+ * to a writer thread of the ledger's own, so the main thread never waits
+ * for the disk; if the disk cannot keep up, deliveries are dropped from
+ * the ledger (and counted) rather than holding up the server.
+ */
+public class DeliveryLedger {
+    
+    private static final int CAPACITY = 4096;
+    
+    private final MineWebStorePlugin plugin;
+    private final DeliveryLedgerStore store;
+    private final BlockingQueue<DeliveryRecord> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private volatile boolean enabled;
+    private volatile boolean running = true;
+    private Thread thread;
+    
+    public DeliveryLedger(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+        this.store = new DeliveryLedgerStore(plugin, segmentBytes(plugin.getConfig()), maxSegments(plugin.getConfig()));
+        this.enabled = plugin.getConfig().getBoolean("ledger.enabled", true);
+    }
+    
+    /**
+     * Read {@code ledger.enabled} and the retention limits from the config
+     */
+    public void configure() {
+        ConfigurationSection config = plugin.getConfig();
+        enabled = config.getBoolean("ledger.enabled", true);
+        store.setLimits(segmentBytes(config), maxSegments(config));
+    }
+    
+    private static long segmentBytes(ConfigurationSection config) {
+        return config.getLong("ledger.segment_size_kb", 1024L) * 1024L;
+    }
+    
+    private static int maxSegments(ConfigurationSection config) {
+        return config.getInt("ledger.max_segments", 16);
+    }
+    
+    /**
+     * Index the ledger on disk, then start writing deliveries to it
+     */
+    public CompletableFuture<Void> load(Executor executor) {
+        CompletableFuture.runAsync(() -> {
+            try {
+                store.load();
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not load the delivery ledger: " + e.getMessage(), e);
+            }
+        }, executor).whenComplete((ignored, error) -> {
+            if (error != null) {
+                plugin.getLogger().log(Level.WARNING, "Deliveries will not be recorded: ", error);
+                loaded.completeExceptionally(error);
+                return;
+            }
+            synchronized (this) {
+                if (running) {
+                    thread = new Thread(this::drain, "MineWebStore-Ledger");
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            }
+            loaded.complete(null);
+        });
+        return loaded;
+    }
+    
+    /**
+     * Record the result of a store command; never blocks
+     */
+    public void record(PendingCommand command, CommandResultDetector.CommandResult result) {
+        if (!enabled) {
+            return;
+        }
+        DeliveryRecord record = new DeliveryRecord(command, result.isSuccess(), result.getMessage(),
+            result.getDurationNanos() / 1000, System.currentTimeMillis());
+        if (!queue.offer(record)) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Deliveries to a player, newest first. Reads from disk, so call it off the main thread.
+     */
+    public List<DeliveryRecord> findByPlayer(String playerName, int limit) throws IOException {
+        return isLoaded() ? store.findByPlayer(playerName, limit) : Collections.emptyList();
+    }
+    
+    /**
+     * Deliveries of an order, newest first. Reads from disk, so call it off the main thread.
+     */
+    public List<DeliveryRecord> findByOrder(int orderId, int limit) throws IOException {
+        return isLoaded() ? store.findByOrder(orderId, limit) : Collections.emptyList();
+    }
+    
+    /**
+     * @return whether the ledger on disk has been indexed and can be searched
+     */
+    public boolean isLoaded() {
+        return loaded.isDone() && !loaded.isCompletedExceptionally();
+    }
+    
+    private void drain() {
+        List<DeliveryRecord> batch = new ArrayList<>();
+        while (running) {
+            try {
+                DeliveryRecord first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    write(batch);
+                    batch.clear();
+                }
+                reportDropped();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+    
+    private void write(List<DeliveryRecord> batch) {
+        try {
+            store.append(batch);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to write " + batch.size() + " deliveries to the ledger: " + e.getMessage());
+        }
+    }
+    
+    private void reportDropped() {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            plugin.getLogger().warning("Dropped " + count + " deliveries from the ledger, the disk could not keep up");
+        }
+    }
+    
+    /**
+     * Stop the writer thread and write what is still queued from the calling thread
+     */
+    public void shutdown() {
+        Thread writer;
+        synchronized (this) {
+            running = false;
+            writer = thread;
+        }
+        if (writer == null) {
+            return; // Never loaded, nothing can be written
+        }
+        // Not interrupted: the writer finishes the batch it is writing and sees the flag within a second
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<DeliveryRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            write(remaining);
+        }
+        reportDropped();
+    }
+}
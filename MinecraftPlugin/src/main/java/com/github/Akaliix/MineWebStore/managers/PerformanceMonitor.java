@@ -0,0 +1,179 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.models.CommandGroup;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
+import com.github.Akaliix.MineWebStore.utils.CostStats;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Main thread cost of the plugin's hot paths, checked against configurable budgets.
+ *
+ * Each {@link Probe} keeps time and allocations per operation. Budgets are read
+ * from {@code performance.budgets.<probe>} ({@code avg_us}, {@code max_us} and
+ * {@code bytes_per_op}, 0 means unchecked). {@link #burst} pushes synthetic
+ * orders through the real scheduler and dispatch path, so the cost of a command
+ * burst can be measured on a test server before a release.
+ */
+public class PerformanceMonitor {
+    
+    private static final String BURST_PLAYER_PREFIX = "mws-burst-";
+    private static final int BURST_PLAYERS = 10;
+    
+    public enum Probe {
+        /** Handling one player join */
+        JOIN("join", 500, 5_000),
+        /** Running one store command, fast path or dispatched */
+        EXECUTE("execute", 2_000, 20_000),
+        /** Handing one tick's worth of a player's queued commands to the scheduler */
+        QUEUED_DRAIN("queued_drain", 500, 5_000),
+        /** One scheduler tick that ran at least one group */
+        SCHEDULER_TICK("scheduler_tick", 5_000, 10_000);
+        
+        private final String configName;
+        private final long defaultAvgMicros;
+        private final long defaultMaxMicros;
+        
+        Probe(String configName, long defaultAvgMicros, long defaultMaxMicros) {
+            this.configName = configName;
+            this.defaultAvgMicros = defaultAvgMicros;
+            this.defaultMaxMicros = defaultMaxMicros;
+        }
+        
+        public String getConfigName() {
+            return configName;
+        }
+    }
+    
+    private final MineWebStorePlugin plugin;
+    private final CommandResultDetector detector;
+    private volatile Map<Probe, CostStats> stats = newStats();
+    private volatile Map<Probe, Budget> budgets = new EnumMap<>(Probe.class);
+    
+    public PerformanceMonitor(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+        this.detector = new CommandResultDetector(plugin);
+    }
+    
+    private static Map<Probe, CostStats> newStats() {
+        Map<Probe, CostStats> fresh = new EnumMap<>(Probe.class);
+        for (Probe probe : Probe.values()) {
+            fresh.put(probe, new CostStats());
+        }
+        return fresh;
+    }
+    
+    /**
+     * Read the budgets from the config
+     */
+    public void configure() {
+        ConfigurationSection config = plugin.getConfig();
+        Map<Probe, Budget> loaded = new EnumMap<>(Probe.class);
+        for (Probe probe : Probe.values()) {
+            String path = "performance.budgets." + probe.configName + ".";
+            loaded.put(probe, new Budget(
+                Math.max(0L, config.getLong(path + "avg_us", probe.defaultAvgMicros)),
+                Math.max(0L, config.getLong(path + "max_us", probe.defaultMaxMicros)),
+                Math.max(0L, config.getLong(path + "bytes_per_op", 0L))));
+        }
+        budgets = loaded;
+    }
+    
+    /**
+     * Record one operation that started at {@code startNanos} with the thread's
+     * allocation counter at {@code startBytes} (see {@link CostStats#allocatedBytes()})
+     */
+    public void record(Probe probe, long startNanos, long startBytes) {
+        long bytes = startBytes < 0 ? -1L : CostStats.allocatedBytes() - startBytes;
+        stats.get(probe).record(System.nanoTime() - startNanos, bytes);
+    }
+    
+    public CostStats get(Probe probe) {
+        return stats.get(probe);
+    }
+    
+    /**
+     * Forget everything measured so far
+     */
+    public void reset() {
+        stats = newStats();
+    }
+    
+    /**
+     * @return the budgets the probe exceeds, empty if it is within all of them or has no samples
+     */
+    public List<String> check(Probe probe) {
+        CostStats probeStats = stats.get(probe);
+        Budget budget = budgets.get(probe);
+        List<String> exceeded = new ArrayList<>();
+        if (budget == null || probeStats.getCount() == 0) {
+            return exceeded;
+        }
+        long avgMicros = probeStats.getAverageNanos() / 1000;
+        long maxMicros = probeStats.getMaxNanos() / 1000;
+        long bytes = probeStats.getAverageBytes();
+        if (budget.avgMicros > 0 && avgMicros > budget.avgMicros) {
+            exceeded.add("avg " + avgMicros + "µs > " + budget.avgMicros + "µs");
+        }
+        if (budget.maxMicros > 0 && maxMicros > budget.maxMicros) {
+            exceeded.add("max " + maxMicros + "µs > " + budget.maxMicros + "µs");
+        }
+        if (budget.bytesPerOp > 0 && bytes > budget.bytesPerOp) {
+            exceeded.add(bytes + " B/op > " + budget.bytesPerOp + " B/op");
+        }
+        return exceeded;
+    }
+    
+    /**
+     * Run a burst of synthetic orders through the command scheduler, measuring from a clean slate.
+     * Results are only counted here, nothing is reported to WordPress. Must be called on the main thread.
+     * @param orders number of orders, spread over {@value #BURST_PLAYERS} made-up players
+     * @param commandsPerOrder commands in each order
+     * @param command the console command every order runs; it really runs, so keep it harmless
+     * @param done receives the number of commands that failed once every order has run
+     */
+    public void burst(int orders, int commandsPerOrder, String command, Consumer<Integer> done) {
+        reset();
+        AtomicInteger remaining = new AtomicInteger(orders * commandsPerOrder);
+        AtomicInteger failed = new AtomicInteger();
+        int nextId = -1;
+        for (int order = 1; order <= orders; order++) {
+            List<PendingCommand> commands = new ArrayList<>(commandsPerOrder);
+            String playerName = BURST_PLAYER_PREFIX + (order % BURST_PLAYERS);
+            for (int i = 0; i < commandsPerOrder; i++) {
+                // Negative ids can never collide with real WordPress commands
+                commands.add(new PendingCommand(nextId--, -order, 0, playerName, command, "always", null));
+            }
+            CommandGroup group = new CommandGroup(-order, playerName, commands);
+            plugin.getCommandScheduler().submit(group, pending ->
+                detector.executeRepeated(pending.getCommand(), null, 1, result -> {
+                    if (!result.isSuccess()) {
+                        failed.incrementAndGet();
+                    }
+                    if (remaining.decrementAndGet() == 0) {
+                        done.accept(failed.get());
+                    }
+                }));
+        }
+    }
+    
+    private static final class Budget {
+        private final long avgMicros;
+        private final long maxMicros;
+        private final long bytesPerOp;
+        
+        private Budget(long avgMicros, long maxMicros, long bytesPerOp) {
+            this.avgMicros = avgMicros;
+            this.maxMicros = maxMicros;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.api.WordPressAPI;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The components built from the WordPress and server settings: a connection
+ * to each store and the player cache they share. A config reload builds a new
+ * pipeline and swaps it in as a whole, so no thread ever sees the API of one
+ * configuration with the managers of another.
+ *
+ * Player history and the queued command index do not depend on these settings;
+ * they are shared by every pipeline instead of being reloaded.
+ */
+public class Pipeline {
+    
+    private final List<StoreConnection> stores;
+    private final PlayerCacheManager playerCacheManager;
+    private volatile boolean closed = false;
+    
+    /**
+     * @param stores the main store first, then the additional ones
+     */
+    public Pipeline(List<StoreConnection> stores, PlayerCacheManager playerCacheManager) {
+        this.stores = Collections.unmodifiableList(stores);
+        this.playerCacheManager = playerCacheManager;
+    }
+    
+    /**
+     * Stop taking on new work: no further polls are made and queued deliveries
+     * go back to their players' queues. Work already started carries on.
+     * Must be called on the main thread.
+     */
+    public void close() {
+        closed = true;
+        for (StoreConnection store : stores) {
+            store.close();
+        }
+        playerCacheManager.close();
+    }
+    
+    public boolean isClosed() {
+        return closed;
+    }
+    
+    /**
+     * Wait, off the main thread, until a poll that is still running has finished and
+     * every command already started has run and been reported to WordPress
+     * @return false if that took longer than the timeout
+     */
+    public boolean awaitIdle(long timeoutMillis) throws InterruptedException {
+        long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        for (StoreConnection store : stores) {
+            if (!store.getCommandManager().awaitIdle(deadlineNanos)) {
+                return false;
+            }
+        }
+        return playerCacheManager.awaitIdle(deadlineNanos);
+    }
+    
+    /**
+     * Release the pipeline for good; requests still in flight are aborted
+     */
+    public void shutdown() {
+        playerCacheManager.shutdown();
+        for (StoreConnection store : stores) {
+            store.close();
+            store.getWordPressAPI().shutdown();
+        }
+    }
+    
+    /**
+     * @param id the key under {@code wordpress.stores}, null for the main store
+     * @return the store, or null if it is not configured (any more)
+     */
+    public StoreConnection getStore(String id) {
+        for (StoreConnection store : stores) {
+            if (Objects.equals(store.getId(), id)) {
+                return store;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * The command manager for commands of the given store. Commands of a store that is no longer
+     * configured run through the main store's manager, which does not report them anywhere.
+     */
+    public CommandManager getCommandManager(String store) {
+        StoreConnection connection = getStore(store);
+        return (connection != null ? connection : getMainStore()).getCommandManager();
+    }
+    
+    public StoreConnection getMainStore() { return stores.get(0); }
+    public List<StoreConnection> getStores() { return stores; }
+    public WordPressAPI getWordPressAPI() { return getMainStore().getWordPressAPI(); }
+    public ServerRegistrationManager getServerRegistrationManager() { return getMainStore().getServerRegistrationManager(); }
+    public PlayerCacheManager getPlayerCacheManager() { return playerCacheManager; }
+    public CommandManager getCommandManager() { return getMainStore().getCommandManager(); }
+}
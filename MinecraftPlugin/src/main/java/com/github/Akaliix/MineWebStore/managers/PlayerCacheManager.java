@@ -1,377 +1,613 @@
 package com.github.Akaliix.MineWebStore.managers;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
-import com.github.Akaliix.MineWebStore.api.WordPressAPI;
+import com.github.Akaliix.MineWebStore.jfr.PlayerSyncEvent;
+import com.github.Akaliix.MineWebStore.models.CommandGroup;
+import com.github.Akaliix.MineWebStore.models.CommandStatusUpdate;
 import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import com.github.Akaliix.MineWebStore.storage.QueuedCommandStore;
 import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
-import org.bukkit.Bukkit;
+import com.github.Akaliix.MineWebStore.utils.CostStats;
+import com.github.Akaliix.MineWebStore.utils.InFlightCounter;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
 import org.bukkit.entity.Player;
 import org.bukkit.scheduler.BukkitRunnable;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.lang.reflect.Type;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class PlayerCacheManager {
     
-    private final WordPressAPI wordPressAPI;
-    private final String serverName;
+    private final List<StoreConnection> stores;
     private final MineWebStorePlugin plugin;
     private final PlayerHistoryManager playerHistoryManager;
     private final CommandResultDetector commandDetector;
-    private final Map<String, List<PendingCommand>> queuedCommands;
-    private final File queuedCommandsFile;
-    private final Gson gson;
+    private final QueuedCommandStore queuedCommands;
+    private final Map<String, QueuedDelivery> deliveries = new ConcurrentHashMap<>();
+    private final long joinDelayTicks;
+    private final int maxPerTick;
+    private final long syncIntervalMillis;
+    private final InFlightCounter groupsInFlight = new InFlightCounter(); // Handed to the scheduler, not yet reported
+    private final Map<CommandGroup, QueuedGroup> submitted = new IdentityHashMap<>(); // Main thread only
+    private volatile boolean closed = false;
+    
+    // Player syncs are single-flight: one running, at most one more requested meanwhile
+    private final Object syncLock = new Object();
+    private boolean syncRunning = false;
+    private boolean syncRequested = false;
+    private volatile long lastSyncStartMillis = 0L;
     
-    private String lastPlayerHash = null;
-    private List<String> onlinePlayersList = new ArrayList<>();
-    
-    public PlayerCacheManager(WordPressAPI wordPressAPI, String serverName, MineWebStorePlugin plugin, PlayerHistoryManager playerHistoryManager) {
-        this.wordPressAPI = wordPressAPI;
-        this.serverName = serverName;
+    /**
+     * @param stores every store this server takes orders from; the player list goes to each of them
+     * @param queuedCommands the queue on disk, shared with the managers of earlier and later configurations
+     */
+    public PlayerCacheManager(List<StoreConnection> stores, MineWebStorePlugin plugin,
+                              PlayerHistoryManager playerHistoryManager, QueuedCommandStore queuedCommands) {
+        this.stores = stores;
         this.plugin = plugin;
         this.playerHistoryManager = playerHistoryManager;
         this.commandDetector = new CommandResultDetector(plugin);
-        this.queuedCommands = new HashMap<>();
-        this.queuedCommandsFile = new File(plugin.getDataFolder(), "queued_commands.json");
-        this.gson = new GsonBuilder().setPrettyPrinting().create();
+        this.queuedCommands = queuedCommands;
+        this.joinDelayTicks = Math.max(0L, plugin.getConfig().getLong("delivery.join_delay_ticks", 40));
+        this.maxPerTick = Math.max(1, plugin.getConfig().getInt("delivery.max_per_tick", 5));
+        this.syncIntervalMillis = Math.max(0L, plugin.getConfig().getLong("server.player_sync_interval", 5)) * 1000L;
+    }
         
-        // Load queued commands from file on startup
-        loadQueuedCommandsFromFile();
+    /**
+     * Index queued commands on disk on the given executor; command lists are only read when a player joins
+     * @return future completed once commands can be queued and looked up
+     */
+    public CompletableFuture<Void> load(Executor executor) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                queuedCommands.load();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not index queued commands", e);
+            }
+        }, executor);
     }
     
+    /**
+     * Send the player history to WordPress in the background. Requests made while
+     * a sync is running or waiting are coalesced into one follow-up sync, and syncs
+     * start at least {@code server.player_sync_interval} apart, so a join storm
+     * results in one or two uploads instead of one per player.
+     */
     public void syncPlayerHistoryToWordPress() {
-        new BukkitRunnable() {
+        if (plugin.isProxyMode()) {
+            return; // The proxy syncs the players of the whole network
+        }
+        synchronized (syncLock) {
+            if (syncRunning) {
+                syncRequested = true;
+                return;
+            }
+            syncRunning = true;
+        }
+        scheduleSync();
+    }
+    
+    private void scheduleSync() {
+        BukkitRunnable sync = new BukkitRunnable() {
             @Override
             public void run() {
-                performPlayerHistorySync();
+                runCoalescedSync();
             }
-        }.runTaskAsynchronously(plugin);
+        };
+        long waitMillis = lastSyncStartMillis + syncIntervalMillis - System.currentTimeMillis();
+        if (waitMillis > 0) {
+            sync.runTaskLaterAsynchronously(plugin, (waitMillis + 49) / 50); // Round up to whole ticks
+        } else {
+            sync.runTaskAsynchronously(plugin);
+        }
     }
     
-    private void performPlayerHistorySync() {
+    private void runCoalescedSync() {
         try {
+            synchronized (syncLock) {
+                syncRequested = false; // This run picks up every player added so far
+            }
+            lastSyncStartMillis = System.currentTimeMillis();
+            performPlayerHistorySync();
+        } finally {
+            synchronized (syncLock) {
+                if (syncRequested && plugin.isEnabled()) {
+                    scheduleSync();
+                } else {
+                    syncRunning = false;
+                    syncRequested = false;
+                }
+            }
+        }
+    }
+    
+    private void performPlayerHistorySync() {
+        PlayerSyncEvent event = new PlayerSyncEvent();
+        event.begin();
+        try (Tracer.Sample sample = plugin.getTracer().sample(Tracer.Category.SYNC)) {
             List<String> allPlayerNames = playerHistoryManager.getAllPlayerNames();
             String currentHash = playerHistoryManager.calculatePlayerHash();
+            event.players = allPlayerNames.size();
             
-            if (shouldSyncPlayerHistory(currentHash)) {
-                syncPlayerListToWordPress(allPlayerNames, currentHash);
+            // Each store is only sent the list if it has not accepted this one yet
+            boolean success = true;
+            for (StoreConnection store : stores) {
+                if (shouldSyncPlayerHistory(store, currentHash)) {
+                    event.uploaded = true;
+                    success &= syncPlayerListToWordPress(store, allPlayerNames, currentHash);
+                }
             }
+            event.success = success;
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Error syncing player history: ", e);
         }
+        event.commit();
     }
     
-    private boolean shouldSyncPlayerHistory(String currentHash) {
+    private boolean shouldSyncPlayerHistory(StoreConnection store, String currentHash) {
+        String lastPlayerHash = store.getLastPlayerHash();
         return lastPlayerHash == null || !lastPlayerHash.equals(currentHash);
     }
     
-    private void syncPlayerListToWordPress(List<String> allPlayerNames, String currentHash) {
-        boolean success = wordPressAPI.syncPlayerList(serverName, allPlayerNames, lastPlayerHash);
+    private boolean syncPlayerListToWordPress(StoreConnection store, List<String> allPlayerNames, String currentHash) {
+        boolean success = store.getWordPressAPI().syncPlayerList(store.getServerName(), allPlayerNames, store.getLastPlayerHash());
         
         if (success) {
-            updatePlayerHashAfterSync(currentHash, allPlayerNames.size());
+            updatePlayerHashAfterSync(store, currentHash, allPlayerNames.size());
         } else {
-            plugin.getLogger().warning("Failed to sync player history with WordPress!");
+            plugin.getLogger().warning("Failed to sync player history with store " + store.getName() + "!");
         }
+        return success;
     }
     
-    private void updatePlayerHashAfterSync(String currentHash, int playerCount) {
-        lastPlayerHash = currentHash;
-        playerHistoryManager.setLastPlayerHash(currentHash);
-        plugin.debug("Player history synced to WordPress successfully (" + playerCount + " total players ever joined)");
+    private void updatePlayerHashAfterSync(StoreConnection store, String currentHash, int playerCount) {
+        store.setLastPlayerHash(currentHash);
+        if (store.getId() == null) {
+            playerHistoryManager.setLastPlayerHash(currentHash);
+        }
+        plugin.trace(Tracer.Category.SYNC, () -> "Player history synced to store " + store.getName() + " successfully ("
+            + playerCount + " total players ever joined)");
     }
     
-    public void updateOnlinePlayersList() {
-        List<String> currentOnlinePlayers = getCurrentOnlinePlayers();
-        onlinePlayersList = currentOnlinePlayers;
-        plugin.debug("Updated online players list: " + onlinePlayersList.size() + " players online");
+    public void onNewPlayerJoin(Player player) {
+        plugin.trace(Tracer.Category.SYNC, () -> "New player joined: " + player.getName() + " - syncing player history to WordPress");
+        syncPlayerHistoryToWordPress();
+        onPlayerJoin(player);
     }
     
-    private List<String> getCurrentOnlinePlayers() {
-        List<String> currentOnlinePlayers = new ArrayList<>();
-        for (Player player : plugin.getServer().getOnlinePlayers()) {
-            currentOnlinePlayers.add(player.getName());
+    /**
+     * Hand a joining player's queued commands to a background task.
+     * The queue index is only consulted off the main thread, and not at all while nothing is queued.
+     */
+    public void onPlayerJoin(Player player) {
+        if (queuedCommands.getTotalCount() == 0) {
+            return;
         }
-        return currentOnlinePlayers;
+        
+        String playerName = player.getName();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> executeQueuedCommandsForPlayer(playerName));
     }
     
-    public void onNewPlayerJoin(Player player) {
-        plugin.debug("New player joined: " + player.getName() + " - syncing player history to WordPress");
-        syncPlayerHistoryToWordPress();
-        executeQueuedCommandsForPlayer(player.getName());
+    /**
+     * Stop delivering queued commands to a player who left; whatever was not
+     * handed out yet goes back into their queue
+     */
+    public void onPlayerQuit(Player player) {
+        QueuedDelivery delivery = deliveries.get(normalize(player.getName()));
+        if (delivery != null) {
+            delivery.stop();
+        }
     }
     
     /**
      * Queue a command for a player to be executed when they join the server
-     * Commands are immediately saved to persistent storage to prevent data loss
+     * Commands are immediately appended to the player's shard on disk to prevent data loss
      * @param command The command to queue for the player
      */
     public void queueCommandForPlayer(PendingCommand command) {
         String playerName = command.getPlayerName();
-        queuedCommands.computeIfAbsent(playerName, k -> new ArrayList<>()).add(command);
-        
-        int queueSize = queuedCommands.get(playerName).size();
-        plugin.getLogger().info("Cached command for offline player " + playerName + ": " + command.getCommand() + " (total queued: " + queueSize + ")");
         
-        // Save to file immediately to prevent data loss
-        saveQueuedCommandsToFile();
+        try {
+            int queueSize = queuedCommands.append(command);
+            plugin.getLogger().info("Cached command for offline player " + playerName + ": " + command.getCommand() + " (total queued: " + queueSize + ")");
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to save queued command for " + playerName + ": " + e.getMessage());
+        }
     }
     
     /**
      * Execute all queued commands for a specific player (case-insensitive lookup)
-     * This method is called when a player joins the server
+     * This method is called off the main thread when a player joins the server.
+     * The commands are then handed out a few per tick, starting after
+     * {@code delivery.join_delay_ticks}, so the player is not flooded while still loading in.
      */
     public void executeQueuedCommandsForPlayer(String playerName) {
-        // Find commands using case-insensitive lookup to handle username case variations
-        String actualKey = findPlayerKeyIgnoreCase(playerName);
-        List<PendingCommand> commandsForPlayer = actualKey != null ? queuedCommands.get(actualKey) : null;
-        
-        if (hasNoQueuedCommands(commandsForPlayer)) {
+        // The in-memory index answers the common "nothing queued" case without disk access
+        if (!queuedCommands.hasCommands(playerName)) {
             return; // No commands to execute
         }
         
+        // Load and remove the player's shard
+        List<PendingCommand> commandsForPlayer;
+        try {
+            commandsForPlayer = queuedCommands.take(playerName);
+        } catch (IOException e) {
+            // Still on disk, delivered on a later join
+            plugin.getLogger().warning("Failed to read queued commands for " + playerName + ": " + e.getMessage());
+            return;
+        }
+        if (commandsForPlayer.isEmpty()) {
+            return;
+        }
+        
         plugin.getLogger().info("Executing " + commandsForPlayer.size() + " queued commands for player " + playerName);
         
-        // Execute all commands for this player
-        for (PendingCommand command : commandsForPlayer) {
-            plugin.getLogger().info("Executing command: " + command.getCommand());
-            executeQueuedCommand(command, playerName);
+        new BukkitRunnable() {
+            @Override
+            public void run() {
+                startDelivery(playerName, commandsForPlayer);
+            }
+        }.runTask(plugin);
+    }
+    
+    private void startDelivery(String playerName, List<PendingCommand> commands) {
+        if (closed || !isPlayerStillOnline(playerName)) {
+            // Left again while the queue was being read
+            requeueCommands(commands);
+            return;
         }
         
-        // Remove commands from queue and save to persistent storage
-        clearPlayerCommandsAndSave(actualKey);
+        QueuedDelivery delivery = new QueuedDelivery(playerName, commands);
+        QueuedDelivery previous = deliveries.put(normalize(playerName), delivery);
+        if (previous != null) {
+            previous.handOver(delivery);
+        }
+        delivery.runTaskTimer(plugin, joinDelayTicks, 1L);
     }
     
     /**
-     * Clear all commands for a player and save to file
+     * Put commands that could not be delivered back into their players' queues, off the main thread
      */
-    private void clearPlayerCommandsAndSave(String playerKey) {
-        if (playerKey != null) {
-            queuedCommands.remove(playerKey);
-            saveQueuedCommandsToFile();
+    private void requeueCommands(List<PendingCommand> commands) {
+        if (commands.isEmpty()) {
+            return;
         }
+        plugin.trace(Tracer.Category.QUEUE, () -> "Returning " + commands.size() + " undelivered commands to the queue");
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            for (PendingCommand command : commands) {
+                queueCommandForPlayer(command);
+            }
+        });
     }
     
-    private boolean hasNoQueuedCommands(List<PendingCommand> commandsForPlayer) {
-        return commandsForPlayer == null || commandsForPlayer.isEmpty();
-    }
-    
-    /**
-     * Find the actual key in the queuedCommands map that matches the player name (case-insensitive)
-     * This handles cases where the stored username case differs from the joining player's username case
-     * @param playerName The player name to search for
-     * @return The actual key found in the map, or null if no match
-     */
-    private String findPlayerKeyIgnoreCase(String playerName) {
-        for (String key : queuedCommands.keySet()) {
-            if (key.equalsIgnoreCase(playerName)) {
-                return key;
-            }
-        }
-        return null;
+    private static String normalize(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
     }
     
-    private void executeQueuedCommand(PendingCommand command, String playerName) {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                QueuedCommandResult result = performQueuedCommandExecution(command, playerName);
-                if (result != null) {
-                    updateCommandStatus(command.getId(), result.isSuccess(), result.getMessage());
-                }
-            }
-        }.runTask(plugin);
+    private void executeQueuedGroup(CommandGroup group, String playerName) {
+        groupsInFlight.begin();
+        QueuedGroup queuedGroup = new QueuedGroup(group, playerName);
+        submitted.put(group, queuedGroup);
+        plugin.getCommandScheduler().submit(group, queuedGroup::start, queuedGroup::run);
     }
     
-    private QueuedCommandResult performQueuedCommandExecution(PendingCommand command, String playerName) {
+    private void performQueuedCommandExecution(PendingCommand command, String playerName, Consumer<QueuedCommandResult> callback) {
         try {
-            if (!isPlayerStillOnline(playerName)) {
-                plugin.debug("Player " + playerName + " went offline before executing queued command: " + command.getCommand());
-                return null; // Skip status update if player went offline
-            }
-            
-            return executeQueuedCommandWithDetector(command, playerName);
+            executeQueuedCommandWithDetector(command, playerName, callback);
             
         } catch (Exception e) {
             String errorMessage = "Queued command execution failed: " + e.getMessage();
-            plugin.debug("Queued command execution failed: " + command.getCommand() + " - " + e.getMessage());
-            return new QueuedCommandResult(false, errorMessage);
+            plugin.trace(Tracer.Category.QUEUE, () -> "Queued command execution failed: " + command.getCommand() + " - " + e.getMessage());
+            callback.accept(new QueuedCommandResult(false, errorMessage));
         }
     }
     
     private boolean isPlayerStillOnline(String playerName) {
-        Player player = Bukkit.getPlayerExact(playerName);
-        return player != null && player.isOnline();
+        return plugin.getPresenceIndex().isOnline(playerName);
     }
     
-    private QueuedCommandResult executeQueuedCommandWithDetector(PendingCommand command, String playerName) {
-        plugin.debug("Executing queued command for player " + playerName + ": " + command.getCommand());
+    private void executeQueuedCommandWithDetector(PendingCommand command, String playerName, Consumer<QueuedCommandResult> callback) {
+        plugin.trace(Tracer.Category.QUEUE, () -> "Executing queued command for player " + playerName + ": " + command.getCommand());
         
         // For queued commands, always check player status since they are "online" commands
-        CommandResultDetector.CommandResult result = commandDetector.executeCommand(command.getCommand(), playerName);
+        commandDetector.executeProfiled(command, playerName, result -> {
+            boolean success = result.isSuccess();
+            String message = result.getMessage();
         
-        boolean success = result.isSuccess();
-        String message = result.getMessage();
+            logQueuedCommandResult(command.getCommand(), success, message);
         
-        logQueuedCommandResult(command.getCommand(), success, message);
-        
-        return new QueuedCommandResult(success, message);
+            callback.accept(new QueuedCommandResult(success, message, result.getSlowMicros(), result.getCompletedRuns()));
+        });
     }
     
     private void logQueuedCommandResult(String commandText, boolean success, String message) {
         if (success) {
-            plugin.debug("Queued command executed successfully: " + commandText);
+            plugin.trace(Tracer.Category.QUEUE, () -> "Queued command executed successfully: " + commandText);
         } else {
-            plugin.debug("Queued command execution failed: " + commandText + " - " + message);
+            plugin.trace(Tracer.Category.QUEUE, () -> "Queued command execution failed: " + commandText + " - " + message);
         }
     }
     
     /**
-     * Load queued commands from persistent storage on server startup
+     * Get count of queued commands (for status reporting)
      */
-    private void loadQueuedCommandsFromFile() {
-        if (!queuedCommandsFile.exists()) {
-            plugin.debug("No queued commands file found - starting with empty queue");
-            return;
-        }
-        
-        try (FileReader reader = new FileReader(queuedCommandsFile)) {
-            Type type = new TypeToken<Map<String, List<PendingCommand>>>(){}.getType();
-            Map<String, List<PendingCommand>> loadedCommands = gson.fromJson(reader, type);
-            
-            if (loadedCommands != null) {
-                queuedCommands.clear();
-                queuedCommands.putAll(loadedCommands);
-                
-                int totalCommands = loadedCommands.values().stream()
-                    .mapToInt(List::size)
-                    .sum();
-                
-                plugin.getLogger().info("Loaded " + totalCommands + " queued commands for " + 
-                    loadedCommands.size() + " players from persistent storage");
-            }
-            
-        } catch (IOException e) {
-            plugin.getLogger().warning("Failed to load queued commands from file: " + e.getMessage());
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error parsing queued commands file: " + e.getMessage());
-            // Backup corrupted file
-            backupCorruptedFile();
-        }
+    public int getQueuedCommandsCount() {
+        return queuedCommands.getTotalCount();
     }
     
     /**
-     * Save queued commands to persistent storage
+     * Get queued commands for a specific player (for debugging)
+     * @throws IOException if the player's queue cannot be read from disk
      */
-    private void saveQueuedCommandsToFile() {
-        try {
-            // Ensure the plugin data folder exists
-            if (!plugin.getDataFolder().exists()) {
-                plugin.getDataFolder().mkdirs();
-            }
-            
-            try (FileWriter writer = new FileWriter(queuedCommandsFile)) {
-                gson.toJson(queuedCommands, writer);
-                plugin.debug("Saved queued commands to persistent storage");
-            }
-            
-        } catch (IOException e) {
-            plugin.getLogger().warning("Failed to save queued commands to file: " + e.getMessage());
-        }
+    public List<PendingCommand> getQueuedCommandsForPlayer(String playerName) throws IOException {
+        // Use case-insensitive lookup
+        return queuedCommands.get(playerName);
     }
     
     /**
-     * Backup corrupted file for debugging
+     * Stop delivering: commands taken for delivery but not run yet go back to disk, including those
+     * of orders still waiting in the command scheduler. Commands that already ran are still reported.
+     * Must be called on the main thread.
      */
-    private void backupCorruptedFile() {
-        try {
-            File backupFile = new File(plugin.getDataFolder(), "queued_commands_corrupted_" + System.currentTimeMillis() + ".json");
-            if (queuedCommandsFile.renameTo(backupFile)) {
-                plugin.getLogger().warning("Corrupted queued commands file backed up to: " + backupFile.getName());
+    public void close() {
+        closed = true;
+        for (QueuedDelivery delivery : deliveries.values()) {
+            for (PendingCommand command : delivery.cancelAndDrain()) {
+                queueCommandForPlayer(command);
             }
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to backup corrupted file: " + e.getMessage());
+        }
+        deliveries.clear();
+        
+        Map<CommandGroup, List<PendingCommand>> withdrawn = plugin.getCommandScheduler().withdraw(new ArrayList<>(submitted.keySet()));
+        for (Map.Entry<CommandGroup, List<PendingCommand>> entry : withdrawn.entrySet()) {
+            submitted.get(entry.getKey()).withdraw(entry.getValue());
         }
     }
     
     /**
-     * Get count of queued commands (for status reporting)
+     * Wait until every group handed to the scheduler has been reported. Must not be called on the main thread.
+     * @param deadlineNanos give up at this {@link System#nanoTime()}
+     * @return false if groups were still unreported at the deadline
      */
-    public int getQueuedCommandsCount() {
-        return queuedCommands.values().stream()
-            .mapToInt(List::size)
-            .sum();
+    public boolean awaitIdle(long deadlineNanos) throws InterruptedException {
+        return groupsInFlight.awaitZero(deadlineNanos);
     }
     
     /**
-     * Get queued commands for a specific player (for debugging)
+     * Start delivering the queued commands of players who are already online,
+     * such as those whose delivery was handed back by the manager this one replaces
      */
-    public List<PendingCommand> getQueuedCommandsForPlayer(String playerName) {
-        // Use case-insensitive lookup
-        String actualKey = findPlayerKeyIgnoreCase(playerName);
-        List<PendingCommand> commands = actualKey != null ? queuedCommands.get(actualKey) : null;
-        return commands != null ? new ArrayList<>(commands) : new ArrayList<>();
+    public void resumeDeliveries() {
+        if (queuedCommands.getTotalCount() == 0) {
+            return;
+        }
+        List<String> onlinePlayers = plugin.getPresenceIndex().getOnlineNames();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            for (String playerName : onlinePlayers) {
+                executeQueuedCommandsForPlayer(playerName);
+            }
+        });
     }
     
     /**
-     * Cleanup method to save queued commands before server shutdown
+     * Cleanup method to release cached queue shards before server shutdown
      */
     public void shutdown() {
-        saveQueuedCommandsToFile();
-        plugin.getLogger().info("Saved queued commands before server shutdown");
+        // Commands taken for delivery but not handed out yet go back to disk now, while we still can
+        close();
+        
+        // Every other queued command is already on disk, only the cache needs dropping
+        queuedCommands.evictAll();
+        queuedCommands.saveIndex();
+        plugin.getLogger().info("Queued commands are stored on disk (" + queuedCommands.getTotalCount() + " pending)");
     }
     
-    private void updateCommandStatus(int commandId, boolean success, String message) {
+    private void updateGroupStatus(CommandGroup group, List<CommandStatusUpdate> updates) {
         new BukkitRunnable() {
             @Override
             public void run() {
-                performQueuedCommandStatusUpdate(commandId, success, message);
+                try {
+                    performQueuedGroupStatusUpdate(group, updates);
+                } finally {
+                    groupsInFlight.end();
+                }
             }
         }.runTaskAsynchronously(plugin);
     }
     
-    private void performQueuedCommandStatusUpdate(int commandId, boolean success, String message) {
+    private void performQueuedGroupStatusUpdate(CommandGroup group, List<CommandStatusUpdate> updates) {
         try {
-            String status = success ? "executed" : "failed";
-            String response = wordPressAPI.updateCommandStatus(serverName, commandId, status, message);
-            
-            logStatusUpdateResult(commandId, status, response);
-            
+            StoreConnection store = findStore(group.getStore());
+            if (store == null) {
+                plugin.getLogger().warning("Store " + group.getStore() + " is no longer configured, results of queued order "
+                    + group.getOrderId() + " were not reported");
+            } else if (store.getWordPressAPI().updateCommandStatuses(store.getServerName(), updates)) {
+                plugin.trace(Tracer.Category.QUEUE, () -> "Reported " + updates.size() + " queued commands of order " + group.getOrderId());
+            } else {
+                plugin.trace(Tracer.Category.QUEUE, () -> "Failed to report queued command status for order " + group.getOrderId());
+            }
         } catch (Exception e) {
-            plugin.debug("Error updating queued command status: " + e.getMessage());
+            plugin.trace(Tracer.Category.QUEUE, () -> "Error updating queued command status: " + e.getMessage());
         }
     }
     
-    private void logStatusUpdateResult(int commandId, String status, String response) {
-        if (response != null) {
-            plugin.debug("Updated queued command " + commandId + " status to " + status);
-        } else {
-            plugin.debug("No response when updating queued command status for command " + commandId);
+    private StoreConnection findStore(String id) {
+        for (StoreConnection store : stores) {
+            if (Objects.equals(store.getId(), id)) {
+                return store;
+            }
         }
+        return null;
     }
     
     // Getters for accessing online players data
     public List<String> getOnlinePlayersList() {
-        return new ArrayList<>(onlinePlayersList);
+        return plugin.getPresenceIndex().getOnlineNames();
     }
     
     public boolean isPlayerOnline(String playerName) {
-        return onlinePlayersList.contains(playerName);
+        return plugin.getPresenceIndex().isOnline(playerName);
     }
     
     public int getOnlinePlayerCount() {
-        return onlinePlayersList.size();
+        return plugin.getPresenceIndex().size();
+    }
+    
+    /**
+     * A queued order handed to the command scheduler. Its results come back on the main thread and are
+     * reported once every command has run or gone back to the queue.
+     */
+    private final class QueuedGroup {
+        private final CommandGroup group;
+        private final String playerName;
+        private final List<CommandStatusUpdate> updates;
+        private final List<PendingCommand> returned = new ArrayList<>();
+        private int withdrawn = 0;
+        
+        QueuedGroup(CommandGroup group, String playerName) {
+            this.group = group;
+            this.playerName = playerName;
+            this.updates = new ArrayList<>(group.size());
+        }
+        
+        /**
+         * Called when the order's turn comes
+         * @return false if the player has left, in which case the order went back to the queue
+         */
+        boolean start() {
+            if (!isPlayerStillOnline(playerName)) {
+                plugin.trace(Tracer.Category.QUEUE, () -> "Player " + playerName + " went offline before executing queued commands of order " + group.getOrderId());
+                returned.addAll(group.getCommands()); // Deliver them on their next join instead
+                finishIfDone();
+                return false;
+            }
+            return true;
+        }
+        
+        void run(PendingCommand command) {
+            if (!isPlayerStillOnline(playerName)) {
+                // Left while a large order was spread over several ticks, deliver the rest on their next join
+                returned.add(command);
+                finishIfDone();
+                return;
+            }
+            performQueuedCommandExecution(command, playerName, result -> {
+                updates.add(new CommandStatusUpdate(command.getId(), result.isSuccess(), result.getMessage(), result.getSlowMicros(),
+                    result.getCompletedRuns()));
+                finishIfDone();
+            });
+        }
+        
+        /**
+         * Put commands taken back from the scheduler on disk now, on the calling thread
+         */
+        void withdraw(List<PendingCommand> commands) {
+            for (PendingCommand command : commands) {
+                queueCommandForPlayer(command);
+            }
+            withdrawn += commands.size();
+            finishIfDone();
+        }
+        
+        private void finishIfDone() {
+            if (updates.size() + returned.size() + withdrawn < group.size()) {
+                return;
+            }
+            submitted.remove(group);
+            requeueCommands(returned);
+            if (updates.isEmpty()) {
+                groupsInFlight.end();
+            } else {
+                updateGroupStatus(group, updates);
+            }
+        }
+    }
+    
+    /**
+     * Hands one player's queued commands to the scheduler, at most {@code maxPerTick} per tick.
+     * Runs on the main thread only.
+     */
+    private class QueuedDelivery extends BukkitRunnable {
+        private final String playerName;
+        private final ArrayDeque<CommandGroup> remaining;
+        
+        QueuedDelivery(String playerName, List<PendingCommand> commands) {
+            this.playerName = playerName;
+            this.remaining = new ArrayDeque<>(CommandGroup.byOrder(commands));
+        }
+        
+        @Override
+        public void run() {
+            if (!isPlayerStillOnline(playerName)) {
+                stop();
+                return;
+            }
+            
+            long start = System.nanoTime();
+            long allocated = CostStats.allocatedBytes();
+            
+            // Orders are never split; one larger than the cap goes out alone
+            int released = 0;
+            while (!remaining.isEmpty() && (released == 0 || released + remaining.peekFirst().size() <= maxPerTick)) {
+                CommandGroup group = remaining.pollFirst();
+                plugin.trace(Tracer.Category.QUEUE, () -> "Executing " + group.size() + " queued commands of order " + group.getOrderId());
+                executeQueuedGroup(group, playerName);
+                released += group.size();
+            }
+            if (remaining.isEmpty()) {
+                finish();
+            }
+            plugin.getPerformanceMonitor().record(PerformanceMonitor.Probe.QUEUED_DRAIN, start, allocated);
+        }
+        
+        /**
+         * Cancel the delivery and return the undelivered commands to the queue
+         */
+        void stop() {
+            List<PendingCommand> undelivered = cancelAndDrain();
+            if (!undelivered.isEmpty()) {
+                plugin.trace(Tracer.Category.QUEUE, () -> "Player " + playerName + " left with " + undelivered.size() + " queued commands undelivered");
+            }
+            requeueCommands(undelivered);
+        }
+        
+        /**
+         * Pass the commands not handed out yet to a newer delivery for the same player
+         */
+        void handOver(QueuedDelivery next) {
+            finish();
+            next.remaining.addAll(remaining);
+            remaining.clear();
+        }
+        
+        List<PendingCommand> cancelAndDrain() {
+            finish();
+            List<PendingCommand> undelivered = new ArrayList<>();
+            for (CommandGroup group : remaining) {
+                undelivered.addAll(group.getCommands());
+            }
+            remaining.clear();
+            return undelivered;
+        }
+        
+        private void finish() {
+            if (!isCancelled()) {
+                cancel();
+            }
+            deliveries.remove(normalize(playerName), this);
+        }
     }
     
     /**
@@ -380,10 +616,18 @@ public class PlayerCacheManager {
     private static class QueuedCommandResult {
         private final boolean success;
         private final String message;
+        private final long slowMicros;
+        private final int completedRuns;
         
         public QueuedCommandResult(boolean success, String message) {
+            this(success, message, 0L, 0);
+        }
+        
+        public QueuedCommandResult(boolean success, String message, long slowMicros, int completedRuns) {
             this.success = success;
             this.message = message;
+            this.slowMicros = slowMicros;
+            this.completedRuns = completedRuns;
         }
         
         public boolean isSuccess() {
@@ -393,5 +637,13 @@ public class PlayerCacheManager {
         public String getMessage() {
             return message;
         }
+        
+        public long getSlowMicros() {
+            return slowMicros;
+        }
+        
+        public int getCompletedRuns() {
+            return completedRuns;
+        }
     }
 }
@@ -1,15 +1,19 @@
 package com.github.Akaliix.MineWebStore.managers;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.storage.CompactPlayerIndex;
+import com.github.Akaliix.MineWebStore.storage.PlayerHistoryStore;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
 import org.bukkit.entity.Player;
 
 import java.io.*;
-import java.lang.reflect.Type;
 import java.security.MessageDigest;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -19,15 +23,13 @@ import java.util.logging.Level;
 public class PlayerHistoryManager {
     
     private final MineWebStorePlugin plugin;
-    private final File dataFile;
-    private final ConcurrentHashMap<String, String> playerHistory; // UUID -> Name
-    private final Gson gson;
+    private final PlayerHistoryStore store;
+    private final ExecutorService historyWriter; // Appends to the history file in join order
+    private CompactPlayerIndex playerHistory; // UUID -> Name, guarded by this
     private String lastPlayerHash = null;
     
     public PlayerHistoryManager(MineWebStorePlugin plugin) {
         this.plugin = plugin;
-        this.gson = new Gson();
-        this.playerHistory = new ConcurrentHashMap<>();
         
         // Create data directory if it doesn't exist
         File dataFolder = plugin.getDataFolder();
@@ -35,79 +37,105 @@ public class PlayerHistoryManager {
             dataFolder.mkdirs();
         }
         
-        this.dataFile = new File(dataFolder, "player_history.json");
-        loadPlayerHistory();
+        this.store = new PlayerHistoryStore(plugin);
+        this.playerHistory = new CompactPlayerIndex();
+        this.historyWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MineWebStore-History");
+            thread.setDaemon(true);
+            return thread;
+        });
     }
     
     /**
-     * Load player history from file
+     * Load player history from file on the given executor
+     * @return future completed once the history is available
      */
-    private void loadPlayerHistory() {
-        if (!dataFile.exists()) {
-            plugin.debug("Player history file doesn't exist, starting with empty history");
-            return;
-        }
-        
-        try (FileReader reader = new FileReader(dataFile)) {
-            Type type = new TypeToken<Map<String, String>>(){}.getType();
-            Map<String, String> loadedData = gson.fromJson(reader, type);
-            
-            if (loadedData != null) {
-                playerHistory.putAll(loadedData);
-                plugin.debug("Loaded " + playerHistory.size() + " players from history file");
-            }
-        } catch (Exception e) {
-            plugin.getLogger().log(Level.WARNING, "Error loading player history: ", e);
-        }
+    public CompletableFuture<Void> load(Executor executor) {
+        return CompletableFuture.runAsync(this::loadPlayerHistory, executor);
     }
     
     /**
-     * Save player history to file
+     * Load player history from file
      */
-    private void savePlayerHistory() {
-        try (FileWriter writer = new FileWriter(dataFile)) {
-            gson.toJson(playerHistory, writer);
-            plugin.debug("Saved " + playerHistory.size() + " players to history file");
+    private void loadPlayerHistory() {
+        try {
+            CompactPlayerIndex loaded = store.load();
+            synchronized (this) {
+                playerHistory = loaded;
+            }
+            plugin.trace(Tracer.Category.SYNC, () -> "Loaded " + loaded.size() + " players from history file");
         } catch (Exception e) {
-            plugin.getLogger().log(Level.SEVERE, "Error saving player history: ", e);
+            plugin.getLogger().log(Level.WARNING, "Error loading player history: ", e);
         }
     }
     
     /**
-     * Add a player to the history if they're new
+     * Add a player to the history if they're new.
+     * Called on the main thread for every join: a returning player with an unchanged
+     * name is a lookup in memory without allocation, and file writes happen in the background.
      * @param player The player who joined
      * @return true if this is a new player, false if they've joined before
      */
-    public boolean addPlayerIfNew(Player player) {
-        String uuid = player.getUniqueId().toString();
+    public synchronized boolean addPlayerIfNew(Player player) {
+        UUID uuid = player.getUniqueId();
         String name = player.getName();
         
-        boolean isNewPlayer = !playerHistory.containsKey(uuid);
+        int existingNameId = playerHistory.getNameId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        boolean isNewPlayer = existingNameId < 0;
         
         if (isNewPlayer) {
-            playerHistory.put(uuid, name);
-            savePlayerHistory();
-            plugin.debug("New player added to history: " + name + " (" + uuid + ")");
-        } else {
+            savePlayer(uuid, name);
+            plugin.trace(Tracer.Category.SYNC, () -> "New player added to history: " + name + " (" + uuid + ")");
+        } else if (!playerHistory.nameMatches(existingNameId, name)) {
             // Update name if it changed (unlikely but possible)
-            String oldName = playerHistory.get(uuid);
-            if (!oldName.equals(name)) {
-                playerHistory.put(uuid, name);
-                savePlayerHistory();
-                plugin.debug("Updated player name in history: " + oldName + " -> " + name + " (" + uuid + ")");
-            }
+            String oldName = playerHistory.nameAt(existingNameId);
+            savePlayer(uuid, name);
+            plugin.trace(Tracer.Category.SYNC, () -> "Updated player name in history: " + oldName + " -> " + name + " (" + uuid + ")");
         }
         
         return isNewPlayer;
     }
     
+    /**
+     * Record a UUID -> name pair in memory and queue the append to the history file
+     */
+    private void savePlayer(UUID uuid, String name) {
+        int namesBefore = playerHistory.nameCount();
+        int nameId = playerHistory.internName(name);
+        playerHistory.put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), nameId);
+        boolean newName = playerHistory.nameCount() > namesBefore;
+        
+        // A single writer keeps name records ahead of the player records that refer to them
+        historyWriter.execute(() -> {
+            try {
+                store.appendPlayer(uuid, nameId, name, newName);
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "Error saving player history: ", e);
+            }
+        });
+    }
+    
+    /**
+     * Finish pending history writes; the manager must not be used afterwards
+     */
+    public void shutdown() {
+        historyWriter.shutdown();
+        try {
+            if (!historyWriter.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out writing player history");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
     /**
      * Check if a player has ever joined the server
      * @param playerName The player name to check
      * @return true if the player has joined before
      */
-    public boolean hasPlayerJoined(String playerName) {
-        return playerHistory.containsValue(playerName);
+    public synchronized boolean hasPlayerJoined(String playerName) {
+        return playerHistory.isNameInUse(playerName);
     }
     
     /**
@@ -115,8 +143,16 @@ public class PlayerHistoryManager {
      * @param uuid The player UUID to check
      * @return true if the player has joined before
      */
-    public boolean hasPlayerJoined(UUID uuid) {
-        return playerHistory.containsKey(uuid.toString());
+    public synchronized boolean hasPlayerJoined(UUID uuid) {
+        return playerHistory.contains(uuid);
+    }
+    
+    /**
+     * Copy the history under the lock, so the methods that walk every player
+     * do not hold up joins on the main thread while they build their results
+     */
+    private synchronized CompactPlayerIndex snapshot() {
+        return playerHistory.copy();
     }
     
     /**
@@ -124,7 +160,10 @@ public class PlayerHistoryManager {
      * @return List of all player names
      */
     public List<String> getAllPlayerNames() {
-        return new ArrayList<>(playerHistory.values());
+        CompactPlayerIndex history = snapshot();
+        List<String> names = new ArrayList<>(history.size());
+        history.forEach((most, least, nameId) -> names.add(history.nameAt(nameId)));
+        return names;
     }
     
     /**
@@ -132,14 +171,17 @@ public class PlayerHistoryManager {
      * @return Set of all player UUIDs as strings
      */
     public Set<String> getAllPlayerUUIDs() {
-        return new HashSet<>(playerHistory.keySet());
+        CompactPlayerIndex history = snapshot();
+        Set<String> uuids = new HashSet<>();
+        history.forEach((most, least, nameId) -> uuids.add(new UUID(most, least).toString()));
+        return uuids;
     }
     
     /**
      * Get the total number of unique players who have ever joined
      * @return Total player count
      */
-    public int getTotalPlayerCount() {
+    public synchronized int getTotalPlayerCount() {
         return playerHistory.size();
     }
     
@@ -148,16 +190,16 @@ public class PlayerHistoryManager {
      * @return SHA-256 hash of all player data
      */
     public String calculatePlayerHash() {
+        CompactPlayerIndex history = snapshot();
+        
+        // Create a sorted list of UUID:Name pairs for consistent hashing
+        List<String> sortedEntries = new ArrayList<>(history.size());
+        history.forEach((most, least, nameId) ->
+            sortedEntries.add(new UUID(most, least) + ":" + history.nameAt(nameId)));
+        Collections.sort(sortedEntries);
+        
+        String combined = String.join(",", sortedEntries);
         try {
-            // Create a sorted list of UUID:Name pairs for consistent hashing
-            List<String> sortedEntries = new ArrayList<>();
-            for (Map.Entry<String, String> entry : playerHistory.entrySet()) {
-                sortedEntries.add(entry.getKey() + ":" + entry.getValue());
-            }
-            Collections.sort(sortedEntries);
-            
-            String combined = String.join(",", sortedEntries);
-            
             MessageDigest md = MessageDigest.getInstance("SHA-256");
             byte[] hash = md.digest(combined.getBytes());
             
@@ -173,7 +215,7 @@ public class PlayerHistoryManager {
             return hexString.toString();
         } catch (Exception e) {
             plugin.getLogger().log(Level.WARNING, "Error calculating player hash: ", e);
-            return String.valueOf(playerHistory.hashCode());
+            return String.valueOf(combined.hashCode());
         }
     }
     
@@ -198,8 +240,12 @@ public class PlayerHistoryManager {
      * @param uuid The player UUID
      * @return Player name or null if not found
      */
-    public String getPlayerName(String uuid) {
-        return playerHistory.get(uuid);
+    public synchronized String getPlayerName(String uuid) {
+        try {
+            return playerHistory.getName(UUID.fromString(uuid));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
     }
     
     /**
@@ -207,6 +253,9 @@ public class PlayerHistoryManager {
      * @return Map of UUID -> Name
      */
     public Map<String, String> getAllPlayerData() {
-        return new HashMap<>(playerHistory);
+        CompactPlayerIndex history = snapshot();
+        Map<String, String> data = new HashMap<>();
+        history.forEach((most, least, nameId) -> data.put(new UUID(most, least).toString(), history.nameAt(nameId)));
+        return data;
     }
 }
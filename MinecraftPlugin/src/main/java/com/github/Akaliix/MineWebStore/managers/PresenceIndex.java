@@ -0,0 +1,108 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the players that are currently online, keyed by lower-case name and by UUID.
+ * It is updated incrementally from join and quit events on the main thread and can be
+ * read from any thread, so async code can decide whether a player is online without
+ * calling into the Bukkit API. Name lookups are exact apart from case, like
+ * {@code Bukkit.getPlayerExact}.
+ */
+public class PresenceIndex {
+    
+    private final Map<String, Presence> byName = new ConcurrentHashMap<>();
+    private final Map<UUID, Presence> byUniqueId = new ConcurrentHashMap<>();
+    
+    public void join(Player player) {
+        join(player.getUniqueId(), player.getName());
+    }
+    
+    public void join(UUID uniqueId, String name) {
+        Presence presence = new Presence(uniqueId, name);
+        Presence previous = byUniqueId.put(uniqueId, presence);
+        if (previous != null) {
+            byName.remove(normalize(previous.name), previous);
+        }
+        byName.put(normalize(name), presence);
+    }
+    
+    public void quit(Player player) {
+        Presence presence = byUniqueId.remove(player.getUniqueId());
+        if (presence != null) {
+            // Only drop the name if it has not been taken over by another session since
+            byName.remove(normalize(presence.name), presence);
+        }
+    }
+    
+    /**
+     * Replace the index contents with the given players, for when the plugin
+     * is enabled while players are already online
+     */
+    public void rebuild(Iterable<? extends Player> onlinePlayers) {
+        byName.clear();
+        byUniqueId.clear();
+        for (Player player : onlinePlayers) {
+            join(player);
+        }
+    }
+    
+    public boolean isOnline(String playerName) {
+        return playerName != null && byName.containsKey(normalize(playerName));
+    }
+    
+    public boolean isOnline(UUID uniqueId) {
+        return byUniqueId.containsKey(uniqueId);
+    }
+    
+    /**
+     * Get the UUID of an online player (case-insensitive)
+     * @return the UUID, or null if the player is not online
+     */
+    public UUID getUniqueId(String playerName) {
+        Presence presence = playerName == null ? null : byName.get(normalize(playerName));
+        return presence == null ? null : presence.uniqueId;
+    }
+    
+    /**
+     * Get the correctly cased name of an online player
+     * @return the name, or null if the player is not online
+     */
+    public String getName(UUID uniqueId) {
+        Presence presence = byUniqueId.get(uniqueId);
+        return presence == null ? null : presence.name;
+    }
+    
+    public List<String> getOnlineNames() {
+        List<String> names = new ArrayList<>(byUniqueId.size());
+        for (Presence presence : byUniqueId.values()) {
+            names.add(presence.name);
+        }
+        return names;
+    }
+    
+    public int size() {
+        return byUniqueId.size();
+    }
+    
+    private static String normalize(String playerName) {
+        return playerName.toLowerCase(Locale.ROOT);
+    }
+    
+    private static final class Presence {
+        private final UUID uniqueId;
+        private final String name;
+        
+        private Presence(UUID uniqueId, String name) {
+            this.uniqueId = uniqueId;
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.models.CommandGroup;
+import com.github.Akaliix.MineWebStore.models.CommandStatusUpdate;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import com.github.Akaliix.MineWebStore.storage.ProxyResultStore;
+import com.github.Akaliix.MineWebStore.utils.CommandResultDetector;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.messaging.PluginMessageListener;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Backend side of a proxy network. The MineWebStore proxy plugin polls WordPress
+ * once for the whole network and pushes each order to the backend its player is on,
+ * over the {@value #CHANNEL} plugin messaging channel. This backend then only
+ * executes commands and sends the results back; it never talks to WordPress.
+ *
+ * Plugin messages always travel through a player's connection, so results are sent
+ * through any online player and held until one is available. Every message carries
+ * the shared {@code proxy.secret}, and anything without it is ignored.
+ *
+ * Held results are saved to {@code proxy_results.json}, so a restart does not lose
+ * them. The proxy delivers a command again when it never received its result; a
+ * command that is still running here or whose result is still held is not run twice.
+ */
+public class ProxyBridge implements PluginMessageListener {
+    
+    public static final String CHANNEL = "minewebstore:commands";
+    
+    private final MineWebStorePlugin plugin;
+    private final CommandResultDetector commandDetector;
+    private final byte[] secret;
+    private final ProxyResultStore resultStore;
+    private final ExecutorService resultWriter; // Saves held results in the order they changed
+    // Main thread only
+    private final Queue<JsonObject> pendingResults = new ArrayDeque<>();
+    private final Set<Integer> handledIds = new HashSet<>(); // Submitted, or their results are held
+    
+    public ProxyBridge(MineWebStorePlugin plugin, String secret) {
+        this.plugin = plugin;
+        this.commandDetector = new CommandResultDetector(plugin);
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.resultStore = new ProxyResultStore(plugin);
+        this.resultWriter = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MineWebStore-ProxyResults");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    public void register() {
+        for (JsonObject held : resultStore.load()) {
+            // Signed again on the way out, so a changed proxy.secret still reaches the proxy
+            held.addProperty("secret", new String(secret, StandardCharsets.UTF_8));
+            pendingResults.add(held);
+            handledIds.addAll(resultIds(held));
+        }
+        if (!pendingResults.isEmpty()) {
+            plugin.getLogger().info(pendingResults.size() + " proxy result messages from before the restart are waiting to be sent");
+        }
+        plugin.getServer().getMessenger().registerIncomingPluginChannel(plugin, CHANNEL, this);
+        plugin.getServer().getMessenger().registerOutgoingPluginChannel(plugin, CHANNEL);
+    }
+    
+    /**
+     * Stop listening and finish saving held results; the bridge must not be used afterwards
+     */
+    public void unregister() {
+        plugin.getServer().getMessenger().unregisterIncomingPluginChannel(plugin);
+        plugin.getServer().getMessenger().unregisterOutgoingPluginChannel(plugin);
+        resultWriter.shutdown();
+        try {
+            if (!resultWriter.awaitTermination(5, TimeUnit.SECONDS)) {
+                plugin.getLogger().warning("Timed out saving proxy results");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    @Override
+    public void onPluginMessageReceived(String channel, Player player, byte[] message) {
+        if (!CHANNEL.equals(channel)) {
+            return;
+        }
+        
+        JsonObject payload;
+        try {
+            payload = JsonParser.parseString(new String(message, StandardCharsets.UTF_8)).getAsJsonObject();
+        } catch (Exception e) {
+            plugin.trace(Tracer.Category.POLL, () -> "Ignoring malformed proxy message: " + e.getMessage());
+            return;
+        }
+        
+        if (!isAuthentic(payload)) {
+            plugin.getLogger().warning("Ignoring proxy message with a wrong secret (sent through " + player.getName() + ")");
+            return;
+        }
+        
+        if ("deliver".equals(payload.has("type") ? payload.get("type").getAsString() : null)) {
+            List<PendingCommand> commands = CommandManager.parseCommands(payload.getAsJsonArray("commands"));
+            plugin.trace(Tracer.Category.POLL, () -> "Received " + commands.size() + " commands from the proxy");
+            List<PendingCommand> ready = new ArrayList<>(commands.size());
+            List<PendingCommand> delayed = new ArrayList<>();
+            for (PendingCommand command : commands) {
+                if (command.isDelayed()) {
+                    delayed.add(command);
+                } else if (handledIds.add(command.getId())) {
+                    ready.add(command);
+                } else {
+                    plugin.trace(Tracer.Category.DELIVERY, () -> "Command " + command.getId() + " was delivered again, it already ran or is running");
+                }
+            }
+            if (!delayed.isEmpty()) {
+                // Kept and run here; the result is sent to the proxy once they are due
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin,
+                    () -> plugin.getDelayedCommandManager().schedule(delayed));
+            }
+            for (CommandGroup group : CommandGroup.byOrder(ready)) {
+                submit(group, command -> { });
+            }
+        }
+        
+        // The proxy just reached us through a player, so this is a good time to report back
+        flushResults();
+    }
+    
+    /**
+     * @param ran called on the main thread with each command once it has run or gone back to the proxy
+     */
+    void submit(CommandGroup group, Consumer<PendingCommand> ran) {
+        List<CommandStatusUpdate> updates = new ArrayList<>(group.size());
+        List<CommandStatusUpdate> returned = new ArrayList<>();
+        plugin.getCommandScheduler().submit(group, () -> startGroup(group, ran),
+            command -> executeCommand(group, command, ran, updates, returned));
+    }
+    
+    private boolean isAuthentic(JsonObject payload) {
+        JsonElement provided = payload.get("secret");
+        return provided != null && secret.length > 0
+            && MessageDigest.isEqual(secret, provided.getAsString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Called on the main thread when an order's turn comes. If an online-only command's player
+     * has already left, the whole order goes back to the proxy to be delivered wherever they join next.
+     * @return false if the order went back to the proxy
+     */
+    private boolean startGroup(CommandGroup group, Consumer<PendingCommand> ran) {
+        for (PendingCommand command : group.getCommands()) {
+            if (command.shouldRunWhenPlayerOnline() && !plugin.getPresenceIndex().isOnline(command.getPlayerName())) {
+                plugin.trace(Tracer.Category.DELIVERY, () -> "Player " + group.getPlayerName() + " left before order " + group.getOrderId() + " ran, returning it to the proxy");
+                List<CommandStatusUpdate> returned = new ArrayList<>(group.size());
+                for (PendingCommand groupCommand : group.getCommands()) {
+                    ran.accept(groupCommand);
+                    returned.add(new CommandStatusUpdate(groupCommand.getId(), false, null));
+                }
+                queueResults(Collections.emptyList(), returned);
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Run one command of an order on the main thread. An online-only command whose player left while
+     * a large order was spread over several ticks goes back to the proxy; the results of the order are
+     * sent together once every command is accounted for.
+     */
+    private void executeCommand(CommandGroup group, PendingCommand command, Consumer<PendingCommand> ran,
+                                List<CommandStatusUpdate> updates, List<CommandStatusUpdate> returned) {
+        if (command.shouldRunWhenPlayerOnline() && !plugin.getPresenceIndex().isOnline(command.getPlayerName())) {
+            ran.accept(command);
+            returned.add(new CommandStatusUpdate(command.getId(), false, null));
+            if (updates.size() + returned.size() == group.size()) {
+                queueResults(updates, returned);
+            }
+            return;
+        }
+        String playerName = command.shouldRunWhenPlayerOnline() ? command.getPlayerName() : null;
+        commandDetector.executeProfiled(command, playerName, result -> {
+            ran.accept(command);
+            updates.add(new CommandStatusUpdate(command.getId(), result.isSuccess(), result.getMessage(), result.getSlowMicros(),
+                result.getCompletedRuns()));
+            if (updates.size() + returned.size() == group.size()) {
+                queueResults(updates, returned);
+            }
+        });
+    }
+    
+    /**
+     * Hold the results of one order for the proxy, in a single message
+     * @param returned commands that did not run and should be delivered elsewhere
+     */
+    private void queueResults(List<CommandStatusUpdate> updates, List<CommandStatusUpdate> returned) {
+        JsonArray results = new JsonArray();
+        for (CommandStatusUpdate update : updates) {
+            JsonObject result = new JsonObject();
+            result.addProperty("id", update.getCommandId());
+            result.addProperty("status", update.getStatus());
+            if (update.getMessage() != null) {
+                result.addProperty("message", update.getMessage());
+            }
+            if (update.getSlowMicros() > 0) {
+                result.addProperty("duration_us", update.getSlowMicros());
+            }
+            if (update.getCompletedRuns() > 0) {
+                result.addProperty("completed_runs", update.getCompletedRuns());
+            }
+            results.add(result);
+        }
+        for (CommandStatusUpdate update : returned) {
+            JsonObject result = new JsonObject();
+            result.addProperty("id", update.getCommandId());
+            result.addProperty("status", "returned");
+            results.add(result);
+        }
+        
+        JsonObject payload = new JsonObject();
+        payload.addProperty("type", "results");
+        payload.addProperty("secret", new String(secret, StandardCharsets.UTF_8));
+        payload.add("results", results);
+        ProxyBridge current = plugin.getProxyBridge();
+        if (current != null && current != this) {
+            // Finished after a reload replaced this bridge
+            current.pendingResults.add(payload);
+            current.saveResults();
+            current.flushResults();
+            return;
+        }
+        pendingResults.add(payload);
+        saveResults();
+        flushResults();
+    }
+    
+    /**
+     * Send held results to the proxy through any online player. Main thread only.
+     */
+    public void flushResults() {
+        boolean sent = false;
+        while (!pendingResults.isEmpty()) {
+            Player carrier = findCarrier();
+            if (carrier == null) {
+                plugin.trace(Tracer.Category.DELIVERY, () -> pendingResults.size() + " proxy results waiting for a player to carry them");
+                break;
+            }
+            JsonObject payload = pendingResults.poll();
+            carrier.sendPluginMessage(plugin, CHANNEL, payload.toString().getBytes(StandardCharsets.UTF_8));
+            handledIds.removeAll(resultIds(payload));
+            sent = true;
+        }
+        if (sent) {
+            saveResults();
+        }
+    }
+    
+    private void saveResults() {
+        List<JsonObject> snapshot = new ArrayList<>(pendingResults);
+        if (resultWriter.isShutdown()) {
+            resultStore.save(snapshot); // Finished while shutting down
+        } else {
+            resultWriter.execute(() -> resultStore.save(snapshot));
+        }
+    }
+    
+    private static List<Integer> resultIds(JsonObject payload) {
+        JsonArray results = payload.getAsJsonArray("results");
+        List<Integer> ids = new ArrayList<>(results.size());
+        for (JsonElement result : results) {
+            ids.add(result.getAsJsonObject().get("id").getAsInt());
+        }
+        return ids;
+    }
+    
+    private Player findCarrier() {
+        for (String name : plugin.getPresenceIndex().getOnlineNames()) {
+            UUID uniqueId = plugin.getPresenceIndex().getUniqueId(name);
+            Player player = uniqueId == null ? null : plugin.getServer().getPlayer(uniqueId);
+            if (player != null) {
+                return player;
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Number of result messages waiting to be sent to the proxy
+     */
+    public int getPendingResultCount() {
+        return pendingResults.size();
+    }
+}
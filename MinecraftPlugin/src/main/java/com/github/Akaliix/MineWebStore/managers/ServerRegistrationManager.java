@@ -2,34 +2,68 @@ package com.github.Akaliix.MineWebStore.managers;
 
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
 import com.github.Akaliix.MineWebStore.api.WordPressAPI;
+import com.github.Akaliix.MineWebStore.storage.ServerKeyStore;
 
 public class ServerRegistrationManager {
     
     private final WordPressAPI wordPressAPI;
     private final String serverName;
     private final MineWebStorePlugin plugin;
+    private final ServerKeyStore keyStore;
+    private final String site; // How the store is named in log messages
     private boolean isRegistered = false;
     
-    public ServerRegistrationManager(WordPressAPI wordPressAPI, String serverName, MineWebStorePlugin plugin) {
+    /**
+     * @param store the store to register with, null for the main store
+     */
+    public ServerRegistrationManager(WordPressAPI wordPressAPI, String serverName, MineWebStorePlugin plugin, String store) {
         this.wordPressAPI = wordPressAPI;
         this.serverName = serverName;
         this.plugin = plugin;
+        this.keyStore = new ServerKeyStore(plugin, store);
+        this.site = store == null ? "WordPress" : "WordPress store '" + store + "'";
     }
     
+    /**
+     * Reuse the cached server key if WordPress still accepts it,
+     * otherwise register and cache the new key
+     */
     public boolean registerServer() {
+        String cachedKey = keyStore.load(wordPressAPI.getBaseUrl(), serverName);
+        if (cachedKey != null) {
+            wordPressAPI.setServerSpecificKey(cachedKey);
+            int responseCode = wordPressAPI.verifyServerKey(serverName);
+            
+            if (responseCode >= 200 && responseCode < 300) {
+                isRegistered = true;
+                plugin.getLogger().info("Server '" + serverName + "' reconnected to " + site + " with its cached key");
+                return true;
+            } else if (responseCode == -1 || responseCode >= 500) {
+                // WordPress is unreachable or unhealthy; keep the key and try again later
+                plugin.getLogger().warning("Could not verify the cached server key for " + site + " (response: " + responseCode + ")");
+                return false;
+            } else {
+                // Rejected, or a 404 (rest_no_route) from a store without the verify endpoint
+                plugin.getLogger().info("Cached server key was not accepted by " + site + " (response: " + responseCode + "), registering again");
+                wordPressAPI.setServerSpecificKey(null);
+                keyStore.clear();
+            }
+        }
+        
         try {
             boolean success = wordPressAPI.registerServer(serverName);
             
             if (success) {
                 isRegistered = true;
-                plugin.getLogger().info("Server '" + serverName + "' registered successfully with WordPress!");
+                keyStore.save(wordPressAPI.getBaseUrl(), serverName, wordPressAPI.getServerSpecificKey());
+                plugin.getLogger().info("Server '" + serverName + "' registered successfully with " + site + "!");
                 return true;
             } else {
-                plugin.getLogger().warning("Failed to register server '" + serverName + "' with WordPress!");
+                plugin.getLogger().warning("Failed to register server '" + serverName + "' with " + site + "!");
                 return false;
             }
         } catch (Exception e) {
-            plugin.getLogger().severe("Error during server registration: " + e.getMessage());
+            plugin.getLogger().severe("Error during server registration with " + site + ": " + e.getMessage());
             return false;
         }
     }
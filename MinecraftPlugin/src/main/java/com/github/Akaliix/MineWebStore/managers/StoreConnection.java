@@ -0,0 +1,95 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.api.WordPressAPI;
+import org.bukkit.scheduler.BukkitRunnable;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.logging.Level;
+
+/**
+ * One WordPress store this server takes orders from: its API client, registration
+ * and poll loop. Commands of every store go through the same command scheduler
+ * and offline queue. A poll loop is a task on Bukkit's shared async pool, so
+ * another store adds no threads of its own.
+ */
+public class StoreConnection {
+    
+    public static final String MAIN_STORE_NAME = "main";
+    
+    private final String id;
+    private final String serverName;
+    private final WordPressAPI wordPressAPI;
+    private final ServerRegistrationManager serverRegistrationManager;
+    private final CommandManager commandManager;
+    private volatile String lastPlayerHash = null; // Player list this store last accepted
+    private BukkitTask pollingTask; // Guarded by this
+    private boolean closed = false; // Guarded by this
+    
+    /**
+     * @param id the key under {@code wordpress.stores}, null for the main store
+     */
+    public StoreConnection(String id, WordPressAPI wordPressAPI, String serverName, MineWebStorePlugin plugin) {
+        this.id = id;
+        this.serverName = serverName;
+        this.wordPressAPI = wordPressAPI;
+        this.serverRegistrationManager = new ServerRegistrationManager(wordPressAPI, serverName, plugin, id);
+        this.commandManager = new CommandManager(wordPressAPI, serverName, plugin, id);
+    }
+    
+    /**
+     * Start polling every {@code intervalTicks} unless this store already polls or was closed
+     */
+    public synchronized void startPolling(MineWebStorePlugin plugin, long intervalTicks) {
+        if (pollingTask != null || closed) {
+            return;
+        }
+        pollingTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                try {
+                    commandManager.processCommands();
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.SEVERE, "Error processing commands of store " + getName() + ": ", e);
+                }
+            }
+        }.runTaskTimerAsynchronously(plugin, 0L, intervalTicks);
+    }
+    
+    /**
+     * Stop polling for good; commands already claimed still run and are reported
+     */
+    public synchronized void close() {
+        closed = true;
+        if (pollingTask != null) {
+            pollingTask.cancel();
+            pollingTask = null;
+        }
+        commandManager.close();
+    }
+    
+    public synchronized boolean isPolling() {
+        return pollingTask != null;
+    }
+    
+    /**
+     * @return the key under {@code wordpress.stores}, null for the main store
+     */
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * @return the name of the store in logs and status output
+     */
+    public String getName() {
+        return id == null ? MAIN_STORE_NAME : id;
+    }
+    
+    public String getServerName() { return serverName; }
+    public WordPressAPI getWordPressAPI() { return wordPressAPI; }
+    public ServerRegistrationManager getServerRegistrationManager() { return serverRegistrationManager; }
+    public CommandManager getCommandManager() { return commandManager; }
+    public String getLastPlayerHash() { return lastPlayerHash; }
+    public void setLastPlayerHash(String lastPlayerHash) { this.lastPlayerHash = lastPlayerHash; }
+}
@@ -0,0 +1,169 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.api.ReplayStub;
+import com.github.Akaliix.MineWebStore.api.WordPressAPI;
+import com.github.Akaliix.MineWebStore.utils.TimingStats;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+import com.github.Akaliix.MineWebStore.utils.TrafficRecorder;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Plays a traffic recording back through the real poll, dispatch and report
+ * pipeline, with a {@link ReplayStub} standing in for WordPress. Polls happen at
+ * the recorded times (optionally sped up), so a real burst of orders can be
+ * reproduced on a test server. Throughput and main thread cost are written next
+ * to the recording, to compare builds against the same traffic.
+ *
+ * Replayed commands really run, from the console, so only replay on a test server.
+ */
+public class TrafficReplay {
+    
+    private static final long DRAIN_TIMEOUT_MILLIS = 120_000L;
+    
+    private final MineWebStorePlugin plugin;
+    private final File recording;
+    private final double speed;
+    
+    public TrafficReplay(MineWebStorePlugin plugin, File recording, double speed) {
+        this.plugin = plugin;
+        this.recording = recording;
+        this.speed = speed;
+    }
+    
+    public static File getRecordingsFolder(MineWebStorePlugin plugin) {
+        return new File(plugin.getDataFolder(), "recordings");
+    }
+    
+    /**
+     * Names of the recordings that can be replayed, oldest first
+     */
+    public static List<String> listRecordings(MineWebStorePlugin plugin) {
+        String[] names = getRecordingsFolder(plugin).list((dir, name) -> name.endsWith(TrafficRecorder.EXTENSION));
+        List<String> recordings = new ArrayList<>(names == null ? List.of() : Arrays.asList(names));
+        recordings.sort(null);
+        return recordings;
+    }
+    
+    /**
+     * Run the replay; blocks until every replayed command was reported, so never call it on the main thread
+     * @param progress receives short status lines
+     * @return the summary that was also saved next to the recording
+     */
+    public JsonObject run(Consumer<String> progress) throws IOException, InterruptedException {
+        List<JsonObject> exchanges = load();
+        List<Long> pollTimes = new ArrayList<>();
+        for (JsonObject exchange : exchanges) {
+            if (exchange.get("method").getAsString().equals("GET")
+                    && exchange.get("path").getAsString().matches("(wp-json/mcapi/v1/)?commands(\\?.*)?")) {
+                pollTimes.add(exchange.get("t").getAsLong());
+            }
+        }
+        if (pollTimes.isEmpty()) {
+            throw new IOException("The recording has no command polls");
+        }
+        
+        ReplayStub stub = new ReplayStub(exchanges);
+        stub.start();
+        try {
+            WordPressAPI api = new WordPressAPI(stub.getBaseUrl(), "replay", plugin);
+            api.setServerSpecificKey("replay");
+            CommandManager commandManager = new CommandManager(api, plugin.getConfig().getString("server.name"), plugin);
+            
+            TimingStats runTimings = plugin.getCommandScheduler().getRunTimings();
+            long runCountBefore = runTimings.getCount();
+            long runNanosBefore = runTimings.getTotalNanos();
+            
+            progress.accept("Replaying " + pollTimes.size() + " polls from " + recording.getName() + " at " + speed + "x");
+            long start = System.nanoTime();
+            long firstPoll = pollTimes.get(0);
+            for (long pollTime : pollTimes) {
+                long due = start + (long) ((pollTime - firstPoll) / speed * 1_000_000L);
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                commandManager.processCommands();
+            }
+            
+            // Wait until every served command has been run and reported
+            long drainDeadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+            while (stub.getReportedCommands() < stub.getServedCommands() && System.currentTimeMillis() < drainDeadline) {
+                Thread.sleep(50);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+            api.shutdown();
+            
+            long groups = runTimings.getCount() - runCountBefore;
+            long mainThreadNanos = runTimings.getTotalNanos() - runNanosBefore;
+            int served = stub.getServedCommands();
+            int reported = stub.getReportedCommands();
+            
+            JsonObject summary = new JsonObject();
+            summary.addProperty("recording", recording.getName());
+            summary.addProperty("plugin_version", plugin.getDescription().getVersion());
+            summary.addProperty("replayed_at", new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ").format(new Date()));
+            summary.addProperty("speed", speed);
+            summary.addProperty("polls", pollTimes.size());
+            summary.addProperty("commands_served", served);
+            summary.addProperty("commands_reported", reported);
+            summary.addProperty("elapsed_ms", elapsedNanos / 1_000_000L);
+            summary.addProperty("commands_per_second", elapsedNanos > 0 ? reported * 1e9 / elapsedNanos : 0);
+            summary.addProperty("main_thread_ms", mainThreadNanos / 1_000_000.0);
+            summary.addProperty("main_thread_us_per_command", reported > 0 ? mainThreadNanos / 1000.0 / reported : 0);
+            summary.addProperty("groups_run", groups);
+            
+            File summaryFile = new File(recording.getParentFile(), recording.getName().replace(TrafficRecorder.EXTENSION, "")
+                + ".replay-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+            Files.writeString(summaryFile.toPath(), new GsonBuilder().setPrettyPrinting().create().toJson(summary),
+                StandardCharsets.UTF_8);
+            
+            progress.accept("Replay finished: " + reported + "/" + served + " commands reported in "
+                + elapsedNanos / 1_000_000L + "ms (" + String.format("%.1f", elapsedNanos > 0 ? reported * 1e9 / elapsedNanos : 0)
+                + "/s), main thread " + String.format("%.1f", mainThreadNanos / 1_000_000.0) + "ms. Saved to " + summaryFile.getName());
+            return summary;
+        } finally {
+            stub.stop();
+        }
+    }
+    
+    private List<JsonObject> load() throws IOException {
+        List<JsonObject> exchanges = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(recording)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    exchanges.add(JsonParser.parseString(line).getAsJsonObject());
+                } catch (Exception e) {
+                    plugin.trace(Tracer.Category.HTTP, () -> "Skipping unreadable exchange in " + recording.getName() + ": " + e.getMessage());
+                }
+            }
+        } catch (EOFException e) {
+            // Recording still in progress or cut off by a crash: replay what was written
+        }
+        return exchanges;
+    }
+}
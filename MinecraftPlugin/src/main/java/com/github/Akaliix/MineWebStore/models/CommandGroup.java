@@ -0,0 +1,90 @@
+package com.github.Akaliix.MineWebStore.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The commands of one order for one player that are ready to run together.
+ * A large group may be spread over several ticks, but its results are always
+ * reported to WordPress in a single request once every command has run, so
+ * WordPress only recomputes the order status once.
+ */
+public class CommandGroup {
+    private final String store;
+    private final int orderId;
+    private final String playerName;
+    private final List<PendingCommand> commands;
+    
+    public CommandGroup(int orderId, String playerName, List<PendingCommand> commands) {
+        this.store = commands.isEmpty() ? null : commands.get(0).getStore();
+        this.orderId = orderId;
+        this.playerName = playerName;
+        this.commands = Collections.unmodifiableList(new ArrayList<>(commands));
+    }
+    
+    /**
+     * Split commands into groups by store, order and player, keeping the order in which they first appear
+     */
+    public static List<CommandGroup> byOrder(List<PendingCommand> commands) {
+        Map<String, List<PendingCommand>> grouped = new LinkedHashMap<>();
+        for (PendingCommand command : commands) {
+            String key = command.getStore() + ":" + command.getOrderId() + ":" + command.getPlayerName().toLowerCase(Locale.ROOT);
+            grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(command);
+        }
+        
+        List<CommandGroup> groups = new ArrayList<>(grouped.size());
+        for (List<PendingCommand> groupCommands : grouped.values()) {
+            PendingCommand first = groupCommands.get(0);
+            groups.add(new CommandGroup(first.getOrderId(), first.getPlayerName(), groupCommands));
+        }
+        return groups;
+    }
+    
+    /**
+     * The store every command of the group came from, null for the main store
+     */
+    public String getStore() {
+        return store;
+    }
+    
+    public int getOrderId() {
+        return orderId;
+    }
+    
+    public String getPlayerName() {
+        return playerName;
+    }
+    
+    public List<PendingCommand> getCommands() {
+        return commands;
+    }
+    
+    public int size() {
+        return commands.size();
+    }
+    
+    /**
+     * Total number of command runs in the group (each command counts once per repeat)
+     */
+    public int getCost() {
+        int cost = 0;
+        for (PendingCommand command : commands) {
+            cost += command.getRepeat();
+        }
+        return cost;
+    }
+    
+    @Override
+    public String toString() {
+        return "CommandGroup{" +
+                (store != null ? "store='" + store + "', " : "") +
+                "orderId=" + orderId +
+                ", playerName='" + playerName + '\'' +
+                ", commands=" + commands.size() +
+                '}';
+    }
+}
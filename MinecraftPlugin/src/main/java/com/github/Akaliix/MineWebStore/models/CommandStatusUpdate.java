@@ -0,0 +1,64 @@
+package com.github.Akaliix.MineWebStore.models;
+
+/**
+ * Outcome of one command, as reported back to WordPress
+ */
+public class CommandStatusUpdate {
+    private final int commandId;
+    private final boolean success;
+    private final String message;
+    private final long slowMicros;
+    private final int completedRuns;
+    
+    public CommandStatusUpdate(int commandId, boolean success, String message) {
+        this(commandId, success, message, 0L);
+    }
+    
+    /**
+     * @param slowMicros main thread time of a slow command, 0 if it was not slow
+     */
+    public CommandStatusUpdate(int commandId, boolean success, String message, long slowMicros) {
+        this(commandId, success, message, slowMicros, 0);
+    }
+    
+    /**
+     * @param completedRuns runs of a failed repeated command that were delivered before it failed
+     */
+    public CommandStatusUpdate(int commandId, boolean success, String message, long slowMicros, int completedRuns) {
+        this.commandId = commandId;
+        this.success = success;
+        this.message = message;
+        this.slowMicros = slowMicros;
+        this.completedRuns = completedRuns;
+    }
+    
+    public int getCommandId() {
+        return commandId;
+    }
+    
+    public boolean isSuccess() {
+        return success;
+    }
+    
+    public String getStatus() {
+        return success ? "executed" : "failed";
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    /**
+     * @return main thread time of a slow command in microseconds, 0 if it was not slow
+     */
+    public long getSlowMicros() {
+        return slowMicros;
+    }
+    
+    /**
+     * @return runs of a failed repeated command that were delivered before it failed, 0 if none
+     */
+    public int getCompletedRuns() {
+        return completedRuns;
+    }
+}
@@ -0,0 +1,94 @@
+package com.github.Akaliix.MineWebStore.models;
+
+/**
+ * One store command this server ran, as kept in the delivery ledger
+ */
+public class DeliveryRecord {
+    private final long deliveredAt; // Epoch millis
+    private final int commandId;
+    private final String store;
+    private final int orderId;
+    private final int productId;
+    private final String playerName;
+    private final String command;
+    private final int repeat;
+    private final String createdAt;
+    private final boolean success;
+    private final String message;
+    private final long durationMicros;
+    
+    public DeliveryRecord(PendingCommand command, boolean success, String message, long durationMicros, long deliveredAt) {
+        this.deliveredAt = deliveredAt;
+        this.commandId = command.getId();
+        this.store = command.getStore();
+        this.orderId = command.getOrderId();
+        this.productId = command.getProductId();
+        this.playerName = command.getPlayerName();
+        this.command = command.getCommand();
+        this.repeat = command.getRepeat();
+        this.createdAt = command.getCreatedAt();
+        this.success = success;
+        this.message = message;
+        this.durationMicros = durationMicros;
+    }
+    
+    /**
+     * @return when the command ran, in epoch milliseconds
+     */
+    public long getDeliveredAt() {
+        return deliveredAt;
+    }
+    
+    public int getCommandId() {
+        return commandId;
+    }
+    
+    /**
+     * @return the store the command came from, null for the main store
+     */
+    public String getStore() {
+        return store;
+    }
+    
+    public int getOrderId() {
+        return orderId;
+    }
+    
+    public int getProductId() {
+        return productId;
+    }
+    
+    public String getPlayerName() {
+        return playerName;
+    }
+    
+    public String getCommand() {
+        return command;
+    }
+    
+    public int getRepeat() {
+        return Math.max(1, repeat);
+    }
+    
+    /**
+     * @return when WordPress created the command, as WordPress sent it
+     */
+    public String getCreatedAt() {
+        return createdAt;
+    }
+    
+    public boolean isSuccess() {
+        return success;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+    
+    /**
+     * @return main thread time the command took, over all its repeats
+     */
+    public long getDurationMicros() {
+        return durationMicros;
+    }
+}
@@ -8,8 +8,23 @@ public class PendingCommand {
     private final String command;
     private final String runMode;
     private final String createdAt;
+    private final int repeat;
+    private final long runAt;
+    private final String store;
     
     public PendingCommand(int id, int orderId, int productId, String playerName, String command, String runMode, String createdAt) {
+        this(id, orderId, productId, playerName, command, runMode, createdAt, 1);
+    }
+    
+    public PendingCommand(int id, int orderId, int productId, String playerName, String command, String runMode, String createdAt, int repeat) {
+        this(id, orderId, productId, playerName, command, runMode, createdAt, repeat, 0L);
+    }
+    
+    public PendingCommand(int id, int orderId, int productId, String playerName, String command, String runMode, String createdAt, int repeat, long runAt) {
+        this(id, orderId, productId, playerName, command, runMode, createdAt, repeat, runAt, null);
+    }
+    
+    public PendingCommand(int id, int orderId, int productId, String playerName, String command, String runMode, String createdAt, int repeat, long runAt, String store) {
         this.id = id;
         this.orderId = orderId;
         this.productId = productId;
@@ -17,6 +32,9 @@ public class PendingCommand {
         this.command = command;
         this.runMode = runMode != null ? runMode : "online";
         this.createdAt = createdAt;
+        this.repeat = Math.max(1, repeat);
+        this.runAt = runAt;
+        this.store = store;
     }
     
     public int getId() {
@@ -47,6 +65,14 @@ public class PendingCommand {
         return createdAt;
     }
     
+    /**
+     * How many times the command has to be run (one per unit bought)
+     */
+    public int getRepeat() {
+        // Commands queued by older versions have no repeat field
+        return Math.max(1, repeat);
+    }
+    
     public boolean shouldRunWhenPlayerOnline() {
         return "online".equals(runMode);
     }
@@ -55,6 +81,28 @@ public class PendingCommand {
         return "always".equals(runMode);
     }
     
+    /**
+     * Delayed commands (such as the expiry of a timed rank) run from the console at {@link #getRunAt()}
+     */
+    public boolean isDelayed() {
+        return "delayed".equals(runMode);
+    }
+    
+    /**
+     * Unix time in seconds a delayed command is due, 0 for other commands
+     */
+    public long getRunAt() {
+        return runAt;
+    }
+    
+    /**
+     * The store the command was bought in, null for the main store ({@code wordpress.base_url}).
+     * Ids and order ids are only unique within one store.
+     */
+    public String getStore() {
+        return store;
+    }
+    
     @Override
     public String toString() {
         return "PendingCommand{" +
@@ -64,7 +112,10 @@ public class PendingCommand {
                 ", playerName='" + playerName + '\'' +
                 ", command='" + command + '\'' +
                 ", runMode='" + runMode + '\'' +
+                ", repeat=" + getRepeat() +
+                (isDelayed() ? ", runAt=" + runAt : "") +
                 ", createdAt='" + createdAt + '\'' +
+                (store != null ? ", store='" + store + '\'' : "") +
                 '}';
     }
 }
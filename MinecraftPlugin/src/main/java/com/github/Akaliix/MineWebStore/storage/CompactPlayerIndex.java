@@ -0,0 +1,340 @@
+package com.github.Akaliix.MineWebStore.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Memory-compact UUID -> player name table.
+ * UUIDs are stored as two longs in an open-addressing (linear probing)
+ * hash table and names are interned into a shared byte arena, so each
+ * player costs a few dozen bytes instead of two Strings and a map node.
+ * Entries are never removed; a rename simply points the UUID at another name.
+ * Not thread-safe, callers synchronize.
+ */
+public class CompactPlayerIndex {
+    
+    private static final int EMPTY = -1;
+    private static final float MAX_LOAD = 0.6f;
+    
+    // UUID table
+    private long[] mostBits;
+    private long[] leastBits;
+    private int[] nameIds;
+    private int size = 0;
+    
+    // Name pool
+    private byte[] arena = new byte[1024];
+    private int arenaLength = 0;
+    private int[] nameOffsets = new int[64];
+    private byte[] nameLengths = new byte[64];
+    private int[] nameRefCounts = new int[64];
+    private int[] nameSlots;
+    private int nameCount = 0;
+    
+    public CompactPlayerIndex() {
+        this(16);
+    }
+    
+    public CompactPlayerIndex(int expectedPlayers) {
+        int capacity = tableSizeFor(expectedPlayers);
+        this.mostBits = new long[capacity];
+        this.leastBits = new long[capacity];
+        this.nameIds = new int[capacity];
+        Arrays.fill(nameIds, EMPTY);
+        this.nameSlots = new int[tableSizeFor(expectedPlayers)];
+        Arrays.fill(nameSlots, EMPTY);
+    }
+    
+    private CompactPlayerIndex(CompactPlayerIndex source) {
+        this.mostBits = source.mostBits.clone();
+        this.leastBits = source.leastBits.clone();
+        this.nameIds = source.nameIds.clone();
+        this.size = source.size;
+        this.arena = source.arena.clone();
+        this.arenaLength = source.arenaLength;
+        this.nameOffsets = source.nameOffsets.clone();
+        this.nameLengths = source.nameLengths.clone();
+        this.nameRefCounts = source.nameRefCounts.clone();
+        this.nameSlots = source.nameSlots.clone();
+        this.nameCount = source.nameCount;
+    }
+    
+    /**
+     * An independent copy, made by copying the backing arrays; lets callers hold
+     * their lock only for the copy and walk the entries after releasing it
+     */
+    public CompactPlayerIndex copy() {
+        return new CompactPlayerIndex(this);
+    }
+    
+    /**
+     * Get the name id stored for a UUID
+     * @return the name id, or -1 if the UUID is unknown
+     */
+    public int getNameId(long most, long least) {
+        int slot = findSlot(most, least);
+        return nameIds[slot];
+    }
+    
+    public boolean contains(UUID uuid) {
+        return getNameId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) != EMPTY;
+    }
+    
+    public String getName(UUID uuid) {
+        int nameId = getNameId(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        return nameId == EMPTY ? null : nameAt(nameId);
+    }
+    
+    /**
+     * Associate a UUID with a name id
+     * @return the previous name id, or -1 if the UUID was not present
+     */
+    public int put(long most, long least, int nameId) {
+        if (nameId < 0 || nameId >= nameCount) {
+            throw new IllegalArgumentException("Unknown name id " + nameId);
+        }
+        
+        int slot = findSlot(most, least);
+        int previous = nameIds[slot];
+        if (previous == nameId) {
+            return previous;
+        }
+        
+        if (previous == EMPTY) {
+            mostBits[slot] = most;
+            leastBits[slot] = least;
+            size++;
+        } else {
+            nameRefCounts[previous]--;
+        }
+        nameIds[slot] = nameId;
+        nameRefCounts[nameId]++;
+        
+        if (size > mostBits.length * MAX_LOAD) {
+            resizeTable();
+        }
+        return previous;
+    }
+    
+    /**
+     * Get the id of a pooled name, adding it to the pool if needed
+     */
+    public int internName(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int existing = findName(bytes);
+        if (existing != EMPTY) {
+            return existing;
+        }
+        return addName(bytes);
+    }
+    
+    /**
+     * Get the id of a pooled name without adding it
+     * @return the name id, or -1 if the name is not pooled
+     */
+    public int findName(String name) {
+        return findName(name.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Check whether at least one UUID currently uses this name
+     */
+    public boolean isNameInUse(String name) {
+        int nameId = findName(name);
+        return nameId != EMPTY && nameRefCounts[nameId] > 0;
+    }
+    
+    /**
+     * Compare a pooled name with a String without decoding it.
+     * Player names are ASCII, other names take the slower byte comparison.
+     */
+    public boolean nameMatches(int nameId, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                return nameEquals(nameId, name.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        
+        int length = nameLengths[nameId] & 0xFF;
+        if (length != name.length()) {
+            return false;
+        }
+        int offset = nameOffsets[nameId];
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    public String nameAt(int nameId) {
+        return new String(arena, nameOffsets[nameId], nameLengths[nameId] & 0xFF, StandardCharsets.UTF_8);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int nameCount() {
+        return nameCount;
+    }
+    
+    /**
+     * Visit every UUID entry; the visitor receives the raw UUID bits and name id
+     */
+    public void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < nameIds.length; i++) {
+            if (nameIds[i] != EMPTY) {
+                visitor.visit(mostBits[i], leastBits[i], nameIds[i]);
+            }
+        }
+    }
+    
+    /**
+     * Approximate heap used by this index, for status output
+     */
+    public long estimateBytes() {
+        return (long) mostBits.length * (8 + 8 + 4)
+            + arena.length
+            + (long) nameOffsets.length * (4 + 1 + 4)
+            + (long) nameSlots.length * 4;
+    }
+    
+    private int findSlot(long most, long least) {
+        int mask = mostBits.length - 1;
+        int slot = mix(most ^ least) & mask;
+        while (nameIds[slot] != EMPTY && (mostBits[slot] != most || leastBits[slot] != least)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+    
+    private int findName(byte[] bytes) {
+        int mask = nameSlots.length - 1;
+        int slot = hashBytes(bytes) & mask;
+        while (nameSlots[slot] != EMPTY) {
+            int candidate = nameSlots[slot];
+            if (nameEquals(candidate, bytes)) {
+                return candidate;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+    
+    private int addName(byte[] bytes) {
+        if (bytes.length > 255) {
+            throw new IllegalArgumentException("Player name too long");
+        }
+        
+        if (nameCount == nameOffsets.length) {
+            int capacity = nameOffsets.length * 2;
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+            nameRefCounts = Arrays.copyOf(nameRefCounts, capacity);
+        }
+        if (arenaLength + bytes.length > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaLength + bytes.length));
+        }
+        
+        System.arraycopy(bytes, 0, arena, arenaLength, bytes.length);
+        int nameId = nameCount++;
+        nameOffsets[nameId] = arenaLength;
+        nameLengths[nameId] = (byte) bytes.length;
+        arenaLength += bytes.length;
+        
+        if (nameCount > nameSlots.length * MAX_LOAD) {
+            resizeNameSlots();
+        } else {
+            insertNameSlot(nameId, hashBytes(bytes));
+        }
+        return nameId;
+    }
+    
+    private boolean nameEquals(int nameId, byte[] bytes) {
+        int length = nameLengths[nameId] & 0xFF;
+        if (length != bytes.length) {
+            return false;
+        }
+        int offset = nameOffsets[nameId];
+        for (int i = 0; i < length; i++) {
+            if (arena[offset + i] != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void insertNameSlot(int nameId, int hash) {
+        int mask = nameSlots.length - 1;
+        int slot = hash & mask;
+        while (nameSlots[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        nameSlots[slot] = nameId;
+    }
+    
+    private void resizeNameSlots() {
+        nameSlots = new int[nameSlots.length * 2];
+        Arrays.fill(nameSlots, EMPTY);
+        for (int nameId = 0; nameId < nameCount; nameId++) {
+            int offset = nameOffsets[nameId];
+            int length = nameLengths[nameId] & 0xFF;
+            insertNameSlot(nameId, hashBytes(arena, offset, length));
+        }
+    }
+    
+    private void resizeTable() {
+        long[] oldMost = mostBits;
+        long[] oldLeast = leastBits;
+        int[] oldNameIds = nameIds;
+        
+        int capacity = oldMost.length * 2;
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        nameIds = new int[capacity];
+        Arrays.fill(nameIds, EMPTY);
+        
+        for (int i = 0; i < oldNameIds.length; i++) {
+            if (oldNameIds[i] != EMPTY) {
+                int slot = findSlot(oldMost[i], oldLeast[i]);
+                mostBits[slot] = oldMost[i];
+                leastBits[slot] = oldLeast[i];
+                nameIds[slot] = oldNameIds[i];
+            }
+        }
+    }
+    
+    private static int tableSizeFor(int expected) {
+        int needed = (int) Math.min(1 << 30, (long) Math.ceil(Math.max(expected, 8) / MAX_LOAD));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+    
+    private static int mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+    
+    private static int hashBytes(byte[] bytes) {
+        return hashBytes(bytes, 0, bytes.length);
+    }
+    
+    private static int hashBytes(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + bytes[offset + i];
+        }
+        return mix(hash);
+    }
+    
+    /**
+     * Callback used by {@link #forEach(EntryVisitor)}
+     */
+    public interface EntryVisitor {
+        void visit(long most, long least, int nameId);
+    }
+}
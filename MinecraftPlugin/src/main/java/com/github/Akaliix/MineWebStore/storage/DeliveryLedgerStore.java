@@ -0,0 +1,427 @@
+package com.github.Akaliix.MineWebStore.storage;
+
+import com.google.gson.Gson;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.jfr.StoreSaveEvent;
+import com.github.Akaliix.MineWebStore.models.DeliveryRecord;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Predicate;
+
+/**
+ * On-disk ledger of delivered commands in the {@code ledger} folder.
+ * Deliveries are appended as JSON lines to the open segment. Once it reaches
+ * the segment size it is sealed and written next to an index file. The index
+ * holds the key of each delivery's player and order, sorted, with the offset of
+ * its line. Only the newest segments are kept.
+ *
+ * Lookups binary search the sealed indexes on disk and read only the matching
+ * lines. The only index kept in memory is the one for the open segment, and
+ * that segment is bounded by the segment size. Keys are 64-bit hashes, so every
+ * line read is checked against the query before it is returned. Not thread-safe
+ * on its own; every method is synchronized.
+ */
+public class DeliveryLedgerStore {
+    
+    private static final String SEGMENT_EXTENSION = ".jsonl";
+    private static final String INDEX_EXTENSION = ".idx";
+    private static final int INDEX_MAGIC = 0x4D57534C; // "MWSL"
+    private static final int INDEX_HEADER_BYTES = 2 * Integer.BYTES;
+    private static final int INDEX_ENTRY_BYTES = Long.BYTES + Integer.BYTES;
+    
+    private final MineWebStorePlugin plugin;
+    private final File folder;
+    private final Gson gson;
+    private final ArrayDeque<Long> sealed = new ArrayDeque<>(); // Segment numbers, oldest first
+    private KeyTable openIndex = new KeyTable();
+    private long openSegment = 1;
+    private long openSize = 0;
+    private long segmentBytes;
+    private int maxSegments;
+    
+    public DeliveryLedgerStore(MineWebStorePlugin plugin, long segmentBytes, int maxSegments) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "ledger");
+        this.gson = new Gson();
+        setLimits(segmentBytes, maxSegments);
+    }
+    
+    /**
+     * Change the segment size and how many segments are kept, takes effect at the next append
+     */
+    public synchronized void setLimits(long segmentBytes, int maxSegments) {
+        this.segmentBytes = Math.min(Math.max(4096L, segmentBytes), Integer.MAX_VALUE / 2); // Offsets are ints
+        this.maxSegments = Math.max(2, maxSegments);
+    }
+    
+    /**
+     * Find the segments on disk, index sealed segments that have no index yet
+     * and rebuild the open segment's index
+     */
+    public synchronized void load() throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        sealed.clear();
+        openIndex = new KeyTable();
+        openSize = 0;
+        
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(SEGMENT_EXTENSION));
+        long[] segments = new long[files == null ? 0 : files.length];
+        int count = 0;
+        for (int i = 0; i < segments.length; i++) {
+            String name = files[i].getName();
+            try {
+                segments[count++] = Long.parseLong(name.substring(0, name.length() - SEGMENT_EXTENSION.length()));
+            } catch (NumberFormatException e) {
+                plugin.getLogger().warning("Ignoring unexpected file in the ledger: " + name);
+            }
+        }
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        
+        if (count == 0) {
+            openSegment = 1;
+            return;
+        }
+        long newest = segments[count - 1];
+        for (int i = 0; i < count - 1; i++) {
+            sealed.addLast(segments[i]);
+            if (!indexFile(segments[i]).exists()) {
+                writeIndex(segments[i], scan(segments[i]));
+            }
+        }
+        if (indexFile(newest).exists()) {
+            // Sealed just before the server stopped
+            sealed.addLast(newest);
+            openSegment = newest + 1;
+        } else {
+            openSegment = newest;
+            openIndex = scan(openSegment);
+            openSize = segmentFile(openSegment).length();
+        }
+        dropOldSegments();
+        
+        plugin.trace(Tracer.Category.DELIVERY, () -> "Loaded delivery ledger: " + (sealed.size() + 1) + " segments, "
+            + openIndex.size / 2 + " deliveries in the open one");
+    }
+    
+    /**
+     * Append deliveries to the open segment, sealing it once it is full
+     */
+    public synchronized void append(List<DeliveryRecord> records) throws IOException {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        int[] offsets = new int[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            offsets[i] = (int) (openSize + lines.size());
+            lines.write(gson.toJson(records.get(i)).getBytes(StandardCharsets.UTF_8));
+            lines.write('\n');
+        }
+        
+        StoreSaveEvent event = new StoreSaveEvent();
+        event.begin();
+        try (OutputStream out = new FileOutputStream(segmentFile(openSegment), true)) {
+            lines.writeTo(out);
+        }
+        event.commit("ledger", "append", records.size(), lines.size());
+        
+        openSize += lines.size();
+        for (int i = 0; i < records.size(); i++) {
+            openIndex.add(records.get(i), offsets[i]);
+        }
+        if (openSize >= segmentBytes) {
+            seal();
+        }
+    }
+    
+    /**
+     * @return up to {@code limit} deliveries to a player (case-insensitive), newest first
+     */
+    public synchronized List<DeliveryRecord> findByPlayer(String playerName, int limit) throws IOException {
+        return find(playerKey(playerName), record -> record.getPlayerName() != null
+            && record.getPlayerName().equalsIgnoreCase(playerName), limit);
+    }
+    
+    /**
+     * @return up to {@code limit} deliveries of an order, of any store, newest first
+     */
+    public synchronized List<DeliveryRecord> findByOrder(int orderId, int limit) throws IOException {
+        return find(orderKey(orderId), record -> record.getOrderId() == orderId, limit);
+    }
+    
+    /**
+     * @return number of segment files, the open one included
+     */
+    public synchronized int getSegmentCount() {
+        return sealed.size() + 1;
+    }
+    
+    private List<DeliveryRecord> find(long key, Predicate<DeliveryRecord> matches, int limit) throws IOException {
+        List<DeliveryRecord> found = new ArrayList<>();
+        readMatches(openSegment, openIndex.offsetsOf(key), matches, found, limit);
+        Iterator<Long> older = sealed.descendingIterator();
+        while (older.hasNext() && found.size() < limit) {
+            long segment = older.next();
+            readMatches(segment, lookup(segment, key), matches, found, limit);
+        }
+        return found;
+    }
+    
+    /**
+     * Read the lines at the given offsets, last offset first
+     */
+    private void readMatches(long segment, int[] offsets, Predicate<DeliveryRecord> matches,
+                             List<DeliveryRecord> found, int limit) throws IOException {
+        if (offsets.length == 0) {
+            return;
+        }
+        File file = segmentFile(segment);
+        if (!file.exists()) {
+            return;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            for (int i = offsets.length - 1; i >= 0 && found.size() < limit; i--) {
+                String line = readLine(in, offsets[i]);
+                if (line == null) {
+                    continue;
+                }
+                try {
+                    DeliveryRecord record = gson.fromJson(line, DeliveryRecord.class);
+                    if (record != null && matches.test(record)) {
+                        found.add(record);
+                    }
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Skipping corrupted ledger entry in segment " + segment + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+    
+    private static String readLine(RandomAccessFile in, long offset) throws IOException {
+        if (offset >= in.length()) {
+            return null;
+        }
+        in.seek(offset);
+        ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+        byte[] buffer = new byte[512];
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer[i] == '\n') {
+                    line.write(buffer, 0, i);
+                    return line.toString(StandardCharsets.UTF_8);
+                }
+            }
+            line.write(buffer, 0, read);
+        }
+        return null; // Cut off by a crash while it was written
+    }
+    
+    /**
+     * Binary search a sealed segment's index for a key
+     * @return the offsets of the lines with that key, in file order
+     */
+    private int[] lookup(long segment, long key) throws IOException {
+        File file = indexFile(segment);
+        if (!file.exists()) {
+            return new int[0];
+        }
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < INDEX_HEADER_BYTES || in.readInt() != INDEX_MAGIC) {
+                plugin.getLogger().warning("Ignoring damaged ledger index " + file.getName());
+                return new int[0];
+            }
+            int count = (int) Math.min(in.readInt(), (in.length() - INDEX_HEADER_BYTES) / INDEX_ENTRY_BYTES);
+            
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                in.seek(INDEX_HEADER_BYTES + (long) mid * INDEX_ENTRY_BYTES);
+                if (in.readLong() < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            
+            int[] offsets = new int[4];
+            int found = 0;
+            in.seek(INDEX_HEADER_BYTES + (long) low * INDEX_ENTRY_BYTES);
+            for (int i = low; i < count && in.readLong() == key; i++) {
+                if (found == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, found * 2);
+                }
+                offsets[found++] = in.readInt();
+            }
+            return Arrays.copyOf(offsets, found);
+        }
+    }
+    
+    /**
+     * Write the open segment's index and start a new segment
+     */
+    private void seal() throws IOException {
+        writeIndex(openSegment, openIndex);
+        sealed.addLast(openSegment);
+        openSegment++;
+        openIndex = new KeyTable();
+        openSize = 0;
+        dropOldSegments();
+    }
+    
+    private void dropOldSegments() {
+        while (sealed.size() + 1 > maxSegments) {
+            long oldest = sealed.removeFirst();
+            if (!segmentFile(oldest).delete() || (indexFile(oldest).exists() && !indexFile(oldest).delete())) {
+                plugin.getLogger().warning("Failed to delete ledger segment " + oldest);
+            }
+        }
+    }
+    
+    /**
+     * Index a segment from its lines, truncating a line cut off by a crash
+     */
+    private KeyTable scan(long segment) throws IOException {
+        File file = segmentFile(segment);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        KeyTable table = new KeyTable();
+        int start = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] != '\n') {
+                continue;
+            }
+            if (i > start) {
+                try {
+                    DeliveryRecord record = gson.fromJson(new String(bytes, start, i - start, StandardCharsets.UTF_8), DeliveryRecord.class);
+                    if (record != null) {
+                        table.add(record, start);
+                    }
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Skipping corrupted ledger entry in segment " + segment + ": " + e.getMessage());
+                }
+            }
+            start = i + 1;
+        }
+        if (start < bytes.length) {
+            try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+                out.setLength(start);
+            }
+        }
+        return table;
+    }
+    
+    private void writeIndex(long segment, KeyTable table) throws IOException {
+        File file = indexFile(segment);
+        File temp = new File(folder, file.getName() + ".tmp");
+        Integer[] order = table.sortedOrder();
+        
+        StoreSaveEvent event = new StoreSaveEvent();
+        event.begin();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(order.length);
+            for (int i : order) {
+                out.writeLong(table.keys[i]);
+                out.writeInt(table.offsets[i]);
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        event.commit("ledger", "index", order.length, file.length());
+    }
+    
+    private File segmentFile(long segment) {
+        return new File(folder, String.format(Locale.ROOT, "%010d", segment) + SEGMENT_EXTENSION);
+    }
+    
+    private File indexFile(long segment) {
+        return new File(folder, String.format(Locale.ROOT, "%010d", segment) + INDEX_EXTENSION);
+    }
+    
+    private static long playerKey(String playerName) {
+        return hash("p:" + (playerName == null ? "" : playerName.toLowerCase(Locale.ROOT)));
+    }
+    
+    private static long orderKey(int orderId) {
+        return hash("o:" + orderId);
+    }
+    
+    /**
+     * 64-bit FNV-1a, wide enough that two players or orders rarely share a key
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    /**
+     * Player and order keys of the lines of one segment, in file order
+     */
+    private static final class KeyTable {
+        private long[] keys = new long[256];
+        private int[] offsets = new int[256];
+        private int size = 0;
+        
+        private void add(DeliveryRecord record, int offset) {
+            put(playerKey(record.getPlayerName()), offset);
+            put(orderKey(record.getOrderId()), offset);
+        }
+        
+        private void put(long key, int offset) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            size++;
+        }
+        
+        private int[] offsetsOf(long key) {
+            int[] found = new int[4];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    if (count == found.length) {
+                        found = Arrays.copyOf(found, count * 2);
+                    }
+                    found[count++] = offsets[i];
+                }
+            }
+            return Arrays.copyOf(found, count);
+        }
+        
+        /**
+         * @return positions sorted by key, then by offset
+         */
+        private Integer[] sortedOrder() {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, (a, b) -> keys[a] != keys[b] ? Long.compare(keys[a], keys[b]) : Integer.compare(offsets[a], offsets[b]));
+            return order;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.github.Akaliix.MineWebStore.storage;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.jfr.StoreSaveEvent;
+import com.github.Akaliix.MineWebStore.utils.Tracer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+/**
+ * Versioned binary file backing the player history.
+ *
+ * Layout: a header (magic, version) followed by a log of records.
+ * A NAME record adds the next entry to the name pool, a PLAYER record
+ * points a UUID at a pooled name. New players and renames are appended,
+ * and the log is rewritten as a compact snapshot when it has grown well
+ * beyond the live data. On load the file is read into a heap buffer in one
+ * go and replayed. It is deliberately not memory-mapped: a mapping keeps the
+ * file locked until it is garbage collected, and Windows then refuses to
+ * replace it with a snapshot.
+ */
+public class PlayerHistoryStore {
+    
+    private static final int MAGIC = 0x4D575348; // "MWSH"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final byte RECORD_NAME = 1;
+    private static final byte RECORD_PLAYER = 2;
+    
+    private final MineWebStorePlugin plugin;
+    private final File dataFile;
+    private final File legacyFile;
+    private int recordCount = 0;
+    
+    public PlayerHistoryStore(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+        this.dataFile = new File(plugin.getDataFolder(), "player_history.dat");
+        this.legacyFile = new File(plugin.getDataFolder(), "player_history.json");
+    }
+    
+    /**
+     * Load the history into a new index, migrating player_history.json if needed
+     */
+    public CompactPlayerIndex load() throws IOException {
+        if (!dataFile.exists()) {
+            CompactPlayerIndex index = new CompactPlayerIndex();
+            if (legacyFile.exists()) {
+                migrateLegacyFile(index);
+            }
+            return index;
+        }
+        
+        CompactPlayerIndex index;
+        long validLength;
+        try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE) {
+                throw new IOException("Player history file is too large: " + fileSize + " bytes");
+            }
+            
+            ByteBuffer buffer = ByteBuffer.allocate((int) fileSize);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a player history file");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported player history version " + version);
+            }
+            
+            // Roughly 30 bytes per player record, good enough to avoid rehashing
+            index = new CompactPlayerIndex((int) Math.min(fileSize / 30, 1 << 24));
+            validLength = replay(buffer, index);
+        }
+        
+        if (validLength < dataFile.length() || recordCount > 2 * (index.size() + index.nameCount()) + 1024) {
+            // Either a crash left a partial record behind or the log is mostly superseded
+            // entries; a fresh snapshot fixes both
+            try {
+                writeSnapshot(index);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Failed to compact " + dataFile.getName() + ": " + e.getMessage());
+                if (validLength < dataFile.length()) {
+                    try (FileChannel channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+                        channel.truncate(validLength);
+                    }
+                }
+            }
+        }
+        
+        return index;
+    }
+    
+    private long replay(ByteBuffer buffer, CompactPlayerIndex index) {
+        byte[] nameBuffer = new byte[255];
+        long validLength = buffer.position();
+        recordCount = 0;
+        
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                if (type == RECORD_NAME) {
+                    int length = buffer.get() & 0xFF;
+                    buffer.get(nameBuffer, 0, length);
+                    index.internName(new String(nameBuffer, 0, length, StandardCharsets.UTF_8));
+                } else if (type == RECORD_PLAYER) {
+                    long most = buffer.getLong();
+                    long least = buffer.getLong();
+                    int nameId = buffer.getInt();
+                    index.put(most, least, nameId);
+                } else {
+                    plugin.getLogger().warning("Unknown record type " + type + " in " + dataFile.getName());
+                    break;
+                }
+                recordCount++;
+                validLength = buffer.position();
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            // Partial trailing record, everything before it is valid
+        }
+        
+        return validLength;
+    }
+    
+    /**
+     * Append a player entry, and the name if it was just added to the pool
+     * @param newName whether nameId was created by this change
+     */
+    public void appendPlayer(UUID uuid, int nameId, String name, boolean newName) throws IOException {
+        if (!dataFile.exists()) {
+            writeHeaderOnly();
+        }
+        
+        StoreSaveEvent event = new StoreSaveEvent();
+        event.begin();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(dataFile.toPath(), StandardOpenOption.APPEND)))) {
+            if (newName) {
+                writeNameRecord(out, name);
+                recordCount++;
+            }
+            writePlayerRecord(out, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), nameId);
+            recordCount++;
+            out.flush();
+            event.commit("history", "append", 1, out.size());
+        }
+    }
+    
+    /**
+     * Rewrite the file so it holds exactly the current index
+     */
+    public void writeSnapshot(CompactPlayerIndex index) throws IOException {
+        File tempFile = new File(dataFile.getParentFile(), dataFile.getName() + ".tmp");
+        StoreSaveEvent event = new StoreSaveEvent();
+        event.begin();
+        
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(tempFile.toPath()), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int nameId = 0; nameId < index.nameCount(); nameId++) {
+                writeNameRecord(out, index.nameAt(nameId));
+            }
+            IOException[] failure = new IOException[1];
+            index.forEach((most, least, nameId) -> {
+                if (failure[0] != null) {
+                    return;
+                }
+                try {
+                    writePlayerRecord(out, most, least, nameId);
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        
+        Files.move(tempFile.toPath(), dataFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        event.commit("history", "snapshot", index.size(), dataFile.length());
+        recordCount = index.nameCount() + index.size();
+        plugin.trace(Tracer.Category.SYNC, () -> "Wrote player history snapshot (" + index.size() + " players)");
+    }
+    
+    private void writeHeaderOnly() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(dataFile.toPath()))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+    }
+    
+    private static void writeNameRecord(DataOutputStream out, String name) throws IOException {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(RECORD_NAME);
+        out.writeByte(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static void writePlayerRecord(DataOutputStream out, long most, long least, int nameId) throws IOException {
+        out.writeByte(RECORD_PLAYER);
+        out.writeLong(most);
+        out.writeLong(least);
+        out.writeInt(nameId);
+    }
+    
+    /**
+     * Stream the old UUID -> name JSON object into the index and write it out in binary form
+     */
+    private void migrateLegacyFile(CompactPlayerIndex index) throws IOException {
+        int migrated = 0;
+        try (JsonReader reader = new JsonReader(new FileReader(legacyFile, StandardCharsets.UTF_8))) {
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String key = reader.nextName();
+                    String name = reader.nextString();
+                    try {
+                        UUID uuid = UUID.fromString(key);
+                        index.put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), index.internName(name));
+                        migrated++;
+                    } catch (IllegalArgumentException e) {
+                        plugin.getLogger().warning("Skipping invalid player history entry: " + key);
+                    }
+                }
+                reader.endObject();
+            }
+        } catch (IllegalStateException e) {
+            throw new IOException("Malformed " + legacyFile.getName() + ": " + e.getMessage(), e);
+        }
+        
+        writeSnapshot(index);
+        
+        File migratedFile = new File(plugin.getDataFolder(), "player_history.json.migrated");
+        if (!legacyFile.renameTo(migratedFile)) {
+            plugin.getLogger().warning("Could not rename " + legacyFile.getName() + " after migration");
+        }
+        plugin.getLogger().info("Migrated " + migrated + " players from player_history.json to binary storage");
+    }
+}
@@ -0,0 +1,66 @@
+package com.github.Akaliix.MineWebStore.storage;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Results a proxy backend has not been able to send to the proxy yet, {@code proxy_results.json}.
+ * The file holds every waiting result message and is rewritten whenever one is added or sent,
+ * so results of commands that already ran survive a restart of the backend.
+ */
+public class ProxyResultStore {
+    
+    private final MineWebStorePlugin plugin;
+    private final File file;
+    
+    public ProxyResultStore(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "proxy_results.json");
+    }
+    
+    /**
+     * @return the waiting result messages, oldest first
+     */
+    public synchronized List<JsonObject> load() {
+        List<JsonObject> messages = new ArrayList<>();
+        if (!file.exists()) {
+            return messages;
+        }
+        try {
+            JsonArray array = JsonParser.parseString(Files.readString(file.toPath(), StandardCharsets.UTF_8)).getAsJsonArray();
+            for (JsonElement element : array) {
+                messages.add(element.getAsJsonObject());
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Ignoring unreadable " + file.getName() + ": " + e.getMessage());
+        }
+        return messages;
+    }
+    
+    public synchronized void save(Collection<JsonObject> messages) {
+        JsonArray array = new JsonArray();
+        messages.forEach(array::add);
+        
+        Path tempFile = new File(file.getParentFile(), file.getName() + ".tmp").toPath();
+        try {
+            file.getParentFile().mkdirs();
+            Files.writeString(tempFile, array.toString(), StandardCharsets.UTF_8);
+            Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to save proxy results: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package com.github.Akaliix.MineWebStore.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.jfr.StoreSaveEvent;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk store for commands waiting for an offline player.
+ * Every player has their own shard file (one JSON command per line) so
+ * queueing a command is a single append. Only the per-player command
+ * counts are kept in memory; shards are read when they are needed and
+ * kept in a small LRU cache that evicts cold players.
+ *
+ * The counts are saved to {@code index.json} with each shard's size and
+ * modification time, so startup only reads the shards that changed since.
+ * A shard is only ever deleted once its commands have been taken.
+ *
+ * A shard is named after the lower-cased player name, with every character
+ * outside {@code [a-z0-9_]} written as {@code -} and its four hex digits, so
+ * no two names share a shard and every valid Minecraft name is its own key.
+ */
+public class QueuedCommandStore {
+    
+    private static final String SHARD_EXTENSION = ".jsonl";
+    private static final String MIGRATING_EXTENSION = ".migrating";
+    private static final String REKEYED_MARKER = "rekeyed";
+    private static final Pattern UNSAFE_KEY_CHAR = Pattern.compile("[^a-z0-9_]");
+    
+    private final MineWebStorePlugin plugin;
+    private final File shardFolder;
+    private final File legacyFile;
+    private final File migratedFile;
+    private final File indexFile;
+    private final Gson gson;
+    private final Map<String, Integer> index; // shard key -> queued command count
+    private final LinkedHashMap<String, List<PendingCommand>> hotShards;
+    private int maxHotShards; // Guarded by this
+    private volatile int totalCount = 0; // Written under the lock, read without it
+    
+    public QueuedCommandStore(MineWebStorePlugin plugin, int maxHotShards) {
+        this.plugin = plugin;
+        this.shardFolder = new File(plugin.getDataFolder(), "queued_commands");
+        this.legacyFile = new File(plugin.getDataFolder(), "queued_commands.json");
+        this.migratedFile = new File(plugin.getDataFolder(), "queued_commands.json.migrated");
+        this.indexFile = new File(shardFolder, "index.json");
+        this.gson = new Gson();
+        this.index = new HashMap<>();
+        this.maxHotShards = Math.max(1, maxHotShards);
+        this.hotShards = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, List<PendingCommand>> eldest) {
+                return size() > QueuedCommandStore.this.maxHotShards;
+            }
+        };
+    }
+    
+    /**
+     * Change how many shards are kept in memory, takes effect as shards are next read
+     */
+    public synchronized void setMaxHotShards(int maxHotShards) {
+        this.maxHotShards = Math.max(1, maxHotShards);
+    }
+    
+    /**
+     * Build the in-memory index from the saved index and the shard folder, migrating
+     * the old single-file queue first if one is present
+     * @throws IOException if a shard cannot be read; nothing is deleted in that case
+     */
+    public synchronized void load() throws IOException {
+        if (!shardFolder.exists() && !shardFolder.mkdirs()) {
+            throw new IOException("Could not create " + shardFolder);
+        }
+        
+        migrateLegacyFile();
+        rekeyShards();
+        
+        index.clear();
+        hotShards.clear();
+        totalCount = 0;
+        
+        File[] shards = shardFolder.listFiles((dir, name) -> name.endsWith(SHARD_EXTENSION));
+        if (shards == null) {
+            throw new IOException("Could not list " + shardFolder);
+        }
+        
+        Map<String, long[]> saved = readIndex();
+        int recounted = 0;
+        for (File shard : shards) {
+            String key = shard.getName().substring(0, shard.getName().length() - SHARD_EXTENSION.length());
+            long[] entry = saved.get(key);
+            int count;
+            if (entry != null && entry.length == 3 && entry[1] == shard.length() && entry[2] == shard.lastModified()) {
+                count = (int) entry[0];
+            } else {
+                count = countLines(shard); // Changed since the index was saved
+                terminateLastLine(shard);
+                recounted++;
+            }
+            if (count > 0) {
+                index.put(key, count);
+                totalCount += count;
+            }
+        }
+        if (recounted > 0) {
+            saveIndex();
+        }
+        
+        plugin.getLogger().info("Indexed " + totalCount + " queued commands for " + index.size() + " players"
+            + (recounted > 0 ? " (" + recounted + " shards read)" : ""));
+    }
+    
+    /**
+     * Save the command count of every shard, so the next start does not have to read them
+     */
+    public synchronized void saveIndex() {
+        Map<String, long[]> entries = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : index.entrySet()) {
+            File shard = shardFile(entry.getKey());
+            entries.put(entry.getKey(), new long[] { entry.getValue(), shard.length(), shard.lastModified() });
+        }
+        File temp = new File(shardFolder, indexFile.getName() + ".tmp");
+        try {
+            Files.writeString(temp.toPath(), gson.toJson(entries), StandardCharsets.UTF_8);
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Only costs a recount on the next start
+            plugin.getLogger().warning("Failed to save the queued commands index: " + e.getMessage());
+        }
+    }
+    
+    private Map<String, long[]> readIndex() {
+        if (!indexFile.exists()) {
+            return new HashMap<>();
+        }
+        try (Reader reader = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+            Map<String, long[]> saved = gson.fromJson(reader, new TypeToken<Map<String, long[]>>(){}.getType());
+            return saved != null ? saved : new HashMap<>();
+        } catch (Exception e) {
+            plugin.getLogger().warning("Ignoring unreadable queued commands index, recounting: " + e.getMessage());
+            return new HashMap<>();
+        }
+    }
+    
+    /**
+     * Append a command to its player's shard
+     * @return the number of commands now queued for that player
+     */
+    public synchronized int append(PendingCommand command) throws IOException {
+        String key = keyFor(command.getPlayerName());
+        String line = gson.toJson(command) + "\n";
+        
+        StoreSaveEvent event = new StoreSaveEvent();
+        event.begin();
+        Files.writeString(shardFile(key).toPath(), line, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        event.commit("queue", "append", 1, line.length());
+        
+        List<PendingCommand> cached = hotShards.get(key);
+        if (cached != null) {
+            cached.add(command);
+        }
+        
+        int count = index.merge(key, 1, Integer::sum);
+        totalCount++;
+        return count;
+    }
+    
+    /**
+     * Check whether anything is queued for a player without touching the disk
+     */
+    public synchronized boolean hasCommands(String playerName) {
+        return index.containsKey(keyFor(playerName));
+    }
+    
+    /**
+     * Read a player's queued commands (case-insensitive)
+     * @throws IOException if the player's shard cannot be read
+     */
+    public synchronized List<PendingCommand> get(String playerName) throws IOException {
+        String key = keyFor(playerName);
+        if (!index.containsKey(key)) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(loadShard(key));
+    }
+    
+    /**
+     * Remove and return every command queued for a player
+     * @throws IOException if the player's shard cannot be read; it is then left queued as it was
+     */
+    public synchronized List<PendingCommand> take(String playerName) throws IOException {
+        String key = keyFor(playerName);
+        if (!index.containsKey(key)) {
+            return new ArrayList<>();
+        }
+        
+        // Only forget the shard once it has been read in full
+        List<PendingCommand> commands = loadShard(key);
+        hotShards.remove(key);
+        totalCount -= index.remove(key);
+        
+        if (!shardFile(key).delete()) {
+            plugin.getLogger().warning("Failed to delete queued commands shard for " + playerName);
+        }
+        return commands;
+    }
+    
+    /**
+     * Total queued commands; does not take the lock, so it never waits for disk I/O
+     */
+    public int getTotalCount() {
+        return totalCount;
+    }
+    
+    public synchronized int getPlayerCount() {
+        return index.size();
+    }
+    
+    /**
+     * Drop all cached shards; the index stays in memory
+     */
+    public synchronized void evictAll() {
+        hotShards.clear();
+    }
+    
+    /**
+     * Read a shard, or return it from the cache; a shard is only cached once it has been read in full
+     */
+    private List<PendingCommand> loadShard(String key) throws IOException {
+        List<PendingCommand> cached = hotShards.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        
+        File shard = shardFile(key);
+        List<PendingCommand> commands = shard.exists() ? readShard(shard, key) : new ArrayList<>();
+        hotShards.put(key, commands);
+        return commands;
+    }
+    
+    private List<PendingCommand> readShard(File shard, String key) throws IOException {
+        List<PendingCommand> commands = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(shard.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    commands.add(gson.fromJson(line, PendingCommand.class));
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Skipping corrupted queued command for " + key + ": " + e.getMessage());
+                }
+            }
+        }
+        return commands;
+    }
+    
+    /**
+     * Split a queued_commands.json written by older versions into shards.
+     * Every player's shard is first written in full to a temporary file; the old
+     * file is renamed only once all of them are written, and that rename is what
+     * commits the migration. The temporary files are then moved into place, which
+     * is finished on the next start if it is interrupted. Until the commit, a failed
+     * or interrupted migration leaves the old file in place and starts over.
+     */
+    private void migrateLegacyFile() throws IOException {
+        File[] pending = shardFolder.listFiles((dir, name) -> name.endsWith(SHARD_EXTENSION + MIGRATING_EXTENSION));
+        if (pending == null) {
+            throw new IOException("Could not list " + shardFolder);
+        }
+        if (!legacyFile.exists()) {
+            // Committed, but the shards may not all have been moved into place yet
+            for (File temp : pending) {
+                moveMigratedShard(temp);
+            }
+            return;
+        }
+        for (File stale : pending) {
+            Files.delete(stale.toPath()); // Left by a migration that did not commit
+        }
+        
+        Map<String, List<PendingCommand>> legacyCommands;
+        try (FileReader reader = new FileReader(legacyFile, StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<Map<String, List<PendingCommand>>>(){}.getType();
+            legacyCommands = gson.fromJson(reader, type);
+        } catch (IOException e) {
+            throw e; // Try again on the next start
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error parsing queued commands file: " + e.getMessage());
+            File backupFile = new File(plugin.getDataFolder(), "queued_commands_corrupted_" + System.currentTimeMillis() + ".json");
+            if (legacyFile.renameTo(backupFile)) {
+                plugin.getLogger().warning("Corrupted queued commands file backed up to: " + backupFile.getName());
+            }
+            return;
+        }
+        
+        // Names that only differ in case share a shard
+        Map<String, List<PendingCommand>> byKey = new LinkedHashMap<>();
+        if (legacyCommands != null) {
+            for (Map.Entry<String, List<PendingCommand>> entry : legacyCommands.entrySet()) {
+                List<PendingCommand> commands = entry.getValue() != null ? entry.getValue() : Collections.emptyList();
+                if (!commands.isEmpty()) {
+                    byKey.computeIfAbsent(keyFor(entry.getKey()), key -> new ArrayList<>()).addAll(commands);
+                }
+            }
+        }
+        
+        int migrated = 0;
+        List<File> written = new ArrayList<>();
+        for (Map.Entry<String, List<PendingCommand>> entry : byKey.entrySet()) {
+            File shard = shardFile(entry.getKey());
+            File temp = new File(shardFolder, shard.getName() + MIGRATING_EXTENSION);
+            if (shard.exists()) {
+                Files.copy(shard.toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (PendingCommand command : entry.getValue()) {
+                    writer.write(gson.toJson(command));
+                    writer.write('\n');
+                    migrated++;
+                }
+            }
+            written.add(temp);
+        }
+        
+        Files.move(legacyFile.toPath(), migratedFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (File temp : written) {
+            moveMigratedShard(temp);
+        }
+        plugin.getLogger().info("Migrated " + migrated + " queued commands to per-player storage");
+    }
+    
+    /**
+     * Older versions replaced every character outside {@code [a-z0-9_]} with an underscore, so names
+     * such as {@code .Steve} and {@code _steve} shared a shard. Once, move every command whose player
+     * has a different key now into that player's own shard. Commands are copied into their new shard
+     * before they are removed from the old one, and not copied twice, so an interrupted run is safely
+     * repeated on the next start.
+     */
+    private void rekeyShards() throws IOException {
+        File marker = new File(shardFolder, REKEYED_MARKER);
+        if (marker.exists()) {
+            return;
+        }
+        File[] shards = shardFolder.listFiles((dir, name) -> name.endsWith(SHARD_EXTENSION));
+        if (shards == null) {
+            throw new IOException("Could not list " + shardFolder);
+        }
+        
+        int moved = 0;
+        for (File shard : shards) {
+            String key = shard.getName().substring(0, shard.getName().length() - SHARD_EXTENSION.length());
+            List<PendingCommand> kept = new ArrayList<>();
+            Map<String, List<PendingCommand>> foreign = new LinkedHashMap<>();
+            for (PendingCommand command : readShard(shard, key)) {
+                String commandKey = keyFor(command.getPlayerName());
+                if (commandKey.equals(key)) {
+                    kept.add(command);
+                } else {
+                    foreign.computeIfAbsent(commandKey, k -> new ArrayList<>()).add(command);
+                }
+            }
+            if (foreign.isEmpty()) {
+                continue;
+            }
+            
+            for (Map.Entry<String, List<PendingCommand>> entry : foreign.entrySet()) {
+                File target = shardFile(entry.getKey());
+                List<PendingCommand> merged = target.exists() ? readShard(target, entry.getKey()) : new ArrayList<>();
+                Set<Integer> present = new HashSet<>();
+                for (PendingCommand command : merged) {
+                    present.add(command.getId());
+                }
+                for (PendingCommand command : entry.getValue()) {
+                    if (present.add(command.getId())) {
+                        merged.add(command);
+                    }
+                }
+                writeShard(target, merged);
+                moved += entry.getValue().size();
+            }
+            if (kept.isEmpty()) {
+                Files.delete(shard.toPath());
+            } else {
+                writeShard(shard, kept);
+            }
+        }
+        
+        Files.writeString(marker.toPath(), "", StandardCharsets.UTF_8);
+        if (moved > 0) {
+            plugin.getLogger().info("Moved " + moved + " queued commands into the shards of their own players");
+        }
+    }
+    
+    private void writeShard(File shard, List<PendingCommand> commands) throws IOException {
+        File temp = new File(shardFolder, shard.getName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (PendingCommand command : commands) {
+                writer.write(gson.toJson(command));
+                writer.write('\n');
+            }
+        }
+        Files.move(temp.toPath(), shard.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private void moveMigratedShard(File temp) throws IOException {
+        String name = temp.getName();
+        File shard = new File(shardFolder, name.substring(0, name.length() - MIGRATING_EXTENSION.length()));
+        Files.move(temp.toPath(), shard.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * End a last line cut off by a crash, so the next append starts a line of its own
+     */
+    private static void terminateLastLine(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            if (length == 0) {
+                return;
+            }
+            raf.seek(length - 1);
+            if (raf.read() != '\n') {
+                raf.write('\n');
+            }
+        }
+    }
+    
+    /**
+     * Count the commands in a shard: its lines, including a last line without a newline
+     */
+    private static int countLines(File file) throws IOException {
+        int lines = 0;
+        boolean partialLine = false;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                        partialLine = false;
+                    } else {
+                        partialLine = true;
+                    }
+                }
+            }
+        }
+        return partialLine ? lines + 1 : lines;
+    }
+    
+    private File shardFile(String key) {
+        return new File(shardFolder, key + SHARD_EXTENSION);
+    }
+    
+    /**
+     * Player names are matched case-insensitively; anything outside the Minecraft
+     * username alphabet is escaped, so the key is a safe and unique file name
+     */
+    private static String keyFor(String playerName) {
+        return UNSAFE_KEY_CHAR.matcher(playerName.toLowerCase(Locale.ROOT))
+            .replaceAll(match -> String.format("-%04x", (int) match.group().charAt(0)));
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.Akaliix.MineWebStore.storage;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.jfr.StoreSaveEvent;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-disk journal of delayed commands, {@code scheduled_commands.jsonl}.
+ * Scheduling a command appends an "add" line and running it appends a
+ * "done" line, so neither rewrites the file. Loading replays the journal,
+ * and the file is compacted to the live commands whenever finished ones
+ * make up most of it. If the journal could not be read completely, it is
+ * never compacted, so commands that were not read are not lost.
+ */
+public class ScheduledCommandStore {
+    
+    private final MineWebStorePlugin plugin;
+    private final File file;
+    private final Gson gson;
+    private final Map<String, PendingCommand> live = new LinkedHashMap<>(); // Keyed by keyOf
+    private int journalLines = 0;
+    private boolean readFailed = false; // Live commands are incomplete, compacting would lose the rest
+    
+    public ScheduledCommandStore(MineWebStorePlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "scheduled_commands.jsonl");
+        this.gson = new Gson();
+    }
+    
+    /**
+     * Replay the journal and compact it
+     * @return every command that has not run yet, as far as the journal could be read
+     */
+    public synchronized List<PendingCommand> load() {
+        live.clear();
+        journalLines = 0;
+        readFailed = false;
+        if (file.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        JsonObject entry = JsonParser.parseString(line).getAsJsonObject();
+                        if (entry.has("done")) {
+                            String store = entry.has("store") ? entry.get("store").getAsString() : null;
+                            live.remove(keyOf(store, entry.get("done").getAsInt()));
+                        } else {
+                            PendingCommand command = gson.fromJson(entry.get("add"), PendingCommand.class);
+                            live.put(keyOf(command), command);
+                        }
+                    } catch (Exception e) {
+                        plugin.getLogger().warning("Skipping corrupted scheduled command entry: " + e.getMessage());
+                    }
+                }
+            } catch (IOException e) {
+                readFailed = true;
+                plugin.getLogger().warning("Failed to read scheduled commands, keeping " + file.getName()
+                    + " as it is until the next start: " + e.getMessage());
+            }
+        }
+        if (!readFailed) {
+            compact();
+        }
+        return new ArrayList<>(live.values());
+    }
+    
+    public synchronized void add(Collection<PendingCommand> commands) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (PendingCommand command : commands) {
+            JsonObject entry = new JsonObject();
+            entry.add("add", gson.toJsonTree(command));
+            lines.append(entry).append('\n');
+            live.put(keyOf(command), command);
+        }
+        append(lines.toString(), commands.size());
+    }
+    
+    public synchronized void markDone(Collection<PendingCommand> commands) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (PendingCommand command : commands) {
+            JsonObject entry = new JsonObject();
+            entry.addProperty("done", command.getId());
+            if (command.getStore() != null) {
+                entry.addProperty("store", command.getStore());
+            }
+            lines.append(entry).append('\n');
+            live.remove(keyOf(command));
+        }
+        append(lines.toString(), commands.size());
+        
+        if (!readFailed && journalLines > 256 && journalLines > live.size() * 4) {
+            compact();
+        }
+    }
+    
+    /**
+     * Command ids are only unique within one store
+     */
+    private static String keyOf(PendingCommand command) {
+        return keyOf(command.getStore(), command.getId());
+    }
+    
+    private static String keyOf(String store, int id) {
+        return store == null ? String.valueOf(id) : store + ":" + id;
+    }
+    
+    public synchronized int size() {
+        return live.size();
+    }
+    
+    private void append(String lines, int count) throws IOException {
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        StoreSaveEvent event = new StoreSaveEvent();
+        event.begin();
+        Files.writeString(file.toPath(), lines, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        event.commit("scheduled", "append", count, lines.length());
+        journalLines += count;
+    }
+    
+    /**
+     * Rewrite the journal with only the live commands
+     */
+    private void compact() {
+        if (live.isEmpty()) {
+            if (file.exists() && !file.delete()) {
+                plugin.getLogger().warning("Failed to delete " + file.getName());
+            }
+            journalLines = 0;
+            return;
+        }
+        
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        StoreSaveEvent event = new StoreSaveEvent();
+        event.begin();
+        try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+            for (PendingCommand command : live.values()) {
+                JsonObject entry = new JsonObject();
+                entry.add("add", gson.toJsonTree(command));
+                writer.write(entry.toString());
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to compact scheduled commands: " + e.getMessage());
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            event.commit("scheduled", "compact", live.size(), file.length());
+            journalLines = live.size();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to compact scheduled commands: " + e.getMessage());
+        }
+    }
+}
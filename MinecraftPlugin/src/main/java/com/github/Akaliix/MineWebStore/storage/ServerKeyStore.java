@@ -0,0 +1,89 @@
+package com.github.Akaliix.MineWebStore.storage;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Caches the server key handed out by WordPress so a restart can reuse it
+ * instead of registering (and rotating the key) again. The key is only
+ * valid for the WordPress site and server name it was issued for, so both
+ * are stored alongside it. Every store has its own file. The file is
+ * readable by the owner only where the file system supports it.
+ */
+public class ServerKeyStore {
+    
+    private final MineWebStorePlugin plugin;
+    private final File keyFile;
+    
+    /**
+     * @param store the store the key is for, null for the main store
+     */
+    public ServerKeyStore(MineWebStorePlugin plugin, String store) {
+        this.plugin = plugin;
+        this.keyFile = new File(plugin.getDataFolder(), store == null ? "server_key.json" : "server_key-" + store + ".json");
+    }
+    
+    /**
+     * Get the cached key for this site and server
+     * @return the key, or null if none is cached or it was issued for a different site or server
+     */
+    public String load(String baseUrl, String serverName) {
+        if (!keyFile.exists()) {
+            return null;
+        }
+        
+        try {
+            JsonObject json = JsonParser.parseString(Files.readString(keyFile.toPath(), StandardCharsets.UTF_8)).getAsJsonObject();
+            if (!json.has("server_key") || !baseUrl.equals(getString(json, "base_url"))
+                    || !serverName.equals(getString(json, "server_name"))) {
+                plugin.debug("Cached server key belongs to a different site or server, ignoring it");
+                return null;
+            }
+            return json.get("server_key").getAsString();
+        } catch (Exception e) {
+            plugin.getLogger().warning("Ignoring unreadable " + keyFile.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    public void save(String baseUrl, String serverName, String serverKey) {
+        JsonObject json = new JsonObject();
+        json.addProperty("base_url", baseUrl);
+        json.addProperty("server_name", serverName);
+        json.addProperty("server_key", serverKey);
+        
+        Path tempFile = new File(keyFile.getParentFile(), keyFile.getName() + ".tmp").toPath();
+        try {
+            keyFile.getParentFile().mkdirs();
+            Files.deleteIfExists(tempFile);
+            try {
+                Files.createFile(tempFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+            } catch (UnsupportedOperationException e) {
+                Files.createFile(tempFile); // Not a POSIX file system
+            }
+            Files.writeString(tempFile, json.toString(), StandardCharsets.UTF_8);
+            Files.move(tempFile, keyFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            plugin.getLogger().warning("Failed to cache server key: " + e.getMessage());
+        }
+    }
+    
+    public void clear() {
+        if (keyFile.exists() && !keyFile.delete()) {
+            plugin.getLogger().warning("Failed to delete " + keyFile.getName());
+        }
+    }
+    
+    private static String getString(JsonObject json, String key) {
+        return json.has(key) ? json.get(key).getAsString() : null;
+    }
+}
@@ -0,0 +1,81 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Writes log lines to a logger from its own thread, so the thread that logs
+ * never waits for the console or log file. Lines are dropped (and counted)
+ * instead of blocking when the logger cannot keep up.
+ */
+public class AsyncLogAppender {
+    
+    private static final int CAPACITY = 4096;
+    
+    private final Logger logger;
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean running = true;
+    
+    public AsyncLogAppender(Logger logger) {
+        this.logger = logger;
+        this.thread = new Thread(this::drain, "MineWebStore-Log");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+    
+    /**
+     * Queue a line; never blocks
+     */
+    public void append(String line) {
+        if (!queue.offer(line)) {
+            dropped.incrementAndGet();
+        }
+    }
+    
+    private void drain() {
+        while (running) {
+            try {
+                String line = queue.poll(1, TimeUnit.SECONDS);
+                if (line != null) {
+                    logger.info(line);
+                }
+                reportDropped();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+    
+    private void reportDropped() {
+        long count = dropped.getAndSet(0);
+        if (count > 0) {
+            logger.warning("Dropped " + count + " debug lines, the log could not keep up");
+        }
+    }
+    
+    /**
+     * Stop the writer thread and write what is still queued from the calling thread
+     */
+    public void shutdown() {
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<String> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (String line : remaining) {
+            logger.info(line);
+        }
+        reportDropped();
+    }
+}
@@ -0,0 +1,159 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import net.kyori.adventure.text.ComponentLike;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The console, as seen by the commands the store runs: everything it is sent is
+ * still printed to the console, and while a store command is being dispatched it
+ * is also kept in a buffer, so the result can be told from what the command said
+ * rather than only from the boolean {@code dispatchCommand} returns.
+ *
+ * Only messages sent on the main thread during the dispatch are kept; feedback a
+ * command sends later from another thread goes to the console only. Vanilla commands
+ * report straight to the server console and are not seen here. The buffer is reused
+ * for every dispatch, so capturing allocates nothing until the output is read.
+ */
+public class CapturingCommandSender {
+    
+    private static final int MAX_CAPTURED = 1024; // Characters kept per dispatch
+    private static final List<String> DEFAULT_FAILURE_PATTERNS = List.of(
+        "unknown (or incomplete )?command",
+        "player (was )?not found|no player was found|is not online",
+        "^usage:",
+        "^invalid (player|item|number)",
+        "^an (internal )?error occurred"
+    );
+    
+    private final Logger logger;
+    private final StringBuilder buffer = new StringBuilder(MAX_CAPTURED); // Main thread only
+    private ConsoleCommandSender console;
+    private ConsoleCommandSender sender;
+    private boolean capturing = false;
+    private volatile Pattern failurePattern;
+    
+    public CapturingCommandSender(Logger logger) {
+        this.logger = logger;
+    }
+    
+    /**
+     * Read {@code execution.failure_patterns}, regular expressions matched case-insensitively
+     * against each line of output; any match marks the command as failed
+     */
+    public void configure(ConfigurationSection config) {
+        List<String> patterns = config.isList("execution.failure_patterns")
+            ? config.getStringList("execution.failure_patterns") : DEFAULT_FAILURE_PATTERNS;
+        StringBuilder combined = new StringBuilder();
+        for (String pattern : patterns) {
+            try {
+                Pattern.compile(pattern);
+            } catch (PatternSyntaxException e) {
+                logger.warning("Ignoring invalid failure pattern '" + pattern + "': " + e.getDescription());
+                continue;
+            }
+            if (combined.length() > 0) {
+                combined.append('|');
+            }
+            combined.append("(?:").append(pattern).append(')');
+        }
+        // One pattern for all of them, so a line is scanned once
+        failurePattern = combined.length() == 0 ? null
+            : Pattern.compile(combined.toString(), Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+    }
+    
+    /**
+     * Dispatch a command as the console, keeping its output until the next dispatch.
+     * Must be called on the main thread.
+     * @return what {@code dispatchCommand} returned
+     */
+    public boolean dispatch(String command) {
+        ConsoleCommandSender target = getSender();
+        buffer.setLength(0);
+        capturing = true;
+        try {
+            return Bukkit.dispatchCommand(target, command);
+        } finally {
+            capturing = false;
+        }
+    }
+    
+    /**
+     * Whether the output of the last dispatch matches a failure pattern
+     */
+    public boolean outputIndicatesFailure() {
+        Pattern pattern = failurePattern;
+        return pattern != null && buffer.length() > 0 && pattern.matcher(buffer).find();
+    }
+    
+    /**
+     * @return the output of the last dispatch on one line, empty if it printed nothing
+     */
+    public String getOutput() {
+        return buffer.toString().replace('\n', ' ').trim();
+    }
+    
+    private ConsoleCommandSender getSender() {
+        ConsoleCommandSender current = Bukkit.getConsoleSender();
+        if (sender == null || console != current) {
+            console = current;
+            sender = (ConsoleCommandSender) Proxy.newProxyInstance(ConsoleCommandSender.class.getClassLoader(),
+                new Class<?>[] { ConsoleCommandSender.class }, this::invoke);
+        }
+        return sender;
+    }
+    
+    private Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (capturing && args != null && isMessage(method) && Bukkit.isPrimaryThread()) {
+            for (Object arg : args) {
+                capture(arg);
+            }
+        }
+        try {
+            return method.invoke(console, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+    private static boolean isMessage(Method method) {
+        String name = method.getName();
+        return name.equals("sendMessage") || name.equals("sendRawMessage");
+    }
+    
+    private void capture(Object arg) {
+        if (arg instanceof String) {
+            append(ChatColor.stripColor((String) arg));
+        } else if (arg instanceof String[]) {
+            for (String line : (String[]) arg) {
+                append(ChatColor.stripColor(line));
+            }
+        } else if (arg instanceof ComponentLike) {
+            append(PlainTextComponentSerializer.plainText().serialize(((ComponentLike) arg).asComponent()));
+        }
+        // Sender identities and UUIDs are not part of the message
+    }
+    
+    private void append(String line) {
+        int room = MAX_CAPTURED - buffer.length();
+        if (line == null || room <= 0) {
+            return;
+        }
+        if (buffer.length() > 0) {
+            buffer.append('\n');
+            room--;
+        }
+        buffer.append(line, 0, Math.min(line.length(), room));
+    }
+}
@@ -1,8 +1,12 @@
 package com.github.Akaliix.MineWebStore.utils;
 
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
+import com.github.Akaliix.MineWebStore.jfr.DispatchEvent;
+import com.github.Akaliix.MineWebStore.managers.CommandScheduler;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+
+import java.util.function.Consumer;
 
 /**
  * Utility to capture and analyze command execution results
@@ -26,25 +30,66 @@ public class CommandResultDetector {
      * Execute a command with result detection and player online check
      */
     public CommandResult executeCommand(String command, String playerName) {
+        long start = System.nanoTime();
+        long allocated = CostStats.allocatedBytes();
+        CommandResult result = null;
+        try {
+            result = execute(command, playerName);
+            return result;
+        } finally {
+            plugin.getPerformanceMonitor().record(PerformanceMonitor.Probe.EXECUTE, start, allocated);
+            if (result != null) {
+                result.durationNanos = System.nanoTime() - start;
+            }
+        }
+    }
+    
+    /**
+     * Run a store command {@code getRepeat()} times (see {@link #executeRepeated}), add
+     * the main thread time it took to the statistics of its product and record the
+     * delivery in the ledger. Must be called on the main thread.
+     * @param playerName player that must be online, or null to run regardless
+     */
+    public void executeProfiled(PendingCommand command, String playerName, Consumer<CommandResult> callback) {
+        executeRepeated(command.getCommand(), playerName, command.getRepeat(), result -> {
+            result.slow = plugin.getCommandProfiler().record(command, result.durationNanos);
+            plugin.getDeliveryLedger().record(command, result);
+            callback.accept(result);
+        });
+    }
+    
+    private CommandResult execute(String command, String playerName) {
+        CapturingCommandSender sender = plugin.getCapturingSender();
         boolean bukkitResult = false;
+        boolean reportedFailure = false;
         Exception commandException = null;
         
         // Check if player is online before command execution (for player-specific commands)
         if (playerName != null && !playerName.isEmpty()) {
-            Player player = Bukkit.getPlayer(playerName);
-            if (player == null || !player.isOnline()) {
+            if (!plugin.getPresenceIndex().isOnline(playerName)) {
                 return new CommandResult(false, "Player '" + playerName + "' is not online - command not executed");
             }
         }
         
+        DispatchEvent event = new DispatchEvent();
+        event.begin();
         try {
-            // Execute the command
-            bukkitResult = Bukkit.dispatchCommand(Bukkit.getConsoleSender(), command);
+            // Common command shapes go straight to the server API, everything else is dispatched
+            CommandResult fastPathResult = plugin.getFastPathRegistry().tryExecute(command);
+            if (fastPathResult != null) {
+                commitDispatchEvent(event, command, true, fastPathResult.isSuccess());
+                return fastPathResult;
+            }
+            
+            // Execute the command, keeping what it prints
+            bukkitResult = sender.dispatch(command);
+            reportedFailure = bukkitResult && sender.outputIndicatesFailure();
             
         } catch (Exception e) {
             commandException = e;
-            plugin.debug("Command execution exception: " + e.getMessage());
+            plugin.trace(Tracer.Category.DELIVERY, () -> "Command execution exception: " + e.getMessage());
         }
+        commitDispatchEvent(event, command, false, bukkitResult && !reportedFailure);
         
         // If there was an exception, it's definitely a failure
         if (commandException != null) {
@@ -53,17 +98,106 @@ public class CommandResultDetector {
         
         // Check if player is still online after command execution (for player-specific commands)
         if (playerName != null && !playerName.isEmpty()) {
-            Player player = Bukkit.getPlayer(playerName);
-            if (player == null || !player.isOnline()) {
+            // A command that kicks the player fires the quit event before dispatch returns
+            if (!plugin.getPresenceIndex().isOnline(playerName)) {
                 return new CommandResult(false, "Player '" + playerName + "' is no longer online - command may not have completed due to player leaving");
             }
         }
         
-        // Return result based on Bukkit's response
-        if (bukkitResult) {
-            return new CommandResult(true, "Command executed successfully");
+        // Return result based on Bukkit's response and what the command printed, which is sent along to WordPress
+        String output = sender.getOutput();
+        if (reportedFailure) {
+            return new CommandResult(false, "Command reported an error: " + output);
+        } else if (bukkitResult) {
+            return new CommandResult(true, withOutput("Command executed successfully", output));
         } else {
-            return new CommandResult(false, "Command execution returned false - likely failed");
+            return new CommandResult(false, withOutput("Command execution returned false - likely failed", output));
+        }
+    }
+    
+    private static String withOutput(String message, String output) {
+        return output.isEmpty() ? message : message + ": " + output;
+    }
+    
+    private static void commitDispatchEvent(DispatchEvent event, String command, boolean fastPath, boolean success) {
+        event.end();
+        if (event.shouldCommit()) {
+            int space = command.indexOf(' ');
+            event.command = space >= 0 ? command.substring(0, space) : command;
+            event.fastPath = fastPath;
+            event.success = success;
+            event.commit();
+        }
+    }
+    
+    /**
+     * Execute a command {@code repeat} times and report one combined result.
+     * Commands that take a quantity are collapsed into a single call by the fast path;
+     * anything else runs once here and hands its remaining runs to the command scheduler,
+     * which spreads them over as many ticks as its shared time budget and command limit
+     * need. Stops at the first failure. Must be called from an action of the command scheduler.
+     */
+    public void executeRepeated(String command, String playerName, int repeat, Consumer<CommandResult> callback) {
+        if (repeat <= 1) {
+            callback.accept(executeCommand(command, playerName));
+            return;
+        }
+        
+        if (playerName == null || playerName.isEmpty() || plugin.getPresenceIndex().isOnline(playerName)) {
+            long start = System.nanoTime();
+            CommandResult collapsed = plugin.getFastPathRegistry().tryExecuteRepeated(command, repeat);
+            if (collapsed != null) {
+                collapsed.durationNanos = System.nanoTime() - start;
+                callback.accept(collapsed);
+                return;
+            }
+        }
+        
+        RepeatRun run = new RepeatRun(command, playerName, repeat, callback);
+        if (!run.step()) {
+            plugin.getCommandScheduler().continueWith(run);
+        }
+    }
+    
+    /**
+     * The runs of a repeated command, one per scheduler step
+     */
+    private class RepeatRun implements CommandScheduler.Continuation {
+        private final String command;
+        private final String playerName;
+        private final int repeat;
+        private final Consumer<CommandResult> callback;
+        private int completed = 0;
+        private long durationNanos = 0; // Spent in the command itself, over all runs so far
+        
+        private RepeatRun(String command, String playerName, int repeat, Consumer<CommandResult> callback) {
+            this.command = command;
+            this.playerName = playerName;
+            this.repeat = repeat;
+            this.callback = callback;
+        }
+        
+        @Override
+        public boolean step() {
+            CommandResult result = executeCommand(command, playerName);
+            durationNanos += result.durationNanos;
+            if (!result.isSuccess()) {
+                // The runs before the failure were delivered; WordPress is told how many, so they are not repeated
+                CommandResult failed = new CommandResult(false, "Failed after " + completed + " of " + repeat + " runs: " + result.getMessage());
+                failed.completedRuns = completed;
+                finish(failed);
+                return true;
+            }
+            if (++completed < repeat) {
+                return false;
+            }
+            finish(new CommandResult(true, "Command executed successfully " + repeat + " times"));
+            return true;
+        }
+        
+        private void finish(CommandResult result) {
+            result.durationNanos = durationNanos;
+            callback.accept(result);
         }
     }
     
@@ -73,6 +207,9 @@ public class CommandResultDetector {
     public static class CommandResult {
         private final boolean success;
         private final String message;
+        private long durationNanos = 0; // Main thread time, set by the detector
+        private boolean slow = false;
+        private int completedRuns = 0;
         
         public CommandResult(boolean success, String message) {
             this.success = success;
@@ -86,5 +223,34 @@ public class CommandResultDetector {
         public String getMessage() {
             return message;
         }
+        
+        /**
+         * @return main thread time the command took, over all its repeats
+         */
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+        
+        /**
+         * @return whether the command took longer than {@code performance.slow_command_us};
+         * only known for commands run through {@link #executeProfiled}
+         */
+        public boolean isSlow() {
+            return slow;
+        }
+        
+        /**
+         * @return main thread time in microseconds if the command was slow, 0 otherwise
+         */
+        public long getSlowMicros() {
+            return slow ? Math.max(1L, durationNanos / 1000) : 0L;
+        }
+        
+        /**
+         * @return for a repeated command that failed part way, the runs that succeeded before the failure
+         */
+        public int getCompletedRuns() {
+            return completedRuns;
+        }
     }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 package com.github.Akaliix.MineWebStore.utils;
 
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.api.ApiEndpoint;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.net.HttpURLConnection;
@@ -22,6 +24,19 @@ public class ConfigValidator {
         
         plugin.getLogger().info("=== Configuration Validation ===");
         
+        if (config.getBoolean("proxy.enabled", false)) {
+            // Behind the proxy plugin only the shared secret is needed
+            if (config.getString("proxy.secret", "").isEmpty()) {
+                plugin.getLogger().severe("❌ Proxy mode is enabled but proxy.secret is not configured!");
+                isValid = false;
+            } else {
+                plugin.getLogger().info("✅ Proxy mode: commands are delivered by the proxy");
+            }
+            
+            plugin.getLogger().info("=== End Configuration Validation ===");
+            return isValid;
+        }
+        
         // Check WordPress settings
         String wpBaseUrl = config.getString("wordpress.base_url", "");
         String wpSecretKey = config.getString("wordpress.secret_key", "");
@@ -40,6 +55,20 @@ public class ConfigValidator {
             plugin.getLogger().info("✅ WordPress secret key configured");
         }
         
+        // Additional stores need their own URL and key
+        ConfigurationSection stores = config.getConfigurationSection("wordpress.stores");
+        if (stores != null) {
+            for (String id : stores.getKeys(false)) {
+                String storeUrl = stores.getString(id + ".base_url", "");
+                if (storeUrl.isEmpty() || stores.getString(id + ".secret_key", "").isEmpty()) {
+                    plugin.getLogger().severe("❌ Store '" + id + "' needs both base_url and secret_key!");
+                    isValid = false;
+                } else {
+                    plugin.getLogger().info("✅ Store '" + id + "': " + storeUrl);
+                }
+            }
+        }
+        
         // Check server settings
         String serverName = config.getString("server.name", "");
         if (serverName.isEmpty()) {
@@ -49,11 +78,6 @@ public class ConfigValidator {
             plugin.getLogger().info("✅ Server name: " + serverName);
         }
         
-        // Test connectivity if basic config is valid
-        if (isValid) {
-            testConnectivity(wpBaseUrl);
-        }
-        
         plugin.getLogger().info("=== End Configuration Validation ===");
         
         if (!isValid) {
@@ -64,7 +88,12 @@ public class ConfigValidator {
         return isValid;
     }
     
-    private void testConnectivity(String baseUrl) {
+    /**
+     * Check that the WordPress plugin is reachable. Does blocking I/O, so it is
+     * run off the main thread once the configuration has been validated.
+     */
+    public void testConnectivity() {
+        String baseUrl = config.getString("wordpress.base_url", "");
         plugin.getLogger().info("=== Connectivity Tests ===");
         
         // Test WordPress registration endpoint
@@ -77,8 +106,8 @@ public class ConfigValidator {
             URL url = URI.create(endpoint).toURL();
             HttpURLConnection connection = (HttpURLConnection) url.openConnection();
             connection.setRequestMethod("GET");
-            connection.setConnectTimeout(5000);
-            connection.setReadTimeout(5000);
+            connection.setConnectTimeout(config.getInt("http.connect_timeout", 5000));
+            connection.setReadTimeout((int) config.getLong(ApiEndpoint.STATUS.getConfigPath(), ApiEndpoint.STATUS.getDefaultBudgetMillis()));
 
             int responseCode = connection.getResponseCode();
 
@@ -0,0 +1,65 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link TimingStats} that also keeps the bytes allocated per operation, as
+ * counted by the JVM for the calling thread. On JVMs without per-thread
+ * allocation counting only the time is kept.
+ *
+ * Usage: read {@link System#nanoTime()} and {@link #allocatedBytes()} before the
+ * operation, then pass both differences to {@link #record(long, long)}.
+ */
+public class CostStats extends TimingStats {
+    
+    private static final com.sun.management.ThreadMXBean THREADS = findThreadBean();
+    
+    private final LongAdder allocationSamples = new LongAdder();
+    private final LongAdder totalBytes = new LongAdder();
+    
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        try {
+            if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                    && bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        } catch (UnsupportedOperationException | LinkageError e) {
+            // Not a HotSpot-style JVM
+        }
+        return null;
+    }
+    
+    /**
+     * Bytes allocated by the current thread so far, or -1 if the JVM cannot tell
+     */
+    public static long allocatedBytes() {
+        return THREADS != null ? THREADS.getCurrentThreadAllocatedBytes() : -1L;
+    }
+    
+    /**
+     * @param bytes allocated during the operation, negative if unknown
+     */
+    public void record(long nanos, long bytes) {
+        record(nanos);
+        if (bytes >= 0) {
+            allocationSamples.increment();
+            totalBytes.add(bytes);
+        }
+    }
+    
+    /**
+     * Average bytes allocated per operation, or -1 if allocations are not counted
+     */
+    public long getAverageBytes() {
+        long samples = allocationSamples.sum();
+        return samples == 0 ? -1L : totalBytes.sum() / samples;
+    }
+    
+    @Override
+    public String describe() {
+        long bytes = getAverageBytes();
+        return bytes < 0 ? super.describe() : super.describe() + ", " + bytes + " B/op";
+    }
+}
@@ -0,0 +1,60 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import java.net.SocketTimeoutException;
+
+/**
+ * Absolute point in time by which a request has to be finished.
+ * Connect and read timeouts are derived from the remaining time so a
+ * request can never outlive its budget, however slow the server is.
+ */
+public final class Deadline {
+    
+    private final long expiresAtNanos;
+    
+    private Deadline(long expiresAtNanos) {
+        this.expiresAtNanos = expiresAtNanos;
+    }
+    
+    /**
+     * Create a deadline that expires the given number of milliseconds from now
+     */
+    public static Deadline after(long millis) {
+        return new Deadline(System.nanoTime() + Math.max(0L, millis) * 1_000_000L);
+    }
+    
+    /**
+     * Return whichever of the two deadlines expires first
+     */
+    public Deadline min(Deadline other) {
+        if (other == null) {
+            return this;
+        }
+        return expiresAtNanos - other.expiresAtNanos <= 0 ? this : other;
+    }
+    
+    public long remainingMillis() {
+        return Math.max(0L, (expiresAtNanos - System.nanoTime()) / 1_000_000L);
+    }
+    
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+    
+    /**
+     * Remaining time as a socket timeout value, capped to the given maximum.
+     * Never returns 0 because HttpURLConnection treats 0 as "wait forever".
+     */
+    public int toTimeoutMillis(int max) {
+        long remaining = remainingMillis();
+        return (int) Math.max(1L, Math.min(remaining, max > 0 ? max : Integer.MAX_VALUE));
+    }
+    
+    /**
+     * Throw if the deadline has passed
+     */
+    public void check(String what) throws SocketTimeoutException {
+        if (isExpired()) {
+            throw new SocketTimeoutException("Deadline exceeded while " + what);
+        }
+    }
+}
@@ -1,32 +1,56 @@
 package com.github.Akaliix.MineWebStore.utils;
 
+import com.google.gson.stream.JsonWriter;
 import com.github.Akaliix.MineWebStore.MineWebStorePlugin;
+import com.github.Akaliix.MineWebStore.api.ApiEndpoint;
+import com.github.Akaliix.MineWebStore.jfr.HttpExchangeEvent;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
 
 /**
  * Utility class for HTTP requests
  */
 public class HttpClient {
     
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    
     private final MineWebStorePlugin plugin;
-    private final boolean debugEnabled;
+    private final int connectTimeoutMillis;
+    private final Set<HttpURLConnection> inFlight = ConcurrentHashMap.newKeySet();
+    private final AtomicLongArray timeoutCounts = new AtomicLongArray(ApiEndpoint.values().length);
+    private volatile boolean cancelled = false;
+    private volatile TrafficRecorder recorder;
     
-    public HttpClient(MineWebStorePlugin plugin, boolean debugEnabled) {
+    public HttpClient(MineWebStorePlugin plugin, int connectTimeoutMillis) {
         this.plugin = plugin;
-        this.debugEnabled = debugEnabled;
+        this.connectTimeoutMillis = connectTimeoutMillis;
     }
     
-    public String sendGetRequest(String endpoint, String authToken) {
+    public String sendGetRequest(String endpoint, String authToken, ApiEndpoint operation, Deadline deadline) {
+        long start = System.nanoTime();
+        HttpExchangeEvent event = new HttpExchangeEvent();
+        event.begin();
+        HttpURLConnection connection = null;
         try {
-            URL url = URI.create(endpoint).toURL();
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection = openConnection(endpoint, deadline);
             
             connection.setRequestMethod("GET");
             connection.setRequestProperty("Accept", "application/json");
@@ -35,28 +59,76 @@ public class HttpClient {
                 connection.setRequestProperty("Authorization", "Bearer " + authToken);
             }
             
-            debugLog("GET " + endpoint);
+            debugLog(() -> "GET " + endpoint);
             
-            return readResponse(connection);
+            return readResponse(connection, deadline, operation, "GET", endpoint, null, 0, start, event).getBodyIfSuccessful();
             
         } catch (Exception e) {
-            plugin.debug("Error sending GET request to " + endpoint + ": " + e.getMessage());
+            handleFailure(operation, "GET", endpoint, e);
+            record(event, operation, "GET", endpoint, null, 0, -1, e.getMessage(), start);
             return null;
+        } finally {
+            release(connection);
+        }
+    }
+    
+    /**
+     * Send a GET request and only report how the server answered
+     * @return the HTTP status code, or -1 if no response was received
+     */
+    public int sendStatusRequest(String endpoint, String authToken, ApiEndpoint operation, Deadline deadline) {
+        long start = System.nanoTime();
+        HttpExchangeEvent event = new HttpExchangeEvent();
+        event.begin();
+        HttpURLConnection connection = null;
+        try {
+            connection = openConnection(endpoint, deadline);
+            
+            connection.setRequestMethod("GET");
+            connection.setRequestProperty("Accept", "application/json");
+            
+            if (authToken != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + authToken);
+            }
+            
+            debugLog(() -> "GET " + endpoint);
+            
+            int responseCode = connection.getResponseCode();
+            debugLog(() -> "Response Code: " + responseCode);
+            record(event, operation, "GET", endpoint, null, 0, responseCode, null, start);
+            return responseCode;
+            
+        } catch (Exception e) {
+            handleFailure(operation, "GET", endpoint, e);
+            record(event, operation, "GET", endpoint, null, 0, -1, e.getMessage(), start);
+            return -1;
+        } finally {
+            release(connection);
         }
     }
     
-    public String sendPostRequest(String endpoint, String jsonData, String authToken) {
-        return sendJsonRequest(endpoint, "POST", jsonData, authToken);
+    public String sendPostRequest(String endpoint, String jsonData, String authToken, ApiEndpoint operation, Deadline deadline) {
+        return sendJsonRequest(endpoint, "POST", jsonData, authToken, operation, deadline);
+    }
+    
+    public String sendPutRequest(String endpoint, String jsonData, String authToken, ApiEndpoint operation, Deadline deadline) {
+        return sendJsonRequest(endpoint, "PUT", jsonData, authToken, operation, deadline);
     }
     
-    public String sendPutRequest(String endpoint, String jsonData, String authToken) {
-        return sendJsonRequest(endpoint, "PUT", jsonData, authToken);
+    private String sendJsonRequest(String endpoint, String method, String jsonData, String authToken,
+                                   ApiEndpoint operation, Deadline deadline) {
+        return exchangeJson(endpoint, method, jsonData, authToken, operation, deadline).getBodyIfSuccessful();
     }
     
-    private String sendJsonRequest(String endpoint, String method, String jsonData, String authToken) {
+    private Response exchangeJson(String endpoint, String method, String jsonData, String authToken,
+                                  ApiEndpoint operation, Deadline deadline) {
+        long start = System.nanoTime();
+        HttpExchangeEvent event = new HttpExchangeEvent();
+        event.begin();
+        HttpURLConnection connection = null;
+        long sent = 0;
         try {
-            URL url = URI.create(endpoint).toURL();
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection = openConnection(endpoint, deadline);
             
             connection.setRequestMethod(method);
             connection.setRequestProperty("Content-Type", "application/json");
@@ -67,24 +139,122 @@ public class HttpClient {
                 connection.setRequestProperty("Authorization", "Bearer " + authToken);
             }
             
-            debugLog(method + " " + endpoint);
-            debugLog("Request: " + jsonData);
+            debugLog(() -> method + " " + endpoint);
+            debugLog(() -> "Request: " + jsonData);
             
             // Send request
             try (OutputStream os = connection.getOutputStream()) {
                 byte[] input = jsonData.getBytes(StandardCharsets.UTF_8);
                 os.write(input, 0, input.length);
+                sent = input.length;
             }
             
-            return readResponse(connection);
+            return readResponse(connection, deadline, operation, method, endpoint, jsonData, sent, start, event);
             
         } catch (Exception e) {
-            plugin.debug("Error sending " + method + " request to " + endpoint + ": " + e.getMessage());
-            return null;
+            handleFailure(operation, method, endpoint, e);
+            record(event, operation, method, endpoint, jsonData, sent, -1, e.getMessage(), start);
+            return Response.NONE;
+        } finally {
+            release(connection);
         }
     }
     
-    private String readResponse(HttpURLConnection connection) throws Exception {
+    /**
+     * Send a POST request whose JSON body is written straight into the connection
+     * with chunked transfer encoding, so a large body is never held in memory as a
+     * tree, string or byte array. While traffic is recorded or debug logging is on,
+     * the body is rendered to a string first so it can be recorded and logged.
+     */
+    public String sendPostRequest(String endpoint, JsonBody body, String authToken, ApiEndpoint operation, Deadline deadline) {
+        return exchangePostRequest(endpoint, body, authToken, operation, deadline).getBodyIfSuccessful();
+    }
+    
+    /**
+     * Like {@link #sendPostRequest(String, JsonBody, String, ApiEndpoint, Deadline)}, but keeps
+     * the status and body of a rejected request so the caller can tell why it failed
+     */
+    public Response exchangePostRequest(String endpoint, JsonBody body, String authToken, ApiEndpoint operation,
+                                        Deadline deadline) {
+        if (recorder != null || plugin.getTracer().isEnabled(Tracer.Category.HTTP)) {
+            return exchangeJson(endpoint, "POST", render(body), authToken, operation, deadline);
+        }
+        
+        long start = System.nanoTime();
+        HttpExchangeEvent event = new HttpExchangeEvent();
+        event.begin();
+        HttpURLConnection connection = null;
+        CountingOutputStream counter = null;
+        try {
+            connection = openConnection(endpoint, deadline);
+            
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setRequestProperty("Accept", "application/json");
+            connection.setDoOutput(true);
+            connection.setChunkedStreamingMode(STREAM_BUFFER_SIZE);
+            
+            if (authToken != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + authToken);
+            }
+            
+            counter = new CountingOutputStream(connection.getOutputStream());
+            try (JsonWriter writer = new JsonWriter(new BufferedWriter(
+                    new OutputStreamWriter(counter, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE))) {
+                body.writeTo(writer);
+            }
+            
+            return readResponse(connection, deadline, operation, "POST", endpoint, null, counter.count, start, event);
+            
+        } catch (Exception e) {
+            handleFailure(operation, "POST", endpoint, e);
+            record(event, operation, "POST", endpoint, null, counter != null ? counter.count : 0, -1, e.getMessage(), start);
+            return Response.NONE;
+        } finally {
+            release(connection);
+        }
+    }
+    
+    private static String render(JsonBody body) {
+        StringWriter text = new StringWriter();
+        try (JsonWriter writer = new JsonWriter(text)) {
+            body.writeTo(writer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write request body", e);
+        }
+        return text.toString();
+    }
+    
+    private HttpURLConnection openConnection(String endpoint, Deadline deadline) throws Exception {
+        if (cancelled) {
+            throw new IllegalStateException("HTTP client has been shut down");
+        }
+        deadline.check("connecting");
+        
+        URL url = URI.create(endpoint).toURL();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(deadline.toTimeoutMillis(connectTimeoutMillis));
+        connection.setReadTimeout(deadline.toTimeoutMillis(0));
+        
+        inFlight.add(connection);
+        // Re-check so a cancelAll() racing with this registration cannot be missed
+        if (cancelled) {
+            connection.disconnect();
+        }
+        return connection;
+    }
+    
+    private void release(HttpURLConnection connection) {
+        if (connection != null) {
+            inFlight.remove(connection);
+        }
+    }
+    
+    private Response readResponse(HttpURLConnection connection, Deadline deadline, ApiEndpoint operation, String method,
+                                String endpoint, String request, long requestBytes, long start,
+                                HttpExchangeEvent event) throws Exception {
+        // Time spent connecting and writing counts against the budget of the read
+        connection.setReadTimeout(deadline.toTimeoutMillis(0));
         int responseCode = connection.getResponseCode();
         StringBuilder response = new StringBuilder();
         
@@ -96,23 +266,149 @@ public class HttpClient {
             String responseLine;
             while ((responseLine = br.readLine()) != null) {
                 response.append(responseLine.trim());
+                deadline.check("reading response");
             }
         }
         
-        debugLog("Response Code: " + responseCode);
-        debugLog("Response: " + response.toString());
+        debugLog(() -> "Response Code: " + responseCode);
+        debugLog(() -> "Response: " + response.toString());
+        record(event, operation, method, endpoint, request, requestBytes, responseCode, response.toString(), start);
         
-        if (responseCode >= 200 && responseCode < 300) {
-            return response.toString();
+        if (responseCode < 200 || responseCode >= 300) {
+            debugLog(() -> "HTTP Error " + responseCode + ": " + response.toString());
+        }
+        return new Response(responseCode, response.toString());
+    }
+    
+    private void handleFailure(ApiEndpoint operation, String method, String endpoint, Exception e) {
+        if (cancelled) {
+            debugLog(() -> "Cancelled " + method + " request to " + endpoint);
+        } else if (e instanceof SocketTimeoutException) {
+            timeoutCounts.incrementAndGet(operation.ordinal());
+            debugLog(() -> "Timed out sending " + method + " request to " + endpoint + ": " + e.getMessage());
         } else {
-            plugin.debug("HTTP Error " + responseCode + ": " + response.toString());
-            return null;
+            debugLog(() -> "Error sending " + method + " request to " + endpoint + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Abort every request that is currently in flight and refuse new ones.
+     * Used when the plugin is disabled or its configuration is reloaded.
+     */
+    public void cancelAll() {
+        cancelled = true;
+        for (HttpURLConnection connection : inFlight) {
+            connection.disconnect();
+        }
+        inFlight.clear();
+    }
+    
+    /**
+     * Record every following exchange, or stop recording with null
+     */
+    public void setRecorder(TrafficRecorder recorder) {
+        this.recorder = recorder;
+    }
+    
+    /**
+     * Finish an exchange: commit its flight recorder event and add it to the traffic recording, if any
+     */
+    private void record(HttpExchangeEvent event, ApiEndpoint operation, String method, String endpoint, String request,
+                        long requestBytes, int status, String response, long start) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.endpoint = operation.getConfigName();
+            event.method = method;
+            event.status = status;
+            event.requestBytes = requestBytes;
+            event.responseBytes = response != null && status >= 0 ? response.getBytes(StandardCharsets.UTF_8).length : 0;
+            event.commit();
+        }
+        
+        TrafficRecorder current = recorder;
+        if (current != null) {
+            current.record(method, endpoint, request, status, response, start);
+        }
+    }
+    
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+    
+    /**
+     * A JSON request body that writes itself, see {@link #sendPostRequest(String, JsonBody, String, ApiEndpoint, Deadline)}
+     */
+    @FunctionalInterface
+    public interface JsonBody {
+        void writeTo(JsonWriter writer) throws IOException;
+    }
+    
+    /**
+     * The status and body of a finished request, status -1 if no response arrived
+     */
+    public static final class Response {
+        private static final Response NONE = new Response(-1, null);
+        
+        private final int status;
+        private final String body;
+        
+        private Response(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+        
+        public int getStatus() {
+            return status;
+        }
+        
+        public String getBody() {
+            return body;
+        }
+        
+        public boolean isSuccessful() {
+            return status >= 200 && status < 300;
+        }
+        
+        private String getBodyIfSuccessful() {
+            return isSuccessful() ? body : null;
         }
     }
     
-    private void debugLog(String message) {
-        if (debugEnabled) {
-            plugin.debug("[WP-API] " + message);
+    /**
+     * Counts the bytes of a streamed body
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+        
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
         }
     }
+    
+    /**
+     * Get the number of requests that ran out of time, per endpoint
+     */
+    public Map<ApiEndpoint, Long> getTimeoutCounts() {
+        Map<ApiEndpoint, Long> counts = new EnumMap<>(ApiEndpoint.class);
+        for (ApiEndpoint endpoint : ApiEndpoint.values()) {
+            counts.put(endpoint, timeoutCounts.get(endpoint.ordinal()));
+        }
+        return counts;
+    }
+    
+    private void debugLog(Supplier<String> message) {
+        plugin.trace(Tracer.Category.HTTP, message);
+    }
 }
@@ -0,0 +1,42 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counts units of work that have started and not finished yet, so another
+ * thread can wait until none are left
+ */
+public class InFlightCounter {
+    
+    private int count = 0;
+    
+    public synchronized void begin() {
+        count++;
+    }
+    
+    public synchronized void end() {
+        if (--count == 0) {
+            notifyAll();
+        }
+    }
+    
+    public synchronized int get() {
+        return count;
+    }
+    
+    /**
+     * Wait until no work is in flight
+     * @param deadlineNanos give up at this {@link System#nanoTime()}
+     * @return false if work was still in flight at the deadline
+     */
+    public synchronized boolean awaitZero(long deadlineNanos) throws InterruptedException {
+        while (count > 0) {
+            long remaining = deadlineNanos - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+}
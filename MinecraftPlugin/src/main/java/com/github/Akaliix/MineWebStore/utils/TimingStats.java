@@ -0,0 +1,45 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running count, mean and maximum of a duration measured in nanoseconds.
+ * Recording does not allocate, so it can be used on hot paths.
+ */
+public class TimingStats {
+    
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+    
+    public void record(long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+    
+    public long getCount() {
+        return count.sum();
+    }
+    
+    public long getAverageNanos() {
+        long samples = count.sum();
+        return samples == 0 ? 0 : totalNanos.sum() / samples;
+    }
+    
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+    
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+    
+    /**
+     * Short human readable summary, e.g. "avg 12µs, max 40µs (25 samples)"
+     */
+    public String describe() {
+        return "avg " + getAverageNanos() / 1000 + "µs, max " + getMaxNanos() / 1000 + "µs (" + getCount() + " samples)";
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel with a resolution of one tick.
+ *
+ * Level 0 has one slot per tick, and every level above has slots 64 times
+ * wider than the one below it. An entry is hashed into the slot of the
+ * lowest level that can still hold its deadline. When a wider slot comes
+ * up, its entries are moved down a level ("cascaded"), and they fire once
+ * they reach level 0. Advancing by a tick touches one slot per level, so
+ * its cost does not depend on how many entries are waiting. Each entry is
+ * moved at most once per level before it fires. Deadlines beyond the top
+ * level's range are parked in its farthest slot and re-hashed when that
+ * slot comes up.
+ *
+ * Not thread-safe; the owner synchronizes access.
+ */
+public class TimingWheel<T> {
+    
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    // Farthest deadline the top level can hold, in ticks from now
+    private static final long HORIZON = (1L << (SLOT_BITS * LEVELS)) - 1;
+    
+    private final List<List<Entry<T>>> slots = new ArrayList<>(LEVELS * SLOTS);
+    private final List<Entry<T>> overdue = new ArrayList<>();
+    private long currentTick;
+    private int size;
+    
+    public TimingWheel(long startTick) {
+        this.currentTick = startTick;
+        for (int i = 0; i < LEVELS * SLOTS; i++) {
+            slots.add(new ArrayList<>());
+        }
+    }
+    
+    /**
+     * Add an entry; one whose deadline has already passed fires on the next {@link #advanceTo}
+     */
+    public void schedule(long deadline, T value) {
+        insert(new Entry<>(deadline, value));
+        size++;
+    }
+    
+    /**
+     * Advance tick by tick up to the given tick, passing every entry that falls due to the consumer
+     * in deadline order. Going back in time does nothing.
+     */
+    public void advanceTo(long tick, Consumer<T> due) {
+        fire(overdue, due);
+        while (currentTick < tick) {
+            currentTick++;
+            // Cascade the widest slots first, so entries due this very tick reach level 0 in time
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    List<Entry<T>> slot = takeSlot(level, currentTick);
+                    for (Entry<T> entry : slot) {
+                        insert(entry);
+                    }
+                }
+            }
+            fire(takeSlot(0, currentTick), due);
+            fire(overdue, due);
+        }
+    }
+    
+    private void insert(Entry<T> entry) {
+        long delta = entry.deadline - currentTick;
+        if (delta <= 0) {
+            overdue.add(entry);
+            return;
+        }
+        // Park deadlines beyond the horizon in the farthest slot; they are re-hashed from there
+        long target = delta > HORIZON ? currentTick + HORIZON : entry.deadline;
+        int level = 0;
+        while (level < LEVELS - 1 && Math.min(delta, HORIZON) >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        slots.get(slotIndex(level, target)).add(entry);
+    }
+    
+    private List<Entry<T>> takeSlot(int level, long tick) {
+        int index = slotIndex(level, tick);
+        List<Entry<T>> slot = slots.get(index);
+        if (slot.isEmpty()) {
+            return slot;
+        }
+        slots.set(index, new ArrayList<>());
+        return slot;
+    }
+    
+    private void fire(List<Entry<T>> entries, Consumer<T> due) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<Entry<T>> firing = new ArrayList<>(entries);
+        entries.clear();
+        firing.sort((a, b) -> Long.compare(a.deadline, b.deadline));
+        for (Entry<T> entry : firing) {
+            size--;
+            due.accept(entry.value);
+        }
+    }
+    
+    private static int slotIndex(int level, long tick) {
+        return level * SLOTS + (int) ((tick >>> (SLOT_BITS * level)) & SLOT_MASK);
+    }
+    
+    public long getCurrentTick() {
+        return currentTick;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    private static class Entry<T> {
+        private final long deadline;
+        private final T value;
+        
+        private Entry(long deadline, T value) {
+            this.deadline = deadline;
+            this.value = value;
+        }
+    }
+}
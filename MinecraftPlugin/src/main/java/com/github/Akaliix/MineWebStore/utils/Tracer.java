@@ -0,0 +1,136 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Debug tracing by category. Messages are passed as suppliers and only built
+ * when their category is enabled, so tracing costs a field read while debug
+ * is off. Lines go through an {@link AsyncLogAppender}, so a busy category
+ * never slows the thread that traces.
+ *
+ * Sampling works per unit of work rather than per line: code wraps a unit
+ * (a poll or a player sync) in {@link #sample(Category)}, and
+ * with {@code debug.sample.<category>: N} only one unit in N is traced, with
+ * every line it produces on that thread, in any category.
+ */
+public class Tracer {
+    
+    public enum Category {
+        /** Anything without a more specific category, including {@code plugin.debug} */
+        GENERAL,
+        /** Polling, claiming and parsing pending commands */
+        POLL,
+        /** Running commands and reporting their results */
+        DELIVERY,
+        /** Commands queued for offline players */
+        QUEUE,
+        /** Player history syncs */
+        SYNC,
+        /** Every WordPress request and response, with bodies */
+        HTTP;
+        
+        public String getConfigName() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+    
+    private static final Sample NOT_SAMPLED = () -> { };
+    private static final ThreadLocal<Boolean> SUPPRESSED = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    
+    private final AsyncLogAppender appender;
+    private final AtomicLongArray sampleCounters = new AtomicLongArray(Category.values().length);
+    private volatile boolean[] enabled = new boolean[Category.values().length];
+    private volatile int[] sampleRates = new int[Category.values().length];
+    
+    public Tracer(Logger logger) {
+        this.appender = new AsyncLogAppender(logger);
+    }
+    
+    /**
+     * Read {@code debug.enabled}, {@code debug.categories}, {@code debug.log_api_calls} and {@code debug.sample}
+     */
+    public void configure(ConfigurationSection config) {
+        boolean debugEnabled = config.getBoolean("debug.enabled", false);
+        List<String> categories = config.getStringList("debug.categories");
+        boolean[] newEnabled = new boolean[Category.values().length];
+        int[] newRates = new int[Category.values().length];
+        for (Category category : Category.values()) {
+            boolean listed;
+            if (categories.isEmpty()) {
+                // Request and response bodies are only logged on request, as before
+                listed = category != Category.HTTP || config.getBoolean("debug.log_api_calls", false);
+            } else {
+                listed = categories.stream().anyMatch(name -> name.equalsIgnoreCase(category.getConfigName()));
+            }
+            newEnabled[category.ordinal()] = debugEnabled && listed;
+            newRates[category.ordinal()] = Math.max(1, config.getInt("debug.sample." + category.getConfigName(), 1));
+        }
+        sampleRates = newRates;
+        enabled = newEnabled;
+    }
+    
+    /**
+     * Whether a line in this category would be written right now, on this thread
+     */
+    public boolean isEnabled(Category category) {
+        return enabled[category.ordinal()] && !SUPPRESSED.get();
+    }
+    
+    /**
+     * Trace a message; the supplier is only called if the category is enabled
+     */
+    public void trace(Category category, Supplier<String> message) {
+        if (isEnabled(category)) {
+            appender.append("[DEBUG] [" + category.getConfigName() + "] " + message.get());
+        }
+    }
+    
+    /**
+     * Trace a message that is already built
+     */
+    public void trace(Category category, String message) {
+        if (isEnabled(category)) {
+            appender.append("[DEBUG] [" + category.getConfigName() + "] " + message);
+        }
+    }
+    
+    /**
+     * Start a unit of work in a sampled category. Unless this unit is one of the
+     * sampled ones, nothing is traced on this thread until the returned sample is closed.
+     * Use with try-with-resources.
+     */
+    public Sample sample(Category category) {
+        int rate = sampleRates[category.ordinal()];
+        if (rate <= 1 || !enabled[category.ordinal()]) {
+            return NOT_SAMPLED;
+        }
+        if (sampleCounters.getAndIncrement(category.ordinal()) % rate == 0) {
+            return NOT_SAMPLED; // This one is traced
+        }
+        Boolean previous = SUPPRESSED.get();
+        SUPPRESSED.set(Boolean.TRUE);
+        return () -> SUPPRESSED.set(previous);
+    }
+    
+    /**
+     * Write out what is still queued and stop the log thread
+     */
+    public void shutdown() {
+        appender.shutdown();
+    }
+    
+    /**
+     * A sampled unit of work; closing it ends the unit
+     */
+    @FunctionalInterface
+    public interface Sample extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records every exchange with WordPress to a gzipped JSON-lines file in the
+ * {@code recordings} folder: when it started, method, path, request and
+ * response bodies, status code and latency. Secrets never reach the file:
+ * the Authorization header is not recorded and secret fields in bodies are
+ * replaced. Recordings can be fed back through the plugin with
+ * {@code /mws replay}.
+ */
+public class TrafficRecorder {
+    
+    public static final String EXTENSION = ".jsonl.gz";
+    private static final Set<String> SECRET_FIELDS = Set.of("secret_key", "server_key", "secret");
+    private static final String REDACTED = "<redacted>";
+    
+    private final File file;
+    private final String baseUrl;
+    private final long startNanos = System.nanoTime();
+    private Writer writer;
+    private int exchanges = 0;
+    
+    private TrafficRecorder(File file, String baseUrl, Writer writer) {
+        this.file = file;
+        this.baseUrl = baseUrl;
+        this.writer = writer;
+    }
+    
+    /**
+     * Start a new recording named after the current time
+     * @param baseUrl stripped from recorded endpoints, so recordings do not depend on the store's address
+     */
+    public static TrafficRecorder start(File folder, String baseUrl) throws IOException {
+        if (!folder.exists() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        String name = "traffic-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + EXTENSION;
+        File file = new File(folder, name);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+            new GZIPOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8));
+        return new TrafficRecorder(file, baseUrl, writer);
+    }
+    
+    /**
+     * Record one exchange
+     * @param status HTTP status code, or -1 if no response was received
+     * @param response the response body, or the error if no response was received
+     */
+    public synchronized void record(String method, String endpoint, String request, int status,
+                                    String response, long exchangeStartNanos) {
+        if (writer == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        JsonObject entry = new JsonObject();
+        entry.addProperty("t", (exchangeStartNanos - startNanos) / 1_000_000L);
+        entry.addProperty("method", method);
+        entry.addProperty("path", endpoint.startsWith(baseUrl) ? endpoint.substring(baseUrl.length()) : endpoint);
+        entry.addProperty("status", status);
+        entry.addProperty("latency_ms", (now - exchangeStartNanos) / 1_000_000L);
+        if (request != null) {
+            entry.add("request", redact(request));
+        }
+        if (response != null) {
+            entry.add("response", redact(response));
+        }
+        try {
+            writer.write(entry.toString());
+            writer.write('\n');
+            exchanges++;
+        } catch (IOException e) {
+            close(); // A recording with gaps is worse than a short one
+        }
+    }
+    
+    /**
+     * Finish the recording; later exchanges are not recorded
+     */
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException ignored) {
+            // Nothing left to do with a recording that cannot be written
+        }
+        writer = null;
+    }
+    
+    public File getFile() {
+        return file;
+    }
+    
+    public synchronized int getExchangeCount() {
+        return exchanges;
+    }
+    
+    /**
+     * Parse a body and replace every secret field in it; bodies that are not JSON are kept as a string
+     */
+    static JsonElement redact(String body) {
+        JsonElement element;
+        try {
+            element = JsonParser.parseString(body);
+        } catch (Exception e) {
+            return new JsonPrimitive(body);
+        }
+        redactInPlace(element);
+        return element;
+    }
+    
+    private static void redactInPlace(JsonElement element) {
+        if (element.isJsonArray()) {
+            element.getAsJsonArray().forEach(TrafficRecorder::redactInPlace);
+        } else if (element.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> field : element.getAsJsonObject().entrySet()) {
+                if (SECRET_FIELDS.contains(field.getKey())) {
+                    field.setValue(new JsonPrimitive(REDACTED));
+                } else {
+                    redactInPlace(field.getValue());
+                }
+            }
+        }
+    }
+}
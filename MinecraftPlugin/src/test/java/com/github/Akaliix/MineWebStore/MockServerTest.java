@@ -0,0 +1,79 @@
+package com.github.Akaliix.MineWebStore;
+
+import be.seeseemelk.mockbukkit.MockBukkit;
+import be.seeseemelk.mockbukkit.ServerMock;
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
+import com.github.Akaliix.MineWebStore.utils.CostStats;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Loads the plugin on a mock server with the test config.yml, in proxy mode so
+ * nothing contacts WordPress. The scale of every test is set with system properties,
+ * e.g. {@code mvn test -Dmws.test.players=5000 -Dmws.test.commands=20000}.
+ */
+public abstract class MockServerTest {
+    
+    /** Players joining at once */
+    protected static final int PLAYERS = Integer.getInteger("mws.test.players", 200);
+    /** Store commands run in a burst */
+    protected static final int COMMANDS = Integer.getInteger("mws.test.commands", 1000);
+    /** Operations run before measuring, so class loading and JIT compilation do not count */
+    protected static final int WARMUP = Integer.getInteger("mws.test.warmup", 200);
+    
+    protected ServerMock server;
+    protected MineWebStorePlugin plugin;
+    
+    @BeforeEach
+    void loadPlugin() {
+        server = MockBukkit.mock();
+        plugin = MockBukkit.load(MineWebStorePlugin.class);
+        plugin.getDataReady().join();
+    }
+    
+    @AfterEach
+    void unloadPlugin() {
+        MockBukkit.unmock();
+    }
+    
+    protected List<PlayerMock> joinPlayers(String prefix, int count) {
+        List<PlayerMock> players = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            players.add(server.addPlayer(prefix + i));
+        }
+        return players;
+    }
+    
+    /**
+     * Run server ticks, letting the async tasks started by each finish before the next, until {@code done}
+     * @return false if it was still not done after {@code maxTicks}
+     */
+    protected boolean tickUntil(BooleanSupplier done, int maxTicks) {
+        for (int tick = 0; tick < maxTicks; tick++) {
+            if (done.getAsBoolean()) {
+                return true;
+            }
+            server.getScheduler().performOneTick();
+            server.getScheduler().waitAsyncTasksFinished();
+        }
+        return done.getAsBoolean();
+    }
+    
+    /**
+     * Fail if the probe recorded nothing or exceeds any of its budgets in the test config.yml
+     */
+    protected void assertWithinBudget(PerformanceMonitor.Probe probe) {
+        CostStats stats = plugin.getPerformanceMonitor().get(probe);
+        assertTrue(stats.getCount() > 0, () -> "No " + probe.getConfigName() + " samples were recorded");
+        List<String> exceeded = plugin.getPerformanceMonitor().check(probe);
+        assertTrue(exceeded.isEmpty(), () -> probe.getConfigName() + " (" + stats.describe() + ") exceeds its budget: "
+            + String.join(", ", exceeded));
+    }
+}
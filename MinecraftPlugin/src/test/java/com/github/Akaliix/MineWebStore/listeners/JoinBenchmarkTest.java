@@ -0,0 +1,65 @@
+package com.github.Akaliix.MineWebStore.listeners;
+
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.github.Akaliix.MineWebStore.MockServerTest;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
+import com.github.Akaliix.MineWebStore.utils.CostStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Main thread nanoseconds per join, for players joining for the first time and for
+ * returning players. Fails when the average exceeds {@code mws.bench.join_ns}, e.g.
+ * {@code mvn test -Dtest=JoinBenchmarkTest -Dmws.bench.join_ns=20000}.
+ */
+class JoinBenchmarkTest extends MockServerTest {
+    
+    /** Average main thread nanoseconds a join may take */
+    private static final long JOIN_NS = Long.getLong("mws.bench.join_ns", 50_000);
+    
+    @Test
+    void newPlayerJoinsStayWithinBudget() {
+        joinPlayers("warmup", WARMUP);
+        plugin.getPerformanceMonitor().reset();
+        
+        joinPlayers("new", PLAYERS);
+        
+        assertJoinsWithinBudget("new player");
+    }
+    
+    @Test
+    void returningPlayerJoinsStayWithinBudget() {
+        List<PlayerMock> warmup = joinPlayers("warmup", WARMUP);
+        List<PlayerMock> returning = joinPlayers("returning", PLAYERS);
+        rejoin(warmup);
+        
+        // Quit and join again, so every join finds the player in the history
+        returning.forEach(PlayerMock::disconnect);
+        plugin.getPerformanceMonitor().reset();
+        rejoin(returning);
+        
+        assertJoinsWithinBudget("returning player");
+    }
+    
+    private void rejoin(List<PlayerMock> players) {
+        for (PlayerMock player : players) {
+            if (player.isOnline()) {
+                player.disconnect();
+            }
+            server.addPlayer(player);
+        }
+    }
+    
+    private void assertJoinsWithinBudget(String kind) {
+        CostStats stats = plugin.getPerformanceMonitor().get(PerformanceMonitor.Probe.JOIN);
+        assertEquals(PLAYERS, stats.getCount());
+        System.out.println("Join benchmark, " + kind + ": " + stats.getAverageNanos() + " ns per join (" + stats.describe() + ")");
+        assertTrue(stats.getAverageNanos() <= JOIN_NS, () -> kind + " joins take " + stats.getAverageNanos()
+            + " ns on the main thread, over the budget of " + JOIN_NS + " ns (" + stats.describe() + ")");
+        assertWithinBudget(PerformanceMonitor.Probe.JOIN);
+    }
+}
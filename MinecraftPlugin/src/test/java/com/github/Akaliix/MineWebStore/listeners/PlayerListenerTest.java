@@ -0,0 +1,25 @@
+package com.github.Akaliix.MineWebStore.listeners;
+
+import com.github.Akaliix.MineWebStore.MockServerTest;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Main thread cost of {@link PlayerListener#onPlayerJoin} during a join storm
+ */
+class PlayerListenerTest extends MockServerTest {
+    
+    @Test
+    void joinStormStaysWithinBudget() {
+        joinPlayers("warmup", WARMUP);
+        plugin.getPerformanceMonitor().reset();
+        
+        joinPlayers("storm", PLAYERS);
+        
+        assertEquals(WARMUP + PLAYERS, plugin.getPresenceIndex().size());
+        assertEquals(PLAYERS, plugin.getPerformanceMonitor().get(PerformanceMonitor.Probe.JOIN).getCount());
+        assertWithinBudget(PerformanceMonitor.Probe.JOIN);
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.Akaliix.MineWebStore.managers;
+
+import com.github.Akaliix.MineWebStore.MockServerTest;
+import com.github.Akaliix.MineWebStore.models.PendingCommand;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Main thread cost of delivering the commands queued for offline players when they all join at once:
+ * handing them to the scheduler each tick and the scheduler ticks that run them
+ */
+class QueuedCommandDrainTest extends MockServerTest {
+    
+    private static final int COMMANDS_PER_ORDER = 5;
+    
+    private int nextId = 0;
+    private int nextOrderId = 0;
+    
+    @Test
+    void joinStormDrainsWithinBudget() {
+        drain("warmup", Math.max(1, WARMUP / COMMANDS_PER_ORDER), COMMANDS_PER_ORDER);
+        plugin.getPerformanceMonitor().reset();
+        
+        int perPlayer = Math.max(1, COMMANDS / PLAYERS);
+        drain("storm", PLAYERS, perPlayer);
+        
+        assertEquals(PLAYERS * perPlayer, plugin.getPerformanceMonitor().get(PerformanceMonitor.Probe.EXECUTE).getCount());
+        assertWithinBudget(PerformanceMonitor.Probe.QUEUED_DRAIN);
+        assertWithinBudget(PerformanceMonitor.Probe.SCHEDULER_TICK);
+        assertWithinBudget(PerformanceMonitor.Probe.EXECUTE);
+    }
+    
+    /**
+     * Queue commands for players who are offline, let them all join and tick until every command ran
+     */
+    private void drain(String prefix, int players, int perPlayer) {
+        PlayerCacheManager playerCacheManager = plugin.getPlayerCacheManager();
+        for (int player = 0; player < players; player++) {
+            String playerName = prefix + player;
+            for (int i = 0; i < perPlayer; i++) {
+                if (i % COMMANDS_PER_ORDER == 0) {
+                    nextOrderId++;
+                }
+                // Negative ids, like the burst of /mws perf, so they can never be mistaken for real orders
+                playerCacheManager.queueCommandForPlayer(new PendingCommand(-++nextId, -nextOrderId, 0, playerName,
+                    "give " + playerName + " stone 1", "online", null));
+            }
+        }
+        
+        long executed = plugin.getPerformanceMonitor().get(PerformanceMonitor.Probe.EXECUTE).getCount() + (long) players * perPlayer;
+        joinPlayers(prefix, players);
+        assertTrue(tickUntil(() -> plugin.getPerformanceMonitor().get(PerformanceMonitor.Probe.EXECUTE).getCount() >= executed,
+            players * perPlayer + 200), "Queued commands were not all delivered");
+        assertEquals(0, playerCacheManager.getQueuedCommandsCount());
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.Akaliix.MineWebStore.utils;
+
+import be.seeseemelk.mockbukkit.entity.PlayerMock;
+import com.github.Akaliix.MineWebStore.MockServerTest;
+import com.github.Akaliix.MineWebStore.managers.PerformanceMonitor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Main thread cost of {@link CommandResultDetector#executeCommand} during a command burst,
+ * for commands the fast path runs and for commands that go through the dispatcher
+ */
+class CommandResultDetectorTest extends MockServerTest {
+    
+    @Test
+    void fastPathBurstStaysWithinBudget() {
+        PlayerMock player = server.addPlayer("buyer");
+        CommandResultDetector detector = new CommandResultDetector(plugin);
+        
+        burst(detector, player, "give buyer stone 1", WARMUP);
+        plugin.getPerformanceMonitor().reset();
+        burst(detector, player, "give buyer stone 1", COMMANDS);
+        
+        assertWithinBudget(PerformanceMonitor.Probe.EXECUTE);
+    }
+    
+    @Test
+    void dispatchedBurstStaysWithinBudget() {
+        PlayerMock player = server.addPlayer("buyer");
+        server.getCommandMap().register("mwstest", new NoopCommand());
+        CommandResultDetector detector = new CommandResultDetector(plugin);
+        
+        burst(detector, player, "mwsnoop buyer", WARMUP);
+        plugin.getPerformanceMonitor().reset();
+        burst(detector, player, "mwsnoop buyer", COMMANDS);
+        
+        assertWithinBudget(PerformanceMonitor.Probe.EXECUTE);
+    }
+    
+    private static void burst(CommandResultDetector detector, PlayerMock player, String command, int count) {
+        for (int i = 0; i < count; i++) {
+            CommandResultDetector.CommandResult result = detector.executeCommand(command, player.getName());
+            assertTrue(result.isSuccess(), result::getMessage);
+            player.getInventory().clear(); // Never fills up, however large the burst
+        }
+    }
+    
+    /**
+     * Stands in for a plugin command that does no work of its own
+     */
+    private static final class NoopCommand extends Command {
+        private NoopCommand() {
+            super("mwsnoop");
+        }
+        
+        @Override
+        public boolean execute(CommandSender sender, String label, String[] args) {
+            return true;
+        }
+    }
+}
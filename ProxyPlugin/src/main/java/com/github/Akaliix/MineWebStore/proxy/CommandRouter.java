@@ -0,0 +1,346 @@
+package com.github.Akaliix.MineWebStore.proxy;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.messages.ChannelMessageSink;
+import com.velocitypowered.api.proxy.messages.MinecraftChannelIdentifier;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Sends each order to the backend its player is connected to. Orders for players who
+ * are not on the network wait here, persisted in {@code queued_commands.json}, and are
+ * sent when the player connects to any backend. {@code always} and {@code delayed}
+ * commands for absent players go to the default backend, or any backend with players
+ * on it; a backend keeps delayed commands until they are due.
+ *
+ * Backends answer with the result of every command; results are forwarded to WordPress,
+ * and orders a backend could not run because the player had just left are queued again.
+ * Commands sent to a backend are kept in {@code in_flight_commands.json} until their result
+ * arrives; after a restart they are queued again, since their results may have been lost.
+ * Results WordPress did not accept are kept in {@code unreported_results.json} and sent again.
+ */
+public class CommandRouter {
+    
+    public static final MinecraftChannelIdentifier CHANNEL = MinecraftChannelIdentifier.from("minewebstore:commands");
+    
+    private final MineWebStoreProxy proxy;
+    private final ProxyServer server;
+    private final ProxyConfig config;
+    private final Path queueFile;
+    private final Path inFlightFile;
+    private final Path unreportedFile;
+    private final byte[] secret;
+    
+    // Guarded by this
+    private final Map<String, List<JsonObject>> waiting = new LinkedHashMap<>();
+    private final Map<Integer, JsonObject> inFlight = new HashMap<>();
+    private final JsonArray unreported = new JsonArray();
+    
+    public CommandRouter(MineWebStoreProxy proxy, ProxyServer server, ProxyConfig config, Path dataDirectory) {
+        this.proxy = proxy;
+        this.server = server;
+        this.config = config;
+        this.queueFile = dataDirectory.resolve("queued_commands.json");
+        this.inFlightFile = dataDirectory.resolve("in_flight_commands.json");
+        this.unreportedFile = dataDirectory.resolve("unreported_results.json");
+        this.secret = config.getProxySecret().getBytes(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * Load the waiting commands and results. Commands that were in flight when the proxy stopped are
+     * routed again like waiting ones; a backend that still holds one of them does not run it twice.
+     */
+    public synchronized void load() throws IOException {
+        waiting.clear();
+        inFlight.clear();
+        unreported.asList().clear();
+        for (JsonElement element : readArray(queueFile)) {
+            queue(element.getAsJsonObject());
+        }
+        JsonArray sent = readArray(inFlightFile);
+        for (JsonElement element : sent) {
+            queue(element.getAsJsonObject());
+        }
+        unreported.addAll(readArray(unreportedFile));
+        if (!sent.isEmpty()) {
+            proxy.getLogger().info("Routing " + sent.size() + " commands again whose results were not received before the restart");
+            save();
+        }
+    }
+    
+    private static JsonArray readArray(Path file) throws IOException {
+        if (Files.notExists(file)) {
+            return new JsonArray();
+        }
+        return JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8)).getAsJsonArray();
+    }
+    
+    /**
+     * Deliver freshly polled commands; every command is either sent to a backend or queued here
+     */
+    public synchronized void route(JsonArray commands) {
+        for (List<JsonObject> order : groupByOrder(commands)) {
+            JsonObject first = order.get(0);
+            Optional<Player> player = server.getPlayer(first.get("player_name").getAsString());
+            Optional<ServerConnection> connection = player.flatMap(Player::getCurrentServer);
+            if (connection.isPresent()) {
+                // The player is online: the whole order runs on their backend
+                deliver(connection.get(), connection.get().getServerInfo().getName(), order);
+                continue;
+            }
+            
+            List<JsonObject> always = new ArrayList<>();
+            for (JsonObject command : order) {
+                if (runsWithoutPlayer(command)) {
+                    always.add(command);
+                } else {
+                    queue(command);
+                }
+            }
+            if (!always.isEmpty()) {
+                RegisteredServer backend = findConsoleBackend();
+                if (backend != null) {
+                    deliver(backend, backend.getServerInfo().getName(), always);
+                } else {
+                    always.forEach(this::queue);
+                }
+            }
+        }
+        save();
+    }
+    
+    /**
+     * A player finished connecting to a backend: send everything waiting for them,
+     * and any console commands that were waiting for a backend to have a player
+     */
+    public synchronized void onPlayerConnected(Player player) {
+        Optional<ServerConnection> connection = player.getCurrentServer();
+        if (connection.isEmpty()) {
+            return;
+        }
+        
+        List<JsonObject> commands = new ArrayList<>();
+        List<JsonObject> forPlayer = waiting.remove(player.getUsername().toLowerCase(Locale.ROOT));
+        if (forPlayer != null) {
+            commands.addAll(forPlayer);
+        }
+        for (Iterator<List<JsonObject>> lists = waiting.values().iterator(); lists.hasNext(); ) {
+            List<JsonObject> queued = lists.next();
+            for (Iterator<JsonObject> it = queued.iterator(); it.hasNext(); ) {
+                JsonObject command = it.next();
+                if (runsWithoutPlayer(command)) {
+                    commands.add(command);
+                    it.remove();
+                }
+            }
+            if (queued.isEmpty()) {
+                lists.remove();
+            }
+        }
+        
+        if (!commands.isEmpty()) {
+            proxy.debug("Sending " + commands.size() + " waiting commands through " + player.getUsername());
+            for (List<JsonObject> order : groupByOrder(commands)) {
+                deliver(connection.get(), connection.get().getServerInfo().getName(), order);
+            }
+            save();
+        }
+    }
+    
+    /**
+     * Handle a result message from a backend
+     * @return the results to report to WordPress, empty if there are none
+     */
+    public synchronized JsonArray onBackendMessage(byte[] data) {
+        JsonArray report = new JsonArray();
+        JsonObject payload;
+        try {
+            payload = JsonParser.parseString(new String(data, StandardCharsets.UTF_8)).getAsJsonObject();
+        } catch (Exception e) {
+            proxy.debug("Ignoring malformed backend message: " + e.getMessage());
+            return report;
+        }
+        if (!isAuthentic(payload) || !"results".equals(payload.has("type") ? payload.get("type").getAsString() : null)) {
+            proxy.getLogger().warn("Ignoring backend message with a wrong secret or type");
+            return report;
+        }
+        
+        List<JsonObject> returned = new ArrayList<>();
+        for (JsonElement element : payload.getAsJsonArray("results")) {
+            JsonObject result = element.getAsJsonObject();
+            JsonObject command = inFlight.remove(result.get("id").getAsInt());
+            if (!"returned".equals(result.get("status").getAsString())) {
+                // Delayed commands are not tracked in flight, their results can come weeks later
+                report.add(result);
+            } else if (command != null) {
+                returned.add(command);
+            }
+        }
+        
+        if (!returned.isEmpty()) {
+            proxy.debug(returned.size() + " commands were returned by a backend, routing them again");
+            JsonArray again = new JsonArray();
+            returned.forEach(again::add);
+            route(again);
+        } else {
+            save();
+        }
+        return report;
+    }
+    
+    /**
+     * Keep results WordPress did not accept, to be sent again by {@link #takeUnreported()}
+     */
+    public synchronized void holdUnreported(JsonArray results) {
+        unreported.addAll(results);
+        saveUnreported();
+    }
+    
+    /**
+     * Take every result held by {@link #holdUnreported(JsonArray)}; hand back those that fail again
+     */
+    public synchronized JsonArray takeUnreported() {
+        JsonArray results = unreported.deepCopy();
+        unreported.asList().clear();
+        saveUnreported();
+        return results;
+    }
+    
+    private void deliver(ChannelMessageSink target, String backendName, List<JsonObject> commands) {
+        JsonArray array = new JsonArray();
+        commands.forEach(array::add);
+        
+        JsonObject payload = new JsonObject();
+        payload.addProperty("type", "deliver");
+        payload.addProperty("secret", config.getProxySecret());
+        payload.add("commands", array);
+        
+        if (target.sendPluginMessage(CHANNEL, payload.toString().getBytes(StandardCharsets.UTF_8))) {
+            for (JsonObject command : commands) {
+                if (!"delayed".equals(runMode(command))) {
+                    inFlight.put(command.get("id").getAsInt(), command);
+                }
+            }
+            proxy.debug("Sent " + commands.size() + " commands to " + backendName);
+        } else {
+            commands.forEach(this::queue);
+        }
+    }
+    
+    private void queue(JsonObject command) {
+        waiting.computeIfAbsent(playerKey(command), k -> new ArrayList<>()).add(command);
+    }
+    
+    private RegisteredServer findConsoleBackend() {
+        if (!config.getDefaultServer().isEmpty()) {
+            Optional<RegisteredServer> preferred = server.getServer(config.getDefaultServer());
+            if (preferred.isPresent() && !preferred.get().getPlayersConnected().isEmpty()) {
+                return preferred.get();
+            }
+        }
+        // Plugin messages travel over a player's connection, so the backend needs someone on it
+        for (RegisteredServer backend : server.getAllServers()) {
+            if (!backend.getPlayersConnected().isEmpty()) {
+                return backend;
+            }
+        }
+        return null;
+    }
+    
+    private boolean isAuthentic(JsonObject payload) {
+        JsonElement provided = payload.get("secret");
+        return provided != null && secret.length > 0
+            && MessageDigest.isEqual(secret, provided.getAsString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private void save() {
+        JsonArray commands = new JsonArray();
+        for (List<JsonObject> queued : waiting.values()) {
+            queued.forEach(commands::add);
+        }
+        JsonArray sent = new JsonArray();
+        inFlight.values().forEach(sent::add);
+        try {
+            writeArray(queueFile, commands);
+            writeArray(inFlightFile, sent);
+        } catch (IOException e) {
+            proxy.getLogger().warn("Failed to save queued commands: " + e.getMessage());
+        }
+    }
+    
+    private void saveUnreported() {
+        try {
+            writeArray(unreportedFile, unreported);
+        } catch (IOException e) {
+            proxy.getLogger().warn("Failed to save unreported results: " + e.getMessage());
+        }
+    }
+    
+    private static void writeArray(Path file, JsonArray array) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.writeString(temp, array.toString(), StandardCharsets.UTF_8);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private static List<List<JsonObject>> groupByOrder(Iterable<? extends JsonElement> commands) {
+        Map<String, List<JsonObject>> orders = new LinkedHashMap<>();
+        for (JsonElement element : commands) {
+            JsonObject command = element.getAsJsonObject();
+            String key = command.get("order_id").getAsInt() + ":" + playerKey(command);
+            orders.computeIfAbsent(key, k -> new ArrayList<>()).add(command);
+        }
+        return new ArrayList<>(orders.values());
+    }
+    
+    private static String playerKey(JsonObject command) {
+        return command.get("player_name").getAsString().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * {@code always} and {@code delayed} commands run from a backend's console, so any backend will do
+     */
+    private static boolean runsWithoutPlayer(JsonObject command) {
+        String runMode = runMode(command);
+        return "always".equals(runMode) || "delayed".equals(runMode);
+    }
+    
+    private static String runMode(JsonObject command) {
+        return command.has("run_mode") ? command.get("run_mode").getAsString() : "online";
+    }
+    
+    public synchronized int getWaitingCount() {
+        int count = 0;
+        for (List<JsonObject> queued : waiting.values()) {
+            count += queued.size();
+        }
+        return count;
+    }
+    
+    public synchronized int getInFlightCount() {
+        return inFlight.size();
+    }
+    
+    public synchronized int getUnreportedCount() {
+        return unreported.size();
+    }
+}
@@ -0,0 +1,236 @@
+package com.github.Akaliix.MineWebStore.proxy;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.inject.Inject;
+import com.velocitypowered.api.event.Subscribe;
+import com.velocitypowered.api.event.connection.PluginMessageEvent;
+import com.velocitypowered.api.event.connection.PostLoginEvent;
+import com.velocitypowered.api.event.player.ServerPostConnectEvent;
+import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
+import com.velocitypowered.api.event.proxy.ProxyShutdownEvent;
+import com.velocitypowered.api.plugin.Plugin;
+import com.velocitypowered.api.plugin.annotation.DataDirectory;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.scheduler.ScheduledTask;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Velocity side of MineWebStore. Polls WordPress once for the whole network,
+ * syncs the network's players and routes commands to the backends over plugin
+ * messaging; the backends run MineWebStore in proxy mode and never poll themselves.
+ */
+@Plugin(
+    id = "minewebstore",
+    name = "MineWebStore",
+    version = "1.0.0",
+    description = "WordPress WooCommerce integration for Velocity networks",
+    url = "https://github.com/Akaliix/MineWebStore",
+    authors = {"Akaliix"}
+)
+public class MineWebStoreProxy {
+    
+    private final ProxyServer server;
+    private final Logger logger;
+    private final Path dataDirectory;
+    
+    private ProxyConfig config;
+    private WordPressClient wordPressClient;
+    private CommandRouter commandRouter;
+    private NetworkPlayerHistory playerHistory;
+    private ScheduledTask pollingTask;
+    private final AtomicBoolean playerSyncScheduled = new AtomicBoolean();
+    private volatile String lastPlayerHash;
+    
+    @Inject
+    public MineWebStoreProxy(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
+        this.server = server;
+        this.logger = logger;
+        this.dataDirectory = dataDirectory;
+    }
+    
+    @Subscribe
+    public void onProxyInitialization(ProxyInitializeEvent event) {
+        try {
+            config = ProxyConfig.load(dataDirectory);
+        } catch (IOException e) {
+            logger.error("Failed to load config.toml", e);
+            return;
+        }
+        
+        String problem = config.validate();
+        if (problem != null) {
+            logger.error("MineWebStore is not started: " + problem + " (see config.toml)");
+            return;
+        }
+        
+        wordPressClient = new WordPressClient(this, config);
+        commandRouter = new CommandRouter(this, server, config, dataDirectory);
+        playerHistory = new NetworkPlayerHistory(dataDirectory);
+        try {
+            commandRouter.load();
+            playerHistory.load();
+        } catch (Exception e) {
+            logger.error("Failed to load stored data", e);
+            return;
+        }
+        
+        server.getChannelRegistrar().register(CommandRouter.CHANNEL);
+        
+        // Scheduler tasks run on Velocity's thread pool, so blocking HTTP is fine here
+        pollingTask = server.getScheduler().buildTask(this, this::poll)
+            .repeat(config.getPollInterval(), TimeUnit.SECONDS)
+            .schedule();
+        
+        logger.info("MineWebStore proxy started for server \"" + config.getServerName() + "\" ("
+            + commandRouter.getWaitingCount() + " commands waiting for their players)");
+    }
+    
+    @Subscribe
+    public void onProxyShutdown(ProxyShutdownEvent event) {
+        if (pollingTask != null) {
+            pollingTask.cancel();
+        }
+        if (commandRouter != null) {
+            server.getChannelRegistrar().unregister(CommandRouter.CHANNEL);
+        }
+    }
+    
+    private void poll() {
+        try {
+            if (!wordPressClient.isRegistered()) {
+                if (!wordPressClient.registerServer()) {
+                    logger.warn("Failed to register with WordPress, retrying on the next poll");
+                    return;
+                }
+                debug("Registered with WordPress as " + config.getServerName());
+                schedulePlayerSync();
+            }
+            
+            reportUnreported();
+            
+            JsonArray commands = wordPressClient.getPendingCommands();
+            if (commands.isEmpty()) {
+                return;
+            }
+            
+            List<Integer> commandIds = new ArrayList<>(commands.size());
+            for (JsonElement command : commands) {
+                commandIds.add(command.getAsJsonObject().get("id").getAsInt());
+            }
+            if (wordPressClient.markCommandsAsRead(commandIds)) {
+                debug("Routing " + commands.size() + " commands");
+                commandRouter.route(commands);
+            }
+        } catch (Exception e) {
+            logger.error("Error processing commands", e);
+        }
+    }
+    
+    @Subscribe
+    public void onPostLogin(PostLoginEvent event) {
+        if (playerHistory == null) {
+            return;
+        }
+        String playerName = event.getPlayer().getUsername();
+        server.getScheduler().buildTask(this, () -> {
+            try {
+                if (playerHistory.addPlayerIfNew(playerName)) {
+                    schedulePlayerSync();
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to save player history: " + e.getMessage());
+            }
+        }).schedule();
+    }
+    
+    @Subscribe
+    public void onServerPostConnect(ServerPostConnectEvent event) {
+        if (commandRouter == null) {
+            return;
+        }
+        Player player = event.getPlayer();
+        // Give the backend a moment to finish the join before commands arrive
+        server.getScheduler().buildTask(this, () -> commandRouter.onPlayerConnected(player))
+            .delay(1, TimeUnit.SECONDS)
+            .schedule();
+    }
+    
+    @Subscribe
+    public void onPluginMessage(PluginMessageEvent event) {
+        if (!CommandRouter.CHANNEL.equals(event.getIdentifier())) {
+            return;
+        }
+        // Never forward: a client must not be able to talk to the backend on this channel
+        event.setResult(PluginMessageEvent.ForwardResult.handled());
+        
+        if (commandRouter == null || !(event.getSource() instanceof ServerConnection)) {
+            return;
+        }
+        
+        byte[] data = event.getData();
+        server.getScheduler().buildTask(this, () -> {
+            JsonArray results = commandRouter.onBackendMessage(data);
+            if (!results.isEmpty() && !wordPressClient.updateCommandStatuses(results)) {
+                logger.warn("Failed to report the status of " + results.size() + " commands to WordPress, retrying on the next poll");
+                commandRouter.holdUnreported(results);
+            }
+        }).schedule();
+    }
+    
+    /**
+     * Send the results WordPress did not accept earlier again
+     */
+    private void reportUnreported() {
+        JsonArray results = commandRouter.takeUnreported();
+        if (results.isEmpty()) {
+            return;
+        }
+        if (wordPressClient.updateCommandStatuses(results)) {
+            debug("Reported " + results.size() + " results that failed to send earlier");
+        } else {
+            commandRouter.holdUnreported(results);
+        }
+    }
+    
+    /**
+     * Sync the network's player list a few seconds from now; joins in the meantime share one request
+     */
+    private void schedulePlayerSync() {
+        if (!playerSyncScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        server.getScheduler().buildTask(this, () -> {
+            playerSyncScheduled.set(false);
+            String hash = playerHistory.calculatePlayerHash();
+            if (hash.equals(lastPlayerHash) || !wordPressClient.isRegistered()) {
+                return;
+            }
+            if (wordPressClient.syncPlayerList(playerHistory.getAllPlayerNames(), lastPlayerHash)) {
+                lastPlayerHash = hash;
+                debug("Player history synced to WordPress (" + playerHistory.size() + " players)");
+            } else {
+                logger.warn("Failed to sync player history with WordPress!");
+            }
+        }).delay(5, TimeUnit.SECONDS).schedule();
+    }
+    
+    public void debug(String message) {
+        if (config != null && config.isDebugEnabled()) {
+            logger.info("[DEBUG] " + message);
+        }
+    }
+    
+    public Logger getLogger() {
+        return logger;
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.Akaliix.MineWebStore.proxy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Every player who has ever joined the network, one name per line in {@code players.txt}.
+ * WordPress uses this list to suggest player names at checkout.
+ */
+public class NetworkPlayerHistory {
+    
+    private final Path file;
+    // Lower-case name to name as last seen
+    private final Map<String, String> players = new TreeMap<>();
+    
+    public NetworkPlayerHistory(Path dataDirectory) {
+        this.file = dataDirectory.resolve("players.txt");
+    }
+    
+    public synchronized void load() throws IOException {
+        players.clear();
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                String name = line.trim();
+                if (!name.isEmpty()) {
+                    players.put(name.toLowerCase(Locale.ROOT), name);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Remember a player, appending them to the file if they are new
+     * @return true if the player had never joined before
+     */
+    public synchronized boolean addPlayerIfNew(String playerName) throws IOException {
+        if (players.putIfAbsent(playerName.toLowerCase(Locale.ROOT), playerName) != null) {
+            return false;
+        }
+        Files.writeString(file, playerName + System.lineSeparator(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return true;
+    }
+    
+    public synchronized List<String> getAllPlayerNames() {
+        return Collections.unmodifiableList(new ArrayList<>(players.values()));
+    }
+    
+    /**
+     * Hash of the sorted player list, so an unchanged list is not sent again
+     */
+    public synchronized String calculatePlayerHash() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            for (String key : players.keySet()) {
+                digest.update(key.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    public synchronized int size() {
+        return players.size();
+    }
+}
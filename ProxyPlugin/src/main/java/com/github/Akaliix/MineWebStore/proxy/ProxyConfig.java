@@ -0,0 +1,105 @@
+package com.github.Akaliix.MineWebStore.proxy;
+
+import com.moandjiezana.toml.Toml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Settings read from {@code config.toml} in the plugin's data directory
+ */
+public class ProxyConfig {
+    
+    private final String baseUrl;
+    private final String secretKey;
+    private final String serverName;
+    private final long pollInterval;
+    private final String proxySecret;
+    private final String defaultServer;
+    private final int connectTimeout;
+    private final int readTimeout;
+    private final boolean debugEnabled;
+    
+    private ProxyConfig(Toml toml) {
+        this.baseUrl = toml.getString("wordpress.base_url", "");
+        this.secretKey = toml.getString("wordpress.secret_key", "");
+        this.serverName = toml.getString("server.name", "network");
+        this.pollInterval = Math.max(1L, toml.getLong("server.poll_interval", 10L));
+        this.proxySecret = toml.getString("proxy.secret", "");
+        this.defaultServer = toml.getString("proxy.default_server", "");
+        this.connectTimeout = toml.getLong("http.connect_timeout", 5000L).intValue();
+        this.readTimeout = toml.getLong("http.read_timeout", 10000L).intValue();
+        this.debugEnabled = toml.getBoolean("debug.enabled", false);
+    }
+    
+    /**
+     * Load the configuration, writing the default file first if there is none
+     */
+    public static ProxyConfig load(Path dataDirectory) throws IOException {
+        Path file = dataDirectory.resolve("config.toml");
+        if (Files.notExists(file)) {
+            Files.createDirectories(dataDirectory);
+            try (InputStream defaults = ProxyConfig.class.getResourceAsStream("/config.toml")) {
+                Files.copy(defaults, file);
+            }
+        }
+        return new ProxyConfig(new Toml().read(file.toFile()));
+    }
+    
+    /**
+     * @return a description of the first missing setting, or null if the configuration is usable
+     */
+    public String validate() {
+        if (baseUrl.isEmpty() || baseUrl.equals("https://yourdomain.com")) {
+            return "wordpress.base_url is not configured";
+        }
+        if (secretKey.isEmpty() || secretKey.equals("your-secret-key-here")) {
+            return "wordpress.secret_key is not configured";
+        }
+        if (serverName.isEmpty()) {
+            return "server.name is not configured";
+        }
+        if (proxySecret.isEmpty()) {
+            return "proxy.secret is not configured";
+        }
+        return null;
+    }
+    
+    public String getBaseUrl() {
+        return baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+    }
+    
+    public String getSecretKey() {
+        return secretKey;
+    }
+    
+    public String getServerName() {
+        return serverName;
+    }
+    
+    public long getPollInterval() {
+        return pollInterval;
+    }
+    
+    public String getProxySecret() {
+        return proxySecret;
+    }
+    
+    public String getDefaultServer() {
+        return defaultServer;
+    }
+    
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+    
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+    
+    public boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+}
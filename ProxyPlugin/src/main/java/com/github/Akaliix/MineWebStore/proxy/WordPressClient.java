@@ -0,0 +1,179 @@
+package com.github.Akaliix.MineWebStore.proxy;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * The proxy's single connection to the WordPress store. Speaks the same
+ * {@code mcapi/v1} protocol as the backend plugin, under the network's server name.
+ */
+public class WordPressClient {
+    
+    private static final int STREAM_BUFFER_SIZE = 8192;
+    
+    private final MineWebStoreProxy proxy;
+    private final ProxyConfig config;
+    private final Gson gson = new Gson();
+    private volatile String serverKey;
+    
+    public WordPressClient(MineWebStoreProxy proxy, ProxyConfig config) {
+        this.proxy = proxy;
+        this.config = config;
+    }
+    
+    public boolean isRegistered() {
+        return serverKey != null;
+    }
+    
+    public boolean registerServer() {
+        JsonObject requestData = new JsonObject();
+        requestData.addProperty("secret_key", config.getSecretKey());
+        requestData.addProperty("server_name", config.getServerName());
+        
+        JsonObject response = send("POST", "register", json(requestData), null);
+        if (response != null && isSuccess(response) && response.has("server_key")) {
+            serverKey = response.get("server_key").getAsString();
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * @return the pending commands of the network, empty if there are none or WordPress could not be reached
+     */
+    public JsonArray getPendingCommands() {
+        String path = "commands?server_name=" + URLEncoder.encode(config.getServerName(), StandardCharsets.UTF_8);
+        JsonObject response = send("GET", path, null, serverKey);
+        if (response == null || !isSuccess(response) || !response.has("commands")) {
+            return new JsonArray();
+        }
+        return response.getAsJsonArray("commands");
+    }
+    
+    public boolean markCommandsAsRead(List<Integer> commandIds) {
+        JsonObject requestData = new JsonObject();
+        requestData.addProperty("server_name", config.getServerName());
+        requestData.add("command_ids", gson.toJsonTree(commandIds));
+        
+        JsonObject response = send("POST", "commands/read", json(requestData), serverKey);
+        return response != null && isSuccess(response);
+    }
+    
+    /**
+     * Report command results (entries with id, status and message) in one request
+     */
+    public boolean updateCommandStatuses(JsonArray results) {
+        JsonObject requestData = new JsonObject();
+        requestData.addProperty("server_name", config.getServerName());
+        requestData.add("results", results);
+        
+        JsonObject response = send("POST", "commands/status", json(requestData), serverKey);
+        return response != null && isSuccess(response);
+    }
+    
+    public boolean syncPlayerList(List<String> players, String playerHash) {
+        // Every player of the network, so the list is streamed rather than built as a tree
+        Body body = writer -> {
+            writer.beginObject();
+            writer.name("server_name").value(config.getServerName());
+            writer.name("players").beginArray();
+            for (String player : players) {
+                writer.value(player);
+            }
+            writer.endArray();
+            if (playerHash != null) {
+                writer.name("player_hash").value(playerHash);
+            }
+            writer.endObject();
+        };
+        
+        JsonObject response = send("POST", "players", body, serverKey);
+        return response != null && isSuccess(response);
+    }
+    
+    private static boolean isSuccess(JsonObject response) {
+        return response.has("success") && response.get("success").getAsBoolean();
+    }
+    
+    private Body json(JsonObject requestData) {
+        return writer -> gson.toJson(requestData, writer);
+    }
+    
+    private JsonObject send(String method, String path, Body body, String authToken) {
+        String endpoint = config.getBaseUrl() + "wp-json/mcapi/v1/" + path;
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) URI.create(endpoint).toURL().openConnection();
+            connection.setConnectTimeout(config.getConnectTimeout());
+            connection.setReadTimeout(config.getReadTimeout());
+            connection.setRequestMethod(method);
+            connection.setRequestProperty("Accept", "application/json");
+            if (authToken != null) {
+                connection.setRequestProperty("Authorization", "Bearer " + authToken);
+            }
+            
+            if (body != null) {
+                connection.setRequestProperty("Content-Type", "application/json");
+                connection.setDoOutput(true);
+                connection.setChunkedStreamingMode(STREAM_BUFFER_SIZE);
+                try (JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(
+                        connection.getOutputStream(), StandardCharsets.UTF_8), STREAM_BUFFER_SIZE))) {
+                    body.writeTo(writer);
+                }
+            }
+            
+            int responseCode = connection.getResponseCode();
+            String response;
+            try (InputStream in = responseCode >= 200 && responseCode < 300
+                    ? connection.getInputStream() : connection.getErrorStream()) {
+                response = in == null ? "" : readFully(in);
+            }
+            
+            proxy.debug(method + " " + endpoint + " -> " + responseCode);
+            if (responseCode < 200 || responseCode >= 300) {
+                proxy.debug("HTTP Error " + responseCode + ": " + response);
+                if (responseCode == 401 || responseCode == 403) {
+                    serverKey = null; // Register again on the next poll
+                }
+                return null;
+            }
+            return JsonParser.parseString(response).getAsJsonObject();
+            
+        } catch (Exception e) {
+            proxy.debug("Error sending " + method + " request to " + endpoint + ": " + e.getMessage());
+            return null;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        }
+    }
+    
+    private static String readFully(InputStream in) throws java.io.IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        in.transferTo(buffer);
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * A request body written straight into the connection
+     */
+    @FunctionalInterface
+    private interface Body {
+        void writeTo(JsonWriter writer) throws IOException;
+    }
+}
@@ -547,6 +547,16 @@ class MWS_Admin {
                                 <td><?php echo esc_html($command->player_name); ?></td>
                                 <td>
                                     <code><?php echo esc_html(strlen($command->command_text) > 50 ? substr($command->command_text, 0, 50) . '...' : $command->command_text); ?></code>
+                                    <?php if (isset($command->repeat_count) && $command->repeat_count > 1): ?>
+                                        <strong>&times;<?php echo esc_html($command->repeat_count); ?></strong>
+                                    <?php endif; ?>
+                                    <?php if ($command->run_mode === 'delayed' && !empty($command->run_at)): ?>
+                                        <br><small>
+                                            <?php
+                                            // translators: %s is the date and time a delayed command runs at
+                                            printf(esc_html__('Runs at %s', 'minewebstore'), esc_html(get_date_from_gmt($command->run_at, 'Y-m-d H:i'))); ?>
+                                        </small>
+                                    <?php endif; ?>
                                     <?php if (strlen($command->command_text) > 50): ?>
                                         <span class="full-command" style="display:none;"><?php echo esc_html($command->command_text); ?></span>
                                         <button type="button" class="button-link toggle-command"><?php esc_html_e('Show full', 'minewebstore'); ?></button>
@@ -571,6 +581,13 @@ class MWS_Admin {
                                     <?php else: ?>
                                         -
                                     <?php endif; ?>
+                                    <?php if (!empty($command->execution_time_us)): ?>
+                                        <br><small class="mws-slow-command">
+                                            <?php
+                                            // translators: %s is how long the command held up the Minecraft server, in milliseconds
+                                            printf(esc_html__('Slow: %s ms', 'minewebstore'), esc_html(number_format_i18n($command->execution_time_us / 1000, 1))); ?>
+                                        </small>
+                                    <?php endif; ?>
                                 </td>
                                 <td>
                                     <?php if ($command->execution_message): ?>
@@ -40,6 +40,20 @@ class MWS_API {
             ),
         ));
         
+        // Lightweight check that a cached server key is still valid
+        register_rest_route('mcapi/v1', '/verify', array(
+            'methods' => 'GET',
+            'callback' => array($this, 'verify_server'),
+            'permission_callback' => array($this, 'check_server_auth'),
+            'args' => array(
+                'server_name' => array(
+                    'required' => true,
+                    'type' => 'string',
+                    'sanitize_callback' => 'sanitize_text_field',
+                ),
+            ),
+        ));
+        
         register_rest_route('mcapi/v1', '/players', array(
             'methods' => 'POST',
             'callback' => array($this, 'sync_players'),
@@ -108,6 +122,27 @@ class MWS_API {
             ),
         ));
 
+        // Endpoint to update the status of several commands at once, e.g. all commands of an order
+        register_rest_route('mcapi/v1', '/commands/status', array(
+            'methods' => 'POST',
+            'callback' => array($this, 'update_command_statuses'),
+            'permission_callback' => array($this, 'check_server_auth'),
+            'args' => array(
+                'server_name' => array(
+                    'required' => true,
+                    'type' => 'string',
+                    'sanitize_callback' => 'sanitize_text_field',
+                ),
+                'results' => array(
+                    'required' => true,
+                    'type' => 'array',
+                    'items' => array(
+                        'type' => 'object',
+                    ),
+                ),
+            ),
+        ));
+
         // Endpoint to update command execution status
         register_rest_route('mcapi/v1', '/commands/(?P<id>\d+)', array(
             'methods' => 'PUT',
@@ -130,6 +165,16 @@ class MWS_API {
                     'type' => 'string',
                     'sanitize_callback' => 'sanitize_text_field',
                 ),
+                'duration_us' => array(
+                    'required' => false,
+                    'type' => 'integer',
+                    'sanitize_callback' => 'absint',
+                ),
+                'completed_runs' => array(
+                    'required' => false,
+                    'type' => 'integer',
+                    'sanitize_callback' => 'absint',
+                ),
             ),
         ));
     }
@@ -201,6 +246,21 @@ class MWS_API {
         );
     }
     
+    public function verify_server($request) {
+        $server = MWS_Server_Manager::get_server_by_name($request->get_param('server_name'));
+        if (!$server) {
+            return new WP_Error('server_not_found', __('Server not found', 'minewebstore'), array('status' => 404));
+        }
+        
+        // Update server last seen
+        MWS_Server_Manager::update_last_seen($server->id);
+        
+        return array(
+            'success' => true,
+            'server_name' => $server->server_name,
+        );
+    }
+    
     public function sync_players($request) {
         $server_name = $request->get_param('server_name');
         $player_hash = $request->get_param('player_hash');
@@ -308,6 +368,9 @@ class MWS_API {
                 'player_name' => $command->player_name,
                 'command' => $command->command_text,
                 'run_mode' => $command->run_mode,
+                'repeat' => isset($command->repeat_count) ? max(1, (int) $command->repeat_count) : 1,
+                // Unix time a delayed command is due; the server schedules it locally
+                'run_at' => !empty($command->run_at) ? strtotime($command->run_at . ' UTC') : null,
                 'created_at' => $command->created_at,
             );
         }
@@ -353,6 +416,8 @@ class MWS_API {
         $server_name = $request->get_param('server_name');
         $status = $request->get_param('status');
         $message = $request->get_param('message');
+        $duration_us = $request->get_param('duration_us');
+        $completed_runs = (int) $request->get_param('completed_runs');
 
         // Get server to verify it exists
         $server = MWS_Server_Manager::get_server_by_name($server_name);
@@ -369,7 +434,7 @@ class MWS_API {
         MWS_Server_Manager::update_last_seen($server->id);
 
         // Update command status
-        $updated = MWS_Pending_Commands::update_command_status($command_id, $status, $message, $server_name);
+        $updated = MWS_Pending_Commands::update_command_status($command_id, $status, $message, $server_name, true, $duration_us ?: null, $completed_runs);
 
         if ($updated === false) {
             return new WP_Error('update_failed', __('Failed to update command status', 'minewebstore'), array('status' => 500));
@@ -382,4 +447,55 @@ class MWS_API {
             'message' => $message,
         );
     }
+
+    public function update_command_statuses($request) {
+        $server_name = $request->get_param('server_name');
+        $results = $request->get_param('results');
+
+        // Get server to verify it exists
+        $server = MWS_Server_Manager::get_server_by_name($server_name);
+        if (!$server) {
+            return new WP_Error('server_not_found', __('Server not found', 'minewebstore'), array('status' => 404));
+        }
+
+        // Validate results
+        if (!is_array($results) || empty($results)) {
+            return new WP_Error('invalid_results', __('Results must be a non-empty array', 'minewebstore'), array('status' => 400));
+        }
+
+        $statuses = array();
+        foreach ($results as $result) {
+            $command_id = isset($result['id']) ? absint($result['id']) : 0;
+            $status = isset($result['status']) ? sanitize_text_field($result['status']) : '';
+            if (!$command_id || !in_array($status, array('executed', 'failed'))) {
+                return new WP_Error('invalid_status', __('Each result needs a command ID and a status of "executed" or "failed"', 'minewebstore'), array('status' => 400));
+            }
+
+            $statuses[] = array(
+                'id' => $command_id,
+                'status' => $status,
+                'message' => isset($result['message']) ? sanitize_text_field($result['message']) : null,
+                // Only sent for commands that were slow on the Minecraft server
+                'duration_us' => !empty($result['duration_us']) ? absint($result['duration_us']) : null,
+                // Runs a failed repeated command delivered before it failed
+                'completed_runs' => !empty($result['completed_runs']) ? absint($result['completed_runs']) : 0,
+            );
+        }
+
+        // Update server last seen
+        MWS_Server_Manager::update_last_seen($server->id);
+
+        // Update all statuses; each order's status is recalculated once
+        $updated = MWS_Pending_Commands::update_command_statuses($statuses, $server_name);
+
+        // The batch was rolled back, so the server can send it again as a whole
+        if ($updated === false) {
+            return new WP_Error('update_failed', __('Failed to update command status', 'minewebstore'), array('status' => 500));
+        }
+
+        return array(
+            'success' => true,
+            'updated_count' => $updated,
+        );
+    }
 }
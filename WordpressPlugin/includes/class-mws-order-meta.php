@@ -491,7 +491,7 @@ class MWS_Order_Meta {
         
         // Get all Minecraft commands for this order
         $all_commands = $wpdb->get_results($wpdb->prepare(
-            "SELECT status FROM {$wpdb->prefix}mws_pending_commands WHERE order_id = %d",
+            "SELECT status, run_mode FROM {$wpdb->prefix}mws_pending_commands WHERE order_id = %d",
             $command->order_id
         ));
         
@@ -507,8 +507,14 @@ class MWS_Order_Meta {
             'failed' => 0
         );
         
+        // A delayed command stays 'read' from the moment the server takes it over until it runs,
+        // which can be days for a timed rank. The server keeps it across restarts, so it is
+        // counted as handed over rather than pending, and does not hold the order in Processing.
+        $scheduled_commands = 0;
         foreach ($all_commands as $cmd) {
-            if (isset($status_counts[$cmd->status])) {
+            if ($cmd->status === 'read' && $cmd->run_mode === 'delayed') {
+                $scheduled_commands++;
+            } elseif (isset($status_counts[$cmd->status])) {
                 $status_counts[$cmd->status]++;
             }
         }
@@ -525,8 +531,8 @@ class MWS_Order_Meta {
         
         // Log current command status for debugging
         
-        if ($completed_commands === $total_commands && $total_commands > 0) {
-            // All commands executed successfully - Completed
+        if ($completed_commands + $scheduled_commands === $total_commands && $total_commands > 0) {
+            // All commands executed successfully or handed over to run later - Completed
             if ($current_order_status !== 'wc-mws-completed') {
                 $new_order_status = 'wc-mws-completed';
             }
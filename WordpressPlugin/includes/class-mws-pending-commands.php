@@ -104,31 +104,38 @@ class MWS_Pending_Commands {
             $run_modes_lines = !empty($config['commands_run_modes']) ? 
                 explode("\n", $config['commands_run_modes']) : array();
             
-            $quantity = $item->get_quantity();
+            $quantity = max(1, (int) $item->get_quantity());
             
-            // Create commands for each quantity
-            for ($i = 0; $i < $quantity; $i++) {
-                foreach ($command_lines as $index => $command) {
-                    if (empty($command)) {
-                        continue;
-                    }
-                    
-                    // Get run mode for this command (default to 'online' if not specified)
-                    $run_mode = isset($run_modes_lines[$index]) ? $run_modes_lines[$index] : 'online';
-                    if (!in_array($run_mode, array('always', 'online'))) {
-                        $run_mode = 'online';
-                    }
-                    
-                    // Replace placeholders (support both %player% and {player} formats)
-                    $command = str_replace(array('{player}', '%player%'), $player_name, $command);
-                    
-                    // Create pending command with proper server name
-                    $server_name = self::resolve_server_name($config['server_id']);
-                    $command_id = self::create_pending_command($order_id, $product->get_id(), $player_name, $command, $run_mode, $server_name);
-                    
-                    if ($command_id) {
-                        $total_commands_created++;
-                    }
+            // Delayed commands (such as the expiry of a rank) run once the product's duration
+            // has passed; every unit bought extends the duration instead of repeating the command
+            $delay_seconds = (int) round($config['duration_days'] * DAY_IN_SECONDS * $quantity);
+            $run_at = gmdate('Y-m-d H:i:s', time() + $delay_seconds);
+            
+            // One row per command; the server runs it once for each unit bought
+            foreach ($command_lines as $index => $command) {
+                if (empty($command)) {
+                    continue;
+                }
+                
+                // Get run mode for this command (default to 'online' if not specified)
+                $run_mode = isset($run_modes_lines[$index]) ? $run_modes_lines[$index] : 'online';
+                if (!in_array($run_mode, array('always', 'online', 'delayed'))) {
+                    $run_mode = 'online';
+                }
+                
+                // Replace placeholders (support both %player% and {player} formats)
+                $command = str_replace(array('{player}', '%player%'), $player_name, $command);
+                
+                // Create pending command with proper server name
+                $server_name = self::resolve_server_name($config['server_id']);
+                if ($run_mode === 'delayed') {
+                    $command_id = self::create_pending_command($order_id, $product->get_id(), $player_name, $command, $run_mode, $server_name, 1, $run_at);
+                } else {
+                    $command_id = self::create_pending_command($order_id, $product->get_id(), $player_name, $command, $run_mode, $server_name, $quantity);
+                }
+                
+                if ($command_id) {
+                    $total_commands_created++;
                 }
             }
         }
@@ -136,14 +143,24 @@ class MWS_Pending_Commands {
         // Log the command creation summary (removed debug logging)
     }
     
-    public static function create_pending_command($order_id, $product_id, $player_name, $command, $run_mode = 'online', $server_name = null) {
+    /**
+     * @param string|null $run_at UTC time a delayed command runs at (Y-m-d H:i:s), ignored for other run modes
+     */
+    public static function create_pending_command($order_id, $product_id, $player_name, $command, $run_mode = 'online', $server_name = null, $repeat_count = 1, $run_at = null) {
         global $wpdb;
         
         // Validate run_mode
-        if (!in_array($run_mode, array('always', 'online'))) {
+        if (!in_array($run_mode, array('always', 'online', 'delayed'))) {
             $run_mode = 'online';
         }
         
+        $repeat_count = max(1, (int) $repeat_count);
+        if ($run_mode !== 'delayed') {
+            $run_at = null;
+        } elseif (empty($run_at)) {
+            $run_at = gmdate('Y-m-d H:i:s');
+        }
+        
         $result = $wpdb->insert(
             self::$table_name,
             array(
@@ -152,11 +169,13 @@ class MWS_Pending_Commands {
                 'player_name' => $player_name,
                 'command_text' => $command,
                 'run_mode' => $run_mode,
+                'repeat_count' => $repeat_count,
+                'run_at' => $run_at,
                 'server_name' => $server_name,
                 'status' => 'pending',
                 'created_at' => current_time('mysql')
             ),
-            array('%d', '%d', '%s', '%s', '%s', '%s', '%s', '%s')
+            array('%d', '%d', '%s', '%s', '%s', '%d', '%s', '%s', '%s', '%s')
         );
         
         if ($result === false) {
@@ -289,7 +308,12 @@ class MWS_Pending_Commands {
         return $wpdb->query($wpdb->prepare($base_sql, $params)); // phpcs:ignore WordPress.DB.PreparedSQL.NotPrepared
     }
     
-    public static function update_command_status($command_id, $status, $message = null, $server_name = null) {
+    /**
+     * @param int|null $duration_us Main thread time of a slow command in microseconds, null if it was not slow
+     * @param int $completed_runs Runs of a failed repeated command that were delivered before it failed
+     * @return int|false 1 if the command moved from read to its final status, 0 if it already had one
+     */
+    public static function update_command_status($command_id, $status, $message = null, $server_name = null, $notify = true, $duration_us = null, $completed_runs = 0) {
         global $wpdb;
         
         if (!in_array($status, array('executed', 'failed'))) {
@@ -299,29 +323,36 @@ class MWS_Pending_Commands {
         $update_data = array(
             'status' => $status,
             'execution_message' => $message,
+            'execution_time_us' => $duration_us,
             'executed_at' => current_time('mysql')
         );
         
-        $where_clause = array('id' => $command_id);
+        // Only a command that was handed out can finish, so a result that is
+        // reported again changes nothing and is not subtracted twice
+        $where_clause = array('id' => $command_id, 'status' => 'read');
         
         // If server name is provided, ensure the command belongs to this server
         if ($server_name) {
             $server = MWS_Server_Manager::get_server_by_name($server_name);
             if ($server) {
                 // Build a more complex WHERE clause to match server name or ID
-                $sql = "UPDATE `" . self::$table_name . "` SET status = %s, execution_message = %s, executed_at = %s WHERE id = %d AND (server_name IS NULL OR server_name = %s OR server_name = %s)";
+                $sql = "UPDATE `" . self::$table_name . "` SET status = %s, execution_message = %s, execution_time_us = " . ($duration_us ? '%d' : 'NULL') . ", executed_at = %s WHERE id = %d AND status = 'read' AND (server_name IS NULL OR server_name = %s OR server_name = %s)";
+                $params = array($status, $message);
+                if ($duration_us) {
+                    $params[] = $duration_us;
+                }
+                array_push($params, current_time('mysql'), $command_id, $server_name, (string)$server->id);
                 $result = $wpdb->query($wpdb->prepare(
                     $sql, // phpcs:ignore WordPress.DB.PreparedSQL.NotPrepared
-                    $status,
-                    $message,
-                    current_time('mysql'),
-                    $command_id,
-                    $server_name,
-                    (string)$server->id
+                    $params
                 ));
                 
+                if ($status === 'failed' && $result > 0) {
+                    self::subtract_completed_runs($command_id, $completed_runs);
+                }
+                
                 // Trigger hook for order status updates
-                if ($result !== false && $result > 0) {
+                if ($notify && $result !== false && $result > 0) {
                     do_action('mws_command_status_updated', $command_id, $status);
                 }
                 
@@ -334,18 +365,115 @@ class MWS_Pending_Commands {
             self::$table_name,
             $update_data,
             $where_clause,
-            array('%s', '%s', '%s'),
-            array('%d')
+            array('%s', '%s', '%d', '%s'),
+            array('%d', '%s')
         );
         
+        if ($status === 'failed' && $result > 0) {
+            self::subtract_completed_runs($command_id, $completed_runs);
+        }
+        
         // Trigger hook for order status updates
-        if ($result !== false && $result > 0) {
+        if ($notify && $result !== false && $result > 0) {
             do_action('mws_command_status_updated', $command_id, $status);
         }
         
         return $result;
     }
     
+    /**
+     * Update the status of several commands, e.g. all commands of one order.
+     * The status hook fires once per affected order instead of once per command.
+     * All updates are applied in one transaction, so a failed batch leaves every
+     * command as it was and can safely be sent again.
+     *
+     * @param array $statuses List of arrays with 'id', 'status', 'message' and optionally 'duration_us' and 'completed_runs'
+     * @return int|false Number of updated commands, or false if an update failed and nothing was written
+     */
+    public static function update_command_statuses($statuses, $server_name = null) {
+        global $wpdb;
+        
+        $updated = 0;
+        $notify = array();
+        
+        $wpdb->query('START TRANSACTION');
+        
+        foreach ($statuses as $entry) {
+            $duration_us = isset($entry['duration_us']) ? $entry['duration_us'] : null;
+            $completed_runs = isset($entry['completed_runs']) ? $entry['completed_runs'] : 0;
+            $result = self::update_command_status($entry['id'], $entry['status'], $entry['message'], $server_name, false, $duration_us, $completed_runs);
+            if ($result === false) {
+                $wpdb->query('ROLLBACK');
+                return false;
+            }
+            if ($result > 0) {
+                $updated += $result;
+                $notify[] = $entry;
+            }
+        }
+        
+        if ($wpdb->query('COMMIT') === false) {
+            $wpdb->query('ROLLBACK');
+            return false;
+        }
+        
+        // One notification per order is enough, the order status is recomputed from all its commands
+        $order_ids = self::get_command_order_ids(wp_list_pluck($notify, 'id'));
+        $notified_orders = array();
+        foreach ($notify as $entry) {
+            $order_id = isset($order_ids[$entry['id']]) ? $order_ids[$entry['id']] : 0;
+            if ($order_id && isset($notified_orders[$order_id])) {
+                continue;
+            }
+            $notified_orders[$order_id] = true;
+            do_action('mws_command_status_updated', $entry['id'], $entry['status']);
+        }
+        
+        return $updated;
+    }
+    
+    /**
+     * A repeated command that failed part way has already delivered some of its runs.
+     * Only the rest is left to run, so running the command again does not deliver them twice.
+     */
+    private static function subtract_completed_runs($command_id, $completed_runs) {
+        global $wpdb;
+        
+        $completed_runs = absint($completed_runs);
+        if ($completed_runs < 1) {
+            return;
+        }
+        
+        $wpdb->query($wpdb->prepare(
+            "UPDATE `" . self::$table_name . "` SET repeat_count = GREATEST(1, repeat_count - %d) WHERE id = %d", // phpcs:ignore WordPress.DB.PreparedSQL.NotPrepared
+            $completed_runs,
+            $command_id
+        ));
+    }
+    
+    /**
+     * @return array Order ID of each command, keyed by command ID
+     */
+    private static function get_command_order_ids($command_ids) {
+        global $wpdb;
+        
+        if (empty($command_ids)) {
+            return array();
+        }
+        
+        $placeholders = implode(',', array_fill(0, count($command_ids), '%d'));
+        $rows = $wpdb->get_results($wpdb->prepare(
+            "SELECT id, order_id FROM `" . self::$table_name . "` WHERE id IN ($placeholders)", // phpcs:ignore WordPress.DB.PreparedSQL.InterpolatedNotPrepared, WordPress.DB.PreparedSQL.NotPrepared
+            $command_ids
+        ));
+        
+        $order_ids = array();
+        foreach ($rows as $row) {
+            $order_ids[(int) $row->id] = (int) $row->order_id;
+        }
+        return $order_ids;
+    }
+    
     public static function get_commands_for_admin($limit = 100, $offset = 0, $filter_status = null) {
         global $wpdb;
         
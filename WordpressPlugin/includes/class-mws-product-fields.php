@@ -69,6 +69,7 @@ class MWS_Product_Fields {
             echo '<select name="_mc_commands_run_modes[]" class="mc-run-mode-select">';
             echo '<option value="always"' . selected($run_mode, 'always', false) . '>' . esc_html(__('Always Run', 'minewebstore')) . '</option>';
             echo '<option value="online"' . selected($run_mode, 'online', false) . '>' . esc_html(__('Run When Player Online', 'minewebstore')) . '</option>';
+            echo '<option value="delayed"' . selected($run_mode, 'delayed', false) . '>' . esc_html(__('Run After Duration', 'minewebstore')) . '</option>';
             echo '</select>';
             echo '<button type="button" class="button mc-remove-command" title="' . esc_attr(__('Remove command', 'minewebstore')) . '">−</button>';
             echo '</div>';
@@ -93,6 +94,20 @@ class MWS_Product_Fields {
             'value' => get_post_meta($post->ID, '_mc_command_delay', true) ?: '0'
         ));
         
+        // Duration for timed products; "Run After Duration" commands undo the purchase when it ends
+        woocommerce_wp_text_input(array(
+            'id' => '_mc_duration_days',
+            'label' => __('Duration (days)', 'minewebstore'),
+            'description' => __('How long the product lasts. Commands set to "Run After Duration" (for example removing a rank) run once it has passed; each unit bought adds another duration. Default: 0', 'minewebstore'),
+            'desc_tip' => true,
+            'type' => 'number',
+            'custom_attributes' => array(
+                'min' => '0',
+                'step' => 'any'
+            ),
+            'value' => get_post_meta($post->ID, '_mc_duration_days', true) ?: '0'
+        ));
+        
         echo '</div>';
         
         // Add some JavaScript for better UX
@@ -118,6 +133,7 @@ class MWS_Product_Fields {
                     '<select name="_mc_commands_run_modes[]" class="mc-run-mode-select">' +
                     '<option value="always"><?php echo esc_attr(__('Always Run', 'minewebstore')); ?></option>' +
                     '<option value="online" selected><?php echo esc_attr(__('Run When Player Online', 'minewebstore')); ?></option>' +
+                    '<option value="delayed"><?php echo esc_attr(__('Run After Duration', 'minewebstore')); ?></option>' +
                     '</select>' +
                     '<button type="button" class="button mc-remove-command" title="<?php echo esc_attr(__('Remove command', 'minewebstore')); ?>">−</button>' +
                     '</div>';
@@ -199,18 +215,20 @@ class MWS_Product_Fields {
                 $run_modes_array = array_slice(array_map('sanitize_text_field', wp_unslash($_POST['_mc_commands_run_modes'])), 0, count($commands_array));
                 // Ensure all run modes are valid
                 $run_modes_array = array_map(function($mode) {
-                    return in_array($mode, array('always', 'online')) ? $mode : 'always';
+                    return in_array($mode, array('always', 'online', 'delayed')) ? $mode : 'always';
                 }, $run_modes_array);
                 $run_modes = implode("\n", $run_modes_array);
             }
         }
         
         $command_delay = floatval(sanitize_text_field(wp_unslash($_POST['_mc_command_delay'] ?? '0')));
+        $duration_days = max(0, floatval(sanitize_text_field(wp_unslash($_POST['_mc_duration_days'] ?? '0'))));
         
         update_post_meta($post_id, '_mc_server_id', $server_id);
         update_post_meta($post_id, '_mc_commands', $commands);
         update_post_meta($post_id, '_mc_commands_run_modes', $run_modes);
         update_post_meta($post_id, '_mc_command_delay', $command_delay);
+        update_post_meta($post_id, '_mc_duration_days', $duration_days);
     }
     
     public function add_variation_fields($loop, $variation_data, $variation) {
@@ -279,7 +297,8 @@ class MWS_Product_Fields {
             'server_id' => '',
             'commands' => '',
             'commands_run_modes' => '',
-            'command_delay' => 0
+            'command_delay' => 0,
+            'duration_days' => 0
         );
         
         // Get variation-specific settings first
@@ -309,6 +328,7 @@ class MWS_Product_Fields {
         
         // Always get these from parent product
         $config['command_delay'] = floatval(get_post_meta($product_id, '_mc_command_delay', true) ?: 0);
+        $config['duration_days'] = floatval(get_post_meta($product_id, '_mc_duration_days', true) ?: 0);
         
         return $config;
     }
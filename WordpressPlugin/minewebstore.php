@@ -23,6 +23,7 @@ if (!defined('ABSPATH')) {
 define('MWS_PLUGIN_URL', plugin_dir_url(__FILE__));
 define('MWS_PLUGIN_PATH', plugin_dir_path(__FILE__));
 define('MWS_VERSION', '1.0.0');
+define('MWS_DB_VERSION', '1.3');
 
 // Check if WooCommerce is active
 if (!in_array('woocommerce/woocommerce.php', apply_filters('active_plugins', get_option('active_plugins')))) {
@@ -70,6 +71,9 @@ class MineWebStore {
         // Load plugin files
         $this->load_dependencies();
         
+        // Bring the database schema up to date after a plugin update
+        $this->maybe_upgrade_database();
+        
         // Initialize components
         new MWS_Admin();
         new MWS_API();
@@ -105,6 +109,15 @@ class MineWebStore {
         flush_rewrite_rules();
     }
     
+    public function maybe_upgrade_database() {
+        if (get_option('mws_db_version') === MWS_DB_VERSION) {
+            return;
+        }
+        
+        // dbDelta adds missing columns and indexes to existing tables
+        $this->create_tables();
+    }
+    
     public function deactivate() {
         // Flush rewrite rules
         flush_rewrite_rules();
@@ -148,10 +161,13 @@ class MineWebStore {
             product_id int(11) NOT NULL,
             player_name varchar(16) NOT NULL,
             command_text text NOT NULL,
-            run_mode enum('always', 'online') DEFAULT 'online',
+            run_mode enum('always', 'online', 'delayed') DEFAULT 'online',
+            repeat_count int(11) NOT NULL DEFAULT 1,
+            run_at datetime DEFAULT NULL,
             server_name varchar(50) DEFAULT NULL,
             status enum('pending', 'read', 'executed', 'failed') DEFAULT 'pending',
             execution_message text DEFAULT NULL,
+            execution_time_us int(11) DEFAULT NULL,
             created_at datetime DEFAULT CURRENT_TIMESTAMP,
             read_at datetime DEFAULT NULL,
             executed_at datetime DEFAULT NULL,
@@ -174,6 +190,10 @@ class MineWebStore {
         $servers_exists = $wpdb->get_var($wpdb->prepare("SHOW TABLES LIKE %s", $servers_table)) === $servers_table;
         $players_exists = $wpdb->get_var($wpdb->prepare("SHOW TABLES LIKE %s", $players_table)) === $players_table;
         $commands_exists = $wpdb->get_var($wpdb->prepare("SHOW TABLES LIKE %s", $commands_table)) === $commands_table;
+        
+        if ($servers_exists && $players_exists && $commands_exists) {
+            update_option('mws_db_version', MWS_DB_VERSION);
+        }
     }
 }
 